@@ -13,16 +13,19 @@
 package org.openhab.persistence.jdbc.db;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.YearMonth;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.knowm.yank.Yank;
 import org.openhab.core.items.GroupItem;
@@ -47,9 +50,18 @@ import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.types.State;
 import org.openhab.persistence.jdbc.model.ItemVO;
+import org.openhab.persistence.jdbc.model.ItemValueInsert;
+import org.openhab.persistence.jdbc.model.ItemValueInsert.ValueBinder;
 import org.openhab.persistence.jdbc.model.ItemsVO;
+import org.openhab.persistence.jdbc.model.JdbcAggregateFilterCriteria;
+import org.openhab.persistence.jdbc.model.JdbcAggregateFilterCriteria.AggregateFunction;
 import org.openhab.persistence.jdbc.model.JdbcHistoricItem;
+import org.openhab.persistence.jdbc.model.JdbcPersistenceItemInfo;
+import org.openhab.persistence.jdbc.model.NarrowItemValueInsert;
 import org.openhab.persistence.jdbc.utils.DbMetaData;
+import org.openhab.persistence.jdbc.utils.JdbcMetrics;
+import org.openhab.persistence.jdbc.utils.ResultSetIterable;
+import org.openhab.persistence.jdbc.utils.ResultSetIterable.RowMapper;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,6 +77,13 @@ public class JdbcBaseDAO {
     public Properties databaseProps = new Properties();
     protected String urlSuffix = "";
     public Map<String, String> sqlTypes = new HashMap<>();
+    private final Map<Class<?>, String> itemTypes = new ConcurrentHashMap<>();
+    // number of rows fetched at once by queries, 0 for the default of the driver
+    protected int fetchSize = 1000;
+    protected JdbcMetrics metrics = new JdbcMetrics();
+    // name of the table holding the values of all items in the narrow layout
+    protected String narrowTable = "item_values";
+    protected boolean narrowLayout = false;
 
     // Get Database Meta data
     protected DbMetaData dbMeta;
@@ -79,6 +98,9 @@ public class JdbcBaseDAO {
     protected String sqlGetItemTables;
     protected String sqlCreateItemTable;
     protected String sqlInsertItemValue;
+    protected String sqlGetItemStatistics;
+    protected String sqlCreateNarrowTable;
+    protected String sqlInsertNarrowValue;
 
     /********
      * INIT *
@@ -138,6 +160,9 @@ public class JdbcBaseDAO {
         sqlGetItemTables = "SELECT table_name FROM information_schema.tables WHERE table_type='BASE TABLE' AND table_schema='#jdbcUriDatabaseName#' AND NOT table_name='#itemsManageTable#'";
         sqlCreateItemTable = "CREATE TABLE IF NOT EXISTS #tableName# (time #tablePrimaryKey# NOT NULL, value #dbType#, PRIMARY KEY(time))";
         sqlInsertItemValue = "INSERT INTO #tableName# (TIME, VALUE) VALUES( #tablePrimaryValue#, ? ) ON DUPLICATE KEY UPDATE VALUE= ?";
+        sqlGetItemStatistics = "SELECT COUNT(*), MIN(time), MAX(time) FROM #tableName#";
+        sqlCreateNarrowTable = "CREATE TABLE IF NOT EXISTS #narrowTable# (itemid INT NOT NULL, time #tablePrimaryKey# NOT NULL, value_num #tableValueNumber#, value_str #tableValueString#, PRIMARY KEY(itemid, time))";
+        sqlInsertNarrowValue = "INSERT INTO #narrowTable# (itemid, time, value_num, value_str) VALUES( ?, #tablePrimaryValue#, ?, ? ) ON DUPLICATE KEY UPDATE value_num=VALUES(value_num), value_str=VALUES(value_str)";
     }
 
     /**
@@ -157,6 +182,10 @@ public class JdbcBaseDAO {
         sqlTypes.put("SWITCHITEM", "VARCHAR(6)");
         sqlTypes.put("tablePrimaryKey", "TIMESTAMP");
         sqlTypes.put("tablePrimaryValue", "NOW()");
+        // placeholder of the time in inserts that write the time of the value instead of the time of the server
+        sqlTypes.put("tablePrimaryParameter", "?");
+        sqlTypes.put("tableValueNumber", "DOUBLE");
+        sqlTypes.put("tableValueString", "TEXT");
     }
 
     /**
@@ -317,49 +346,168 @@ public class JdbcBaseDAO {
         Yank.execute(sql, null);
     }
 
-    public void doStoreItemValue(Item item, ItemVO vo) {
-        vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#tablePrimaryValue#" },
-                new String[] { vo.getTableName(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { vo.getValue(), vo.getValue() };
-        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
-        Yank.execute(sql, params);
+    /**
+     * Creates the narrow table, if it does not exist.
+     *
+     * @param partitioned whether the table is to be partitioned by month, if the database supports it
+     */
+    public void doCreateNarrowTable(boolean partitioned) {
+        if (partitioned) {
+            logger.warn("JDBC::doCreateNarrowTable: partitioning is not supported by {}, creating a plain table",
+                    getClass().getSimpleName());
+        }
+        String sql = narrowTableProvider(sqlCreateNarrowTable);
+        logger.debug("JDBC::doCreateNarrowTable sql={}", sql);
+        Yank.execute(sql, null);
     }
 
-    public List<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
-            String table, String name) {
-        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name);
-        logger.debug("JDBC::doGetHistItemFilterQuery sql={}", sql);
-        List<Object[]> m = Yank.queryObjectArrays(sql, null);
+    /**
+     * Creates the partition of the narrow table for the values of a month, if it does not exist. Only databases
+     * that support partitioning implement this.
+     */
+    public void doCreateNarrowPartition(YearMonth month) {
+    }
 
-        List<HistoricItem> items = new ArrayList<>();
-        for (int i = 0; i < m.size(); i++) {
-            items.add(new JdbcHistoricItem(item.getName(), getState(item, m.get(i)[1]), objectAsDate(m.get(i)[0])));
+    /**
+     * Writes a value with the prepared insert of an item.
+     *
+     * @param insert the insert, prepared by {@link #prepareItemValueInsert(Item, String)}
+     * @param state the state to write
+     * @return whether the value has been written
+     */
+    public boolean doStoreItemValue(ItemValueInsert insert, State state) {
+        Object[] params = insert.getParameters(state);
+        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", insert.getSql(), params.length > 0 ? params[0] : "");
+        return Yank.execute(insert.getSql(), params) > 0;
+    }
+
+    /**
+     * Writes a single value with the time of the value, like {@link #doStoreItemValues(List, List)} does for many.
+     *
+     * @param insert the insert, prepared by {@link #prepareItemValueInsert(Item, String)} or
+     *            {@link #prepareNarrowItemValueInsert(Item, int)}
+     * @param vo the value, converted by {@link ItemValueInsert#getValue(State)} and with its time set
+     * @return whether the value has been written
+     */
+    public boolean doStoreItemValue(ItemValueInsert insert, ItemVO vo) {
+        Object[] params = insert.getBatchParameters(getTimeParameter(vo.getTime().toInstant()), vo.getValue());
+        logger.debug("JDBC::doStoreItemValue sql={} time={}", insert.getBatchSql(), vo.getTime());
+        return Yank.execute(insert.getBatchSql(), params) > 0;
+    }
+
+    /**
+     * Writes values of a single table with one batch. Instead of the time of the database server, the time of each
+     * value is written.
+     *
+     * @param inserts the insert of each value, prepared for the same table by
+     *            {@link #prepareItemValueInsert(Item, String)} or {@link #prepareNarrowItemValueInsert(Item, int)}
+     * @param vol the values, converted by {@link ItemValueInsert#getValue(State)} and with their time set
+     * @return whether the values have been written
+     */
+    public boolean doStoreItemValues(List<ItemValueInsert> inserts, List<ItemVO> vol) {
+        if (vol.isEmpty()) {
+            return true;
+        }
+        Object[][] params = new Object[vol.size()][];
+        for (int i = 0; i < vol.size(); i++) {
+            ItemVO vo = vol.get(i);
+            params[i] = inserts.get(i).getBatchParameters(getTimeParameter(vo.getTime().toInstant()), vo.getValue());
+        }
+        String sql = inserts.get(0).getBatchSql();
+        logger.debug("JDBC::doStoreItemValues sql={} values={}", sql, vol.size());
+        return Yank.executeBatch(sql, params) != null;
+    }
+
+    /**
+     * Queries the number of values and the earliest and latest time in the table of an item.
+     *
+     * @return the info of the item or null, if the query failed
+     */
+    public JdbcPersistenceItemInfo doGetItemStatistics(String itemName, String tableName) {
+        String sql = StringUtilsExt.replaceArrayMerge(sqlGetItemStatistics, new String[] { "#tableName#" },
+                new String[] { tableName });
+        logger.debug("JDBC::doGetItemStatistics sql={}", sql);
+        List<Object[]> rows = Yank.queryObjectArrays(sql, null);
+        if (rows == null || rows.isEmpty()) {
+            return null;
         }
-        return items;
+        Object[] row = rows.get(0);
+        int count = row[0] != null ? ((Number) row[0]).intValue() : 0;
+        Date earliest = row[1] != null ? Date.from(objectAsDate(row[1]).toInstant()) : null;
+        Date latest = row[2] != null ? Date.from(objectAsDate(row[2]).toInstant()) : null;
+        return new JdbcPersistenceItemInfo(itemName, count, earliest, latest);
+    }
+
+    /**
+     * Queries the values of an item. If the page size is not limited, the rows are read while the result is iterated.
+     */
+    public Iterable<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
+            String table, String name) {
+        return doGetHistItemFilterQuery(item, filter, numberDecimalcount, table, name, narrowLayout);
+    }
+
+    /**
+     * Queries the values of an item from a table of the given layout, e.g. from the table of the item while the values
+     * are migrated into the narrow table.
+     *
+     * @param narrow whether the table is the narrow table, whose values are decoded differently
+     */
+    public Iterable<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
+            String table, String name, boolean narrow) {
+        List<Object> params = new ArrayList<>();
+        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name, params);
+        logger.debug("JDBC::doGetHistItemFilterQuery sql={} params={}", sql, params);
+        String itemName = item.getName();
+        return query(sql, params, filter,
+                rs -> new JdbcHistoricItem(itemName,
+                        narrow ? getNarrowState(item, rs.getObject(2), numberDecimalcount)
+                                : getState(item, rs.getObject(2)),
+                        objectAsDate(rs.getObject(1))));
+    }
+
+    /**
+     * Queries the values of an item aggregated in time buckets. One row is read per bucket.
+     */
+    public Iterable<HistoricItem> doGetHistItemAggregateQuery(Item item, JdbcAggregateFilterCriteria filter,
+            int numberDecimalcount, String table) {
+        AggregateFunction function = getAggregateFunction(item, filter.getFunction());
+        List<Object> params = new ArrayList<>();
+        String sql = histItemAggregateQueryProvider(filter, function, table, params);
+        logger.debug("JDBC::doGetHistItemAggregateQuery sql={} params={}", sql, params);
+        String itemName = item.getName();
+        return query(sql, params, filter,
+                rs -> new JdbcHistoricItem(itemName,
+                        narrowLayout ? getNarrowState(item, rs.getObject(2), numberDecimalcount)
+                                : getAggregateState(item, rs.getObject(2), numberDecimalcount),
+                        objectAsDate(rs.getObject(1))));
+    }
+
+    /**
+     * Runs a query of historic items. Results of a limited page size are read right away, as callers like
+     * previousState() only read the first rows and would otherwise keep the connection until the next garbage
+     * collection. Unlimited results are streamed.
+     */
+    private Iterable<HistoricItem> query(String sql, List<Object> params, FilterCriteria filter,
+            RowMapper<HistoricItem> mapper) {
+        ResultSetIterable<HistoricItem> result = new ResultSetIterable<>(sql, params.toArray(), getFetchSize(), mapper,
+                metrics::queryExecuted);
+        return filter.getPageSize() == Integer.MAX_VALUE ? result : result.readAll();
     }
 
     /*************
      * Providers *
      *************/
-    static final DateTimeFormatter JDBC_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-
-    private String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
-            String simpleName) {
+    /**
+     * Creates the query of the values of an item. The begin and end dates are added to params, in the order of
+     * their placeholders.
+     */
+    protected String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
+            String simpleName, List<Object> params) {
         logger.debug(
                 "JDBC::getHistItemFilterQueryProvider filter = {}, numberDecimalcount = {}, table = {}, simpleName = {}",
                 filter.toString(), numberDecimalcount, table, simpleName);
 
-        String filterString = "";
-        if (filter.getBeginDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME>'" + JDBC_DATE_FORMAT.format(filter.getBeginDateZoned()) + "'";
-        }
-        if (filter.getEndDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME<'" + JDBC_DATE_FORMAT.format(filter.getEndDateZoned()) + "'";
-        }
+        String filterString = timeFilterProvider(filter, params);
         filterString += (filter.getOrdering() == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC ";
         if (filter.getPageSize() != 0x7fffffff) {
             filterString += " LIMIT " + filter.getPageNumber() * filter.getPageSize() + "," + filter.getPageSize();
@@ -376,6 +524,69 @@ public class JdbcBaseDAO {
         return queryString;
     }
 
+    /**
+     * Creates the WHERE clause for the begin and end dates of a filter, with a placeholder for each date.
+     */
+    protected String timeFilterProvider(FilterCriteria filter, List<Object> params) {
+        String filterString = "";
+        if (filter.getBeginDate() != null) {
+            filterString += filterString.isEmpty() ? " WHERE" : " AND";
+            filterString += " TIME>?";
+            params.add(getTimeParameter(filter.getBeginDateZoned().toInstant()));
+        }
+        if (filter.getEndDate() != null) {
+            filterString += filterString.isEmpty() ? " WHERE" : " AND";
+            filterString += " TIME<?";
+            params.add(getTimeParameter(filter.getEndDateZoned().toInstant()));
+        }
+        return filterString;
+    }
+
+    /**
+     * Creates the query of the values of an item aggregated in time buckets. The buckets are numbered in a derived
+     * table by {@link #timeBucketProvider(long)}, which is grouped by the outer query, so that only the two bucket
+     * expressions depend on the database.
+     */
+    protected String histItemAggregateQueryProvider(JdbcAggregateFilterCriteria filter, AggregateFunction function,
+            String table, List<Object> params) {
+        String buckets = "SELECT " + timeBucketProvider(filter.getBucketWidth().getSeconds())
+                + " AS bucket, time, value FROM " + table + timeFilterProvider(filter, params);
+        String ordering = filter.getOrdering() == Ordering.ASCENDING ? " ASC" : " DESC";
+        String queryString;
+        if (function == AggregateFunction.LAST) {
+            // time is the primary key, so the latest time of a bucket identifies its last value; the table is
+            // joined without an alias, as it may be a derived table of the narrow layout
+            queryString = "SELECT " + bucketTimeProvider("b.bucket") + ", value FROM (SELECT bucket, MAX(time)"
+                    + " AS lasttime FROM (" + buckets + ") a GROUP BY bucket) b JOIN " + table
+                    + " ON time = b.lasttime ORDER BY b.bucket" + ordering;
+        } else {
+            queryString = "SELECT " + bucketTimeProvider("bucket") + ", " + function.name() + "(value) FROM ("
+                    + buckets + ") a GROUP BY bucket ORDER BY bucket" + ordering;
+        }
+        logger.debug("JDBC::query queryString = {}", queryString);
+        return queryString;
+    }
+
+    /**
+     * Returns the expression numbering the bucket of the time column: its start in seconds since
+     * 1970-01-01 00:00:00. The time is taken as stored, i.e. as local time without a time zone, so that daily buckets
+     * start at local midnight on every database.
+     *
+     * @param seconds the width of a bucket in seconds
+     */
+    protected String timeBucketProvider(long seconds) {
+        // unlike UNIX_TIMESTAMP, this does not convert from the time zone of the session
+        return "TIMESTAMPDIFF(SECOND, '1970-01-01 00:00:00', time) DIV " + seconds + " * " + seconds;
+    }
+
+    /**
+     * Returns the expression converting the start of a bucket, as numbered by {@link #timeBucketProvider(long)},
+     * into a time.
+     */
+    protected String bucketTimeProvider(String bucket) {
+        return "TIMESTAMPADD(SECOND, " + bucket + ", '1970-01-01 00:00:00')";
+    }
+
     private String updateItemTableNamesProvider(List<ItemVO> namesList) {
         logger.debug("JDBC::updateItemTableNamesProvider namesList.size = {}", namesList.size());
         String queryString = "";
@@ -387,78 +598,136 @@ public class JdbcBaseDAO {
         return queryString;
     }
 
-    protected ItemVO storeItemValueProvider(Item item, ItemVO vo) {
+    /**
+     * Prepares the insert of values into the table of an item. The SQL text and the conversion of the states are
+     * determined once, so that storing a value does neither generate SQL nor look up types.
+     *
+     * @param item the item
+     * @param tableName the name of the table of the item
+     * @return the prepared insert
+     */
+    public ItemValueInsert prepareItemValueInsert(Item item, String tableName) {
         String itemType = getItemType(item);
+        String dbType = sqlTypes.get(itemType);
+        Class<?> javaType = getJavaType(itemType, dbType);
+        logger.debug("JDBC::prepareItemValueInsert: item '{}' as Type '{}' in '{}' with javaType '{}'", item.getName(),
+                itemType, tableName, javaType.getSimpleName());
+        if ("NUMBERITEM".equals(itemType) && javaType == String.class) {
+            logger.warn("JDBC::prepareItemValueInsert: values of item '{}' are stored as text for sqlType '{}'",
+                    item.getName(), dbType);
+        }
 
-        logger.debug("JDBC::storeItemValueProvider: item '{}' as Type '{}' in '{}' with state '{}'", item.getName(),
-                itemType, vo.getTableName(), item.getState().toString());
+        String sql = sqlInsertItemValue.replace("#tableName#", getInsertTableName(tableName)).replace("#dbType#",
+                dbType);
+        return new ItemValueInsert(item, tableName, dbType, javaType, getValueBinder(javaType),
+                sql.replace("#tablePrimaryValue#", sqlTypes.get("tablePrimaryValue")),
+                sql.replace("#tablePrimaryValue#", sqlTypes.get("tablePrimaryParameter")));
+    }
 
-        // insertItemValue
-        logger.debug("JDBC::storeItemValueProvider: getState: '{}'", item.getState().toString());
-        if ("COLORITEM".equals(itemType)) {
-            vo.setValueTypes(getSqlTypes().get(itemType), java.lang.String.class);
-            vo.setValue(item.getState().toString());
-        } else if ("NUMBERITEM".equals(itemType)) {
-            String it = getSqlTypes().get(itemType);
-            if (it.toUpperCase().contains("DOUBLE")) {
-                vo.setValueTypes(it, java.lang.Double.class);
-                Number newVal = ((DecimalType) item.getState());
-                logger.debug("JDBC::storeItemValueProvider: newVal.doubleValue: '{}'", newVal.doubleValue());
-                vo.setValue(newVal.doubleValue());
-            } else if (it.toUpperCase().contains("DECIMAL") || it.toUpperCase().contains("NUMERIC")) {
-                vo.setValueTypes(it, java.math.BigDecimal.class);
-                DecimalType newVal = ((DecimalType) item.getState());
-                logger.debug("JDBC::storeItemValueProvider: newVal.toBigDecimal: '{}'", newVal.toBigDecimal());
-                vo.setValue(newVal.toBigDecimal());
-            } else if (it.toUpperCase().contains("INT")) {
-                vo.setValueTypes(it, java.lang.Integer.class);
-                Number newVal = ((DecimalType) item.getState());
-                logger.debug("JDBC::storeItemValueProvider: newVal.intValue: '{}'", newVal.intValue());
-                vo.setValue(newVal.intValue());
-            } else {// fall back to String
-                vo.setValueTypes(it, java.lang.String.class);
-                logger.warn("JDBC::storeItemValueProvider: item.getState().toString(): '{}'",
-                        item.getState().toString());
-                vo.setValue(item.getState().toString());
+    /**
+     * Prepares the insert of values of an item into the narrow table. The values are converted like those of the
+     * per-item layout, and then written to value_num or value_str.
+     *
+     * @param item the item
+     * @param itemId the id of the item in the items table
+     * @return the prepared insert
+     */
+    public NarrowItemValueInsert prepareNarrowItemValueInsert(Item item, int itemId) {
+        String itemType = getItemType(item);
+        String dbType = sqlTypes.get(itemType);
+        Class<?> javaType = getJavaType(itemType, dbType);
+        logger.debug("JDBC::prepareNarrowItemValueInsert: item '{}' as Type '{}' with id {} and javaType '{}'",
+                item.getName(), itemType, itemId, javaType.getSimpleName());
+
+        String sql = narrowTableProvider(sqlInsertNarrowValue);
+        return new NarrowItemValueInsert(item, narrowTable, itemId, dbType, javaType, getValueBinder(javaType),
+                sql.replace("#tablePrimaryValue#", sqlTypes.get("tablePrimaryValue")),
+                sql.replace("#tablePrimaryValue#", sqlTypes.get("tablePrimaryParameter")));
+    }
+
+    /**
+     * Returns a derived table with the time and value columns of an item in the narrow table, so that it can be
+     * queried like the table of the item in the per-item layout.
+     *
+     * @param itemId the id of the item in the items table
+     * @param item the item, or null if only the time column is used
+     */
+    public String getNarrowItemTable(int itemId, Item item) {
+        String column = "value_num";
+        if (item != null) {
+            String itemType = getItemType(item);
+            if (!NarrowItemValueInsert.isNumeric(getJavaType(itemType, sqlTypes.get(itemType)))) {
+                column = "value_str";
             }
-        } else if ("ROLLERSHUTTERITEM".equals(itemType) || "DIMMERITEM".equals(itemType)) {
-            vo.setValueTypes(getSqlTypes().get(itemType), java.lang.Integer.class);
-            Number newVal = ((DecimalType) item.getState());
-            logger.debug("JDBC::storeItemValueProvider: newVal.intValue: '{}'", newVal.intValue());
-            vo.setValue(newVal.intValue());
-        } else if ("DATETIMEITEM".equals(itemType)) {
-            vo.setValueTypes(getSqlTypes().get(itemType), java.sql.Timestamp.class);
-            java.sql.Timestamp d = new java.sql.Timestamp(
-                    ((DateTimeType) item.getState()).getZonedDateTime().toInstant().toEpochMilli());
-            logger.debug("JDBC::storeItemValueProvider: DateTimeItem: '{}'", d);
-            vo.setValue(d);
-        } else {
-            /*
-             * !!ATTENTION!!
-             *
-             * 1. DimmerItem.getStateAs(PercentType.class).toString() always
-             * returns 0
-             * RollershutterItem.getStateAs(PercentType.class).toString() works
-             * as expected
-             *
-             * 2. (item instanceof ColorItem) == (item instanceof DimmerItem) =
-             * true Therefore for instance tests ColorItem always has to be
-             * tested before DimmerItem
-             *
-             * !!ATTENTION!!
-             */
-            // All other items should return the best format by default
-            vo.setValueTypes(getSqlTypes().get(itemType), java.lang.String.class);
-            logger.debug("JDBC::storeItemValueProvider: other: item.getState().toString(): '{}'",
-                    item.getState().toString());
-            vo.setValue(item.getState().toString());
         }
-        return vo;
+        return "(SELECT time, " + column + " AS value FROM " + narrowTable + " WHERE itemid = " + itemId + ") v";
+    }
+
+    /**
+     * Replaces the placeholders of the narrow table in a statement. Unlike the per-item statements, the table name
+     * may occur more than once.
+     */
+    protected String narrowTableProvider(String sql) {
+        return sql.replace("#narrowTable#", getInsertTableName(narrowTable))
+                .replace("#tablePrimaryKey#", sqlTypes.get("tablePrimaryKey"))
+                .replace("#tableValueNumber#", sqlTypes.get("tableValueNumber"))
+                .replace("#tableValueString#", sqlTypes.get("tableValueString"));
     }
 
     /*****************
      * H E L P E R S *
      *****************/
+    /**
+     * Returns the function to aggregate the values of an item with. Values that are not numbers can only be
+     * aggregated with {@link AggregateFunction#LAST}, and sums are only meaningful for number items.
+     */
+    protected AggregateFunction getAggregateFunction(Item item, AggregateFunction function) {
+        if (function == AggregateFunction.LAST) {
+            return function;
+        }
+        boolean numeric = item instanceof NumberItem || item instanceof DimmerItem
+                || item instanceof RollershutterItem;
+        if (numeric) {
+            String itemType = getItemType(item);
+            numeric = getJavaType(itemType, sqlTypes.get(itemType)) != String.class;
+        }
+        if (!numeric || (function == AggregateFunction.SUM && !(item instanceof NumberItem))) {
+            logger.debug("JDBC::getAggregateFunction: {} is not supported for item '{}', using LAST", function,
+                    item.getName());
+            return AggregateFunction.LAST;
+        }
+        return function;
+    }
+
+    /**
+     * Converts an aggregated value. Averages and sums are numbers of the type chosen by the database, so they are
+     * converted and rounded here instead of in the query.
+     */
+    protected State getAggregateState(Item item, Object v, int numberDecimalcount) {
+        if (v instanceof Number && (item instanceof NumberItem || item instanceof DimmerItem
+                || item instanceof RollershutterItem)) {
+            BigDecimal value = v instanceof BigDecimal ? (BigDecimal) v : new BigDecimal(v.toString());
+            if (item instanceof NumberItem) {
+                return new DecimalType(
+                        numberDecimalcount > -1 ? value.setScale(numberDecimalcount, RoundingMode.HALF_UP) : value);
+            }
+            return new PercentType(value.setScale(0, RoundingMode.HALF_UP));
+        }
+        return getState(item, v);
+    }
+
+    /**
+     * Converts a value of the narrow table. Numbers are read as the type of value_num, and times as epoch
+     * milliseconds.
+     */
+    protected State getNarrowState(Item item, Object v, int numberDecimalcount) {
+        if (item instanceof DateTimeItem && v instanceof Number) {
+            return new DateTimeType(ZonedDateTime.ofInstant(Instant.ofEpochMilli(((Number) v).longValue()),
+                    ZoneId.systemDefault()));
+        }
+        return getAggregateState(item, v, numberDecimalcount);
+    }
+
     protected State getState(Item item, Object v) {
         String clazz = v.getClass().getSimpleName();
         logger.debug("JDBC::ItemResultHandler::handleResult getState value = '{}', getClass = '{}', clazz = '{}'",
@@ -493,6 +762,74 @@ public class JdbcBaseDAO {
         }
     }
 
+    /**
+     * Returns the name of an item table as used in inserts.
+     */
+    protected String getInsertTableName(String tableName) {
+        return tableName;
+    }
+
+    /**
+     * Returns the Java type of the values written for an item type.
+     */
+    protected Class<?> getJavaType(String itemType, String dbType) {
+        if ("NUMBERITEM".equals(itemType)) {
+            String it = dbType.toUpperCase();
+            if (it.contains("DOUBLE")) {
+                return Double.class;
+            } else if (it.contains("DECIMAL") || it.contains("NUMERIC")) {
+                return BigDecimal.class;
+            } else if (it.contains("INT")) {
+                return Integer.class;
+            }
+            // fall back to String
+            return String.class;
+        } else if ("ROLLERSHUTTERITEM".equals(itemType) || "DIMMERITEM".equals(itemType)) {
+            return Integer.class;
+        } else if ("DATETIMEITEM".equals(itemType)) {
+            return Timestamp.class;
+        }
+        /*
+         * !!ATTENTION!!
+         *
+         * 1. DimmerItem.getStateAs(PercentType.class).toString() always
+         * returns 0
+         * RollershutterItem.getStateAs(PercentType.class).toString() works
+         * as expected
+         *
+         * 2. (item instanceof ColorItem) == (item instanceof DimmerItem) =
+         * true Therefore for instance tests ColorItem always has to be
+         * tested before DimmerItem
+         *
+         * !!ATTENTION!!
+         */
+        // Color and all other items should return the best format by default
+        return String.class;
+    }
+
+    /**
+     * Returns the conversion of states into values of the given Java type.
+     */
+    protected ValueBinder getValueBinder(Class<?> javaType) {
+        if (javaType == Double.class) {
+            return state -> ((DecimalType) state).doubleValue();
+        } else if (javaType == BigDecimal.class) {
+            return state -> ((DecimalType) state).toBigDecimal();
+        } else if (javaType == Integer.class) {
+            return state -> ((DecimalType) state).intValue();
+        } else if (javaType == Timestamp.class) {
+            return state -> new Timestamp(((DateTimeType) state).getZonedDateTime().toInstant().toEpochMilli());
+        }
+        return State::toString;
+    }
+
+    /**
+     * Returns the parameter written to the time column for a value stored at the given time.
+     */
+    protected Object getTimeParameter(Instant time) {
+        return Timestamp.from(time);
+    }
+
     protected ZonedDateTime objectAsDate(Object v) {
         if (v instanceof java.lang.String) {
             return ZonedDateTime.ofInstant(Timestamp.valueOf(v.toString()).toInstant(), ZoneId.systemDefault());
@@ -539,7 +876,7 @@ public class JdbcBaseDAO {
                 }
             }
         }
-        String itemType = item.getClass().getSimpleName().toUpperCase();
+        String itemType = itemTypes.computeIfAbsent(item.getClass(), c -> c.getSimpleName().toUpperCase());
         logger.debug("JDBC::getItemType: Try to use ItemType {} for Item {}", itemType, i.getName());
         if (sqlTypes.get(itemType) == null) {
             logger.warn(
@@ -550,9 +887,32 @@ public class JdbcBaseDAO {
         return itemType;
     }
 
+    /**
+     * Returns the fetch size of queries, as understood by the driver.
+     */
+    protected int getFetchSize() {
+        return fetchSize;
+    }
+
     /******************************
      * public Getters and Setters *
      ******************************/
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public void setMetrics(JdbcMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setNarrowLayout(boolean narrowLayout) {
+        this.narrowLayout = narrowLayout;
+    }
+
+    public String getNarrowTable() {
+        return narrowTable;
+    }
+
     public Map<String, String> getSqlTypes() {
         return sqlTypes;
     }
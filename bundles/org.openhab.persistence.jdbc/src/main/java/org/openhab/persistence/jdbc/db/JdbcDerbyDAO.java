@@ -12,18 +12,15 @@
  */
 package org.openhab.persistence.jdbc.db;
 
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
 import java.util.List;
 
 import org.knowm.yank.Yank;
-import org.openhab.core.items.Item;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
-import org.openhab.core.persistence.HistoricItem;
 import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
-import org.openhab.persistence.jdbc.model.JdbcHistoricItem;
+import org.openhab.persistence.jdbc.model.JdbcAggregateFilterCriteria;
+import org.openhab.persistence.jdbc.model.JdbcAggregateFilterCriteria.AggregateFunction;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +55,8 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
         // Prevent error against duplicate time value (seldom): No powerful Merge found:
         // http://www.codeproject.com/Questions/162627/how-to-insert-new-record-in-my-table-if-not-exists
         sqlInsertItemValue = "INSERT INTO #tableName# (TIME, VALUE) VALUES( #tablePrimaryValue#, CAST( ? as #dbType#) )";
+        sqlCreateNarrowTable = "CREATE TABLE #narrowTable# (itemid INTEGER NOT NULL, time #tablePrimaryKey# NOT NULL, value_num #tableValueNumber#, value_str #tableValueString#, PRIMARY KEY(itemid, time))";
+        sqlInsertNarrowValue = "INSERT INTO #narrowTable# (itemid, time, value_num, value_str) VALUES( ?, #tablePrimaryValue#, ?, ? )";
     }
 
     private void initSqlTypes() {
@@ -66,6 +65,7 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
         sqlTypes.put("ROLLERSHUTTERITEM", "SMALLINT");
         sqlTypes.put("STRINGITEM", "VARCHAR(32000)");
         sqlTypes.put("tablePrimaryValue", "CURRENT_TIMESTAMP");
+        sqlTypes.put("tableValueString", "VARCHAR(32000)");
         logger.debug("JDBC::initSqlTypes: Initialized the type array sqlTypes={}", sqlTypes.values());
     }
 
@@ -134,6 +134,17 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
     /*************
      * ITEM DAOs *
      *************/
+    @Override
+    public void doCreateNarrowTable(boolean partitioned) {
+        ItemsVO vo = new ItemsVO();
+        vo.setItemsManageTable(narrowTable);
+        if (doIfTableExists(vo)) {
+            logger.debug("JDBC::doCreateNarrowTable tableExists=true, did not CREATE TABLE");
+            return;
+        }
+        super.doCreateNarrowTable(partitioned);
+    }
+
     @Override
     public void doCreateItemTable(ItemVO vo) {
         String sql = StringUtilsExt.replaceArrayMerge(sqlCreateItemTable,
@@ -142,71 +153,47 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
         Yank.execute(sql, null);
     }
 
+    /****************************
+     * SQL generation Providers *
+     ****************************/
     @Override
-    public void doStoreItemValue(Item item, ItemVO vo) {
-        vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
-                new String[] { vo.getTableName().toUpperCase(), vo.getDbType(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { vo.getValue() };
-        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
-        Yank.execute(sql, params);
+    protected String histItemAggregateQueryProvider(JdbcAggregateFilterCriteria filter, AggregateFunction function,
+            String table, List<Object> params) {
+        return super.histItemAggregateQueryProvider(filter, function, table.toUpperCase(), params);
     }
 
+    /**
+     * Derby has no epoch functions, so the seconds are counted with the JDBC escape functions. These count in INTEGER,
+     * which overflows for seconds since 1970 in 2038, so the days and the seconds of the day are counted separately.
+     */
     @Override
-    public List<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
-            String table, String name) {
-        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name);
-        List<Object[]> m = Yank.queryObjectArrays(sql, null);
-
-        logger.debug("JDBC::doGetHistItemFilterQuery got Array length={}", m.size());
-
-        List<HistoricItem> items = new ArrayList<>();
-        for (int i = 0; i < m.size(); i++) {
-            logger.debug("JDBC::doGetHistItemFilterQuery 0='{}' 1='{}'", m.get(i)[0], m.get(i)[1]);
-            items.add(new JdbcHistoricItem(item.getName(), getState(item, m.get(i)[1]), objectAsDate(m.get(i)[0])));
-        }
-        return items;
+    protected String timeBucketProvider(long seconds) {
+        return "(CAST({fn TIMESTAMPDIFF(SQL_TSI_DAY, TIMESTAMP('1970-01-01 00:00:00'), time)} AS BIGINT) * 86400"
+                + " + {fn TIMESTAMPDIFF(SQL_TSI_SECOND, TIMESTAMP(DATE(time), TIME('00:00:00')), time)}) / " + seconds
+                + " * " + seconds;
     }
 
-    /****************************
-     * SQL generation Providers *
-     ****************************/
-    static final DateTimeFormatter JDBC_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    @Override
+    protected String bucketTimeProvider(String bucket) {
+        return "{fn TIMESTAMPADD(SQL_TSI_SECOND, CAST(MOD(" + bucket + ", 86400) AS INTEGER), "
+                + "{fn TIMESTAMPADD(SQL_TSI_DAY, CAST(" + bucket + " / 86400 AS INTEGER), "
+                + "TIMESTAMP('1970-01-01 00:00:00'))})}";
+    }
 
-    /**
-     * @param filter
-     * @param numberDecimalcount
-     * @param table
-     * @return
-     */
-    private String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
-            String simpleName) {
+    @Override
+    protected String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
+            String simpleName, List<Object> params) {
         logger.debug(
                 "JDBC::getHistItemFilterQueryProvider filter = {}, numberDecimalcount = {}, table = {}, simpleName = {}",
                 StringUtilsExt.filterToString(filter), numberDecimalcount, table, simpleName);
 
-        String filterString = "";
-        if (filter.getBeginDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME>'" + JDBC_DATE_FORMAT.format(filter.getBeginDateZoned()) + "'";
-        }
-        if (filter.getEndDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME<'" + JDBC_DATE_FORMAT.format(filter.getEndDateZoned()) + "'";
-        }
+        String filterString = timeFilterProvider(filter, params);
         filterString += (filter.getOrdering() == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC";
         if (filter.getPageSize() != 0x7fffffff) {
-            // TODO: TESTING!!!
-            // filterString += " LIMIT " + filter.getPageNumber() *
-            // filter.getPageSize() + "," + filter.getPageSize();
             // SELECT time, value FROM ohscriptfiles_sw_ace_paths_0001 ORDER BY
-            // time DESC OFFSET 1 ROWS FETCH NEXT 0 ROWS ONLY
-            // filterString += " OFFSET " + filter.getPageSize() +" ROWS FETCH
-            // FIRST||NEXT " + filter.getPageNumber() * filter.getPageSize() + "
-            // ROWS ONLY";
-            filterString += " OFFSET " + filter.getPageSize() + " ROWS FETCH FIRST "
-                    + (filter.getPageNumber() * filter.getPageSize() + 1) + " ROWS ONLY";
+            // time DESC OFFSET 1 ROWS FETCH NEXT 10 ROWS ONLY
+            filterString += " OFFSET " + filter.getPageNumber() * filter.getPageSize() + " ROWS FETCH NEXT "
+                    + filter.getPageSize() + " ROWS ONLY";
         }
 
         // http://www.seemoredata.com/en/showthread.php?132-Round-function-in-Apache-Derby
@@ -236,6 +223,10 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
     /*****************
      * H E L P E R S *
      *****************/
+    @Override
+    protected String getInsertTableName(String tableName) {
+        return tableName.toUpperCase();
+    }
 
     /******************************
      * public Getters and Setters *
@@ -13,8 +13,6 @@
 package org.openhab.persistence.jdbc.db;
 
 import org.knowm.yank.Yank;
-import org.openhab.core.items.Item;
-import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
@@ -54,12 +52,20 @@ public class JdbcHsqldbDAO extends JdbcBaseDAO {
         sqlInsertItemValue = "MERGE INTO #tableName# "
                 + "USING (VALUES #tablePrimaryValue#, CAST( ? as #dbType#)) temp (TIME, VALUE) ON (#tableName#.TIME=temp.TIME) "
                 + "WHEN NOT MATCHED THEN INSERT (TIME, VALUE) VALUES (temp.TIME, temp.VALUE)";
+        sqlInsertNarrowValue = "MERGE INTO #narrowTable# "
+                + "USING (VALUES CAST( ? as INT), #tablePrimaryValue#, CAST( ? as #tableValueNumber#), CAST( ? as #tableValueString#)) "
+                + "temp (itemid, time, value_num, value_str) ON (#narrowTable#.itemid=temp.itemid AND #narrowTable#.time=temp.time) "
+                + "WHEN NOT MATCHED THEN INSERT (itemid, time, value_num, value_str) "
+                + "VALUES (temp.itemid, temp.time, temp.value_num, temp.value_str)";
     }
 
     /**
      * INFO: http://www.java2s.com/Code/Java/Database-SQL-JDBC/StandardSQLDataTypeswithTheirJavaEquivalents.htm
      */
     private void initSqlTypes() {
+        sqlTypes.put("tableValueString", "VARCHAR(65500)");
+        // parameters in the row constructor of a MERGE need a type
+        sqlTypes.put("tablePrimaryParameter", "CAST( ? as TIMESTAMP)");
     }
 
     /**
@@ -100,20 +106,18 @@ public class JdbcHsqldbDAO extends JdbcBaseDAO {
     /*************
      * ITEM DAOs *
      *************/
-    @Override
-    public void doStoreItemValue(Item item, ItemVO vo) {
-        vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#dbType#", "#tableName#", "#tablePrimaryValue#" }, new String[] {
-                        vo.getTableName(), vo.getDbType(), vo.getTableName(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { vo.getValue() };
-        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
-        Yank.execute(sql, params);
-    }
-
     /****************************
      * SQL generation Providers *
      ****************************/
+    @Override
+    protected String timeBucketProvider(long seconds) {
+        return "TIMESTAMPDIFF(SQL_TSI_SECOND, TIMESTAMP '1970-01-01 00:00:00', time) / " + seconds + " * " + seconds;
+    }
+
+    @Override
+    protected String bucketTimeProvider(String bucket) {
+        return "TIMESTAMPADD(SQL_TSI_SECOND, " + bucket + ", TIMESTAMP '1970-01-01 00:00:00')";
+    }
 
     /*****************
      * H E L P E R S *
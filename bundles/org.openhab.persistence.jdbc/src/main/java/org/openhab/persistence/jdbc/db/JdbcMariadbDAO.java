@@ -56,6 +56,8 @@ public class JdbcMariadbDAO extends JdbcBaseDAO {
         databaseProps.setProperty("dataSource.cachePrepStmts", "true");
         databaseProps.setProperty("dataSource.prepStmtCacheSize", "250");
         databaseProps.setProperty("dataSource.prepStmtCacheSqlLimit", "2048");
+        // send batches of the write-behind queue as multi-row inserts
+        databaseProps.setProperty("dataSource.rewriteBatchedStatements", "true");
         databaseProps.setProperty("dataSource.jdbcCompliantTruncation", "false");// jdbc standard max varchar max length
         // of 21845
 
@@ -99,6 +101,13 @@ public class JdbcMariadbDAO extends JdbcBaseDAO {
     /*****************
      * H E L P E R S *
      *****************/
+    /**
+     * The MariaDB driver streams results only with a fetch size of Integer.MIN_VALUE, which reads row by row.
+     */
+    @Override
+    protected int getFetchSize() {
+        return fetchSize > 0 ? Integer.MIN_VALUE : 0;
+    }
 
     /******************************
      * public Getters and Setters *
@@ -12,18 +12,24 @@
  */
 package org.openhab.persistence.jdbc.db;
 
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.sql.DataSource;
+
 import org.knowm.yank.Yank;
-import org.openhab.core.items.Item;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
-import org.openhab.core.persistence.HistoricItem;
 import org.openhab.persistence.jdbc.model.ItemVO;
+import org.openhab.persistence.jdbc.model.ItemValueInsert;
 import org.openhab.persistence.jdbc.model.ItemsVO;
-import org.openhab.persistence.jdbc.model.JdbcHistoricItem;
+import org.openhab.persistence.jdbc.model.NarrowItemValueInsert;
+import org.openhab.persistence.jdbc.utils.PgBinaryCopy;
+import org.openhab.persistence.jdbc.utils.PgBinaryCopy.FieldEncoder;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +44,9 @@ import org.slf4j.LoggerFactory;
 public class JdbcPostgresqlDAO extends JdbcBaseDAO {
     private final Logger logger = LoggerFactory.getLogger(JdbcPostgresqlDAO.class);
 
+    // whether batches are written with COPY, cleared if the driver does not support it
+    private volatile boolean copyAvailable = true;
+
     /********
      * INIT *
      ********/
@@ -61,6 +70,7 @@ public class JdbcPostgresqlDAO extends JdbcBaseDAO {
         // SQL_INSERT_ITEM_VALUE = "INSERT INTO #tableName# (TIME, VALUE) VALUES( NOW(), CAST( ? as #dbType#) ) ON
         // CONFLICT DO NOTHING";
         sqlInsertItemValue = "INSERT INTO #tableName# (TIME, VALUE) VALUES( #tablePrimaryValue#, CAST( ? as #dbType#) )";
+        sqlInsertNarrowValue = "INSERT INTO #narrowTable# (itemid, time, value_num, value_str) VALUES( ?, #tablePrimaryValue#, ?, ? )";
     }
 
     /**
@@ -78,6 +88,8 @@ public class JdbcPostgresqlDAO extends JdbcBaseDAO {
         sqlTypes.put("ROLLERSHUTTERITEM", "SMALLINT");
         sqlTypes.put("STRINGITEM", "VARCHAR");
         sqlTypes.put("SWITCHITEM", "VARCHAR");
+        sqlTypes.put("tableValueNumber", "DOUBLE PRECISION");
+        sqlTypes.put("tableValueString", "VARCHAR");
         logger.debug("JDBC::initSqlTypes: Initialized the type array sqlTypes={}", sqlTypes.values());
     }
 
@@ -85,10 +97,12 @@ public class JdbcPostgresqlDAO extends JdbcBaseDAO {
      * INFO: https://github.com/brettwooldridge/HikariCP
      */
     private void initDbProps() {
-        // Performance:
-        // databaseProps.setProperty("dataSource.cachePrepStmts", "true");
-        // databaseProps.setProperty("dataSource.prepStmtCacheSize", "250");
-        // databaseProps.setProperty("dataSource.prepStmtCacheSqlLimit", "2048");
+        // Performance: the driver caches server side prepared statements per connection, by their SQL text
+        databaseProps.setProperty("dataSource.prepareThreshold", "3");
+        databaseProps.setProperty("dataSource.preparedStatementCacheQueries", "250");
+
+        // send batches of the write-behind queue as multi-row inserts
+        databaseProps.setProperty("dataSource.reWriteBatchedInserts", "true");
 
         // Properties for HikariCP
         databaseProps.setProperty("driverClassName", "org.postgresql.Driver");
@@ -131,57 +145,127 @@ public class JdbcPostgresqlDAO extends JdbcBaseDAO {
     /*************
      * ITEM DAOs *
      *************/
+    /**
+     * Creates the narrow table, partitioned by range of time if requested (PostgreSQL 11 or later). The default
+     * partition takes the values of months without a partition of their own, like those of a migration.
+     */
     @Override
-    public void doStoreItemValue(Item item, ItemVO vo) {
-        vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
-                new String[] { vo.getTableName(), vo.getDbType(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { vo.getValue() };
-        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
-        Yank.execute(sql, params);
+    public void doCreateNarrowTable(boolean partitioned) {
+        if (!partitioned) {
+            super.doCreateNarrowTable(false);
+            return;
+        }
+        String sql = narrowTableProvider(sqlCreateNarrowTable + " PARTITION BY RANGE (time)");
+        logger.debug("JDBC::doCreateNarrowTable sql={}", sql);
+        Yank.execute(sql, null);
+        sql = narrowTableProvider("CREATE TABLE IF NOT EXISTS #narrowTable#_default PARTITION OF #narrowTable# DEFAULT");
+        logger.debug("JDBC::doCreateNarrowTable sql={}", sql);
+        Yank.execute(sql, null);
     }
 
     @Override
-    public List<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
-            String table, String name) {
-        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name);
-        logger.debug("JDBC::doGetHistItemFilterQuery sql={}", sql);
-        List<Object[]> m = Yank.queryObjectArrays(sql, null);
-
-        List<HistoricItem> items = new ArrayList<>();
-        for (int i = 0; i < m.size(); i++) {
-            items.add(new JdbcHistoricItem(item.getName(), getState(item, m.get(i)[1]), objectAsDate(m.get(i)[0])));
+    public void doCreateNarrowPartition(YearMonth month) {
+        String sql = narrowTableProvider("CREATE TABLE IF NOT EXISTS #narrowTable#_"
+                + String.format("%04d_%02d", month.getYear(), month.getMonthValue())
+                + " PARTITION OF #narrowTable# FOR VALUES FROM ('" + month.atDay(1) + "') TO ('"
+                + month.plusMonths(1).atDay(1) + "')");
+        logger.debug("JDBC::doCreateNarrowPartition sql={}", sql);
+        Yank.execute(sql, null);
+    }
+
+    /**
+     * Writes values with a binary COPY, if the types of all columns of the table can be encoded. Otherwise, or if
+     * the COPY fails, the values are written with a batch of inserts.
+     */
+    @Override
+    public boolean doStoreItemValues(List<ItemValueInsert> inserts, List<ItemVO> vol) {
+        if (vol.isEmpty()) {
+            return true;
+        }
+        DataSource dataSource = Yank.getDefaultConnectionPool();
+        PgBinaryCopy copy = copyAvailable && dataSource != null ? getBinaryCopy(inserts) : null;
+        if (copy == null) {
+            return super.doStoreItemValues(inserts, vol);
+        }
+        List<Object[]> rows = new ArrayList<>(vol.size());
+        for (int i = 0; i < vol.size(); i++) {
+            ItemVO vo = vol.get(i);
+            rows.add(inserts.get(i).getBatchParameters(getTimeParameter(vo.getTime().toInstant()), vo.getValue()));
+        }
+        logger.debug("JDBC::doStoreItemValues {} values={}", copy, rows.size());
+        try (Connection connection = dataSource.getConnection()) {
+            if (PgBinaryCopy.isSupported(connection)) {
+                copy.copy(connection, rows);
+                return true;
+            }
+            copyAvailable = false;
+            logger.warn("JDBC::doStoreItemValues: COPY is not supported by the connection, using inserts from now on");
+        } catch (SQLException | IOException e) {
+            logger.warn("JDBC::doStoreItemValues: COPY into '{}' failed, writing the values with inserts: {}",
+                    inserts.get(0).getTableName(), e.getMessage());
+        } catch (LinkageError e) {
+            copyAvailable = false;
+            logger.warn("JDBC::doStoreItemValues: COPY is not supported by the driver, using inserts from now on: {}",
+                    e.getMessage());
         }
-        return items;
+        return super.doStoreItemValues(inserts, vol);
+    }
+
+    /**
+     * Returns the COPY of the table of the inserts, or null if a column type has no binary encoding.
+     */
+    private PgBinaryCopy getBinaryCopy(List<ItemValueInsert> inserts) {
+        ItemValueInsert first = inserts.get(0);
+        List<String> columns;
+        List<String> types;
+        if (first instanceof NarrowItemValueInsert) {
+            columns = List.of("itemid", "time", "value_num", "value_str");
+            types = List.of("INTEGER", sqlTypes.get("tablePrimaryKey"), sqlTypes.get("tableValueNumber"),
+                    sqlTypes.get("tableValueString"));
+        } else {
+            for (ItemValueInsert insert : inserts) {
+                if (!first.getDbType().equals(insert.getDbType())) {
+                    // the type of the item changed while its values were queued
+                    return null;
+                }
+            }
+            columns = List.of("time", "value");
+            types = List.of(sqlTypes.get("tablePrimaryKey"), first.getDbType());
+        }
+        List<FieldEncoder> encoders = new ArrayList<>(types.size());
+        for (String type : types) {
+            FieldEncoder encoder = PgBinaryCopy.getEncoder(type);
+            if (encoder == null) {
+                logger.debug("JDBC::getBinaryCopy: no binary encoding for type '{}', using inserts", type);
+                return null;
+            }
+            encoders.add(encoder);
+        }
+        return new PgBinaryCopy(getInsertTableName(first.getTableName()), columns, encoders);
     }
 
     /****************************
      * SQL generation Providers *
      ****************************/
-    static final DateTimeFormatter JDBC_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    @Override
+    protected String timeBucketProvider(long seconds) {
+        return "FLOOR(EXTRACT(EPOCH FROM time) / " + seconds + ") * " + seconds;
+    }
 
-    /**
-     * @param filter
-     * @param numberDecimalcount
-     * @param table
-     * @return
-     */
-    private String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
-            String simpleName) {
+    @Override
+    protected String bucketTimeProvider(String bucket) {
+        // stays a timestamp without time zone, like the time column
+        return "TIMESTAMP 'epoch' + " + bucket + " * INTERVAL '1 second'";
+    }
+
+    @Override
+    protected String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
+            String simpleName, List<Object> params) {
         logger.debug(
                 "JDBC::getHistItemFilterQueryProvider filter = {}, numberDecimalcount = {}, table = {}, simpleName = {}",
                 filter.toString(), numberDecimalcount, table, simpleName);
 
-        String filterString = "";
-        if (filter.getBeginDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME>'" + JDBC_DATE_FORMAT.format(filter.getBeginDateZoned()) + "'";
-        }
-        if (filter.getEndDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME<'" + JDBC_DATE_FORMAT.format(filter.getEndDateZoned()) + "'";
-        }
+        String filterString = timeFilterProvider(filter, params);
         filterString += (filter.getOrdering() == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC";
         if (filter.getPageSize() != 0x7fffffff) {
             // see:
@@ -12,9 +12,11 @@
  */
 package org.openhab.persistence.jdbc.db;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
 import org.knowm.yank.Yank;
-import org.openhab.core.items.Item;
-import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
@@ -30,6 +32,9 @@ import org.slf4j.LoggerFactory;
 public class JdbcSqliteDAO extends JdbcBaseDAO {
     private final Logger logger = LoggerFactory.getLogger(JdbcSqliteDAO.class);
 
+    private static final DateTimeFormatter SQLITE_TIME_FORMAT = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
     /********
      * INIT *
      ********/
@@ -47,6 +52,7 @@ public class JdbcSqliteDAO extends JdbcBaseDAO {
         sqlIfTableExists = "SELECT name FROM sqlite_master WHERE type='table' AND name='#searchTable#'";
         sqlCreateItemsTableIfNot = "CREATE TABLE IF NOT EXISTS #itemsManageTable# (ItemId INTEGER PRIMARY KEY AUTOINCREMENT, #colname# #coltype# NOT NULL)";
         sqlInsertItemValue = "INSERT OR IGNORE INTO #tableName# (TIME, VALUE) VALUES( #tablePrimaryValue#, CAST( ? as #dbType#) )";
+        sqlInsertNarrowValue = "INSERT OR IGNORE INTO #narrowTable# (itemid, time, value_num, value_str) VALUES( ?, #tablePrimaryValue#, ?, ? )";
     }
 
     /**
@@ -89,24 +95,32 @@ public class JdbcSqliteDAO extends JdbcBaseDAO {
     /*************
      * ITEM DAOs *
      *************/
-    @Override
-    public void doStoreItemValue(Item item, ItemVO vo) {
-        vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
-                new String[] { vo.getTableName(), vo.getDbType(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { vo.getValue() };
-        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
-        Yank.execute(sql, params);
-    }
-
     /****************************
      * SQL generation Providers *
      ****************************/
+    /**
+     * The time is text in local time, which strftime reads as UTC, and datetime converts back the same way.
+     */
+    @Override
+    protected String timeBucketProvider(long seconds) {
+        return "CAST(strftime('%s', time) AS INTEGER) / " + seconds + " * " + seconds;
+    }
+
+    @Override
+    protected String bucketTimeProvider(String bucket) {
+        return "datetime(" + bucket + ", 'unixepoch')";
+    }
 
     /*****************
      * H E L P E R S *
      *****************/
+    /**
+     * The time is stored as text in local time, like the one created by 'tablePrimaryValue'.
+     */
+    @Override
+    protected Object getTimeParameter(Instant time) {
+        return SQLITE_TIME_FORMAT.format(time.atZone(ZoneId.systemDefault()));
+    }
 
     /******************************
      * public Getters and Setters *
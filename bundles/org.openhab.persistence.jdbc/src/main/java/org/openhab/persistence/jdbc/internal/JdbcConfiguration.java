@@ -22,7 +22,7 @@ import java.util.regex.Pattern;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.persistence.jdbc.db.JdbcBaseDAO;
-import org.openhab.persistence.jdbc.utils.MovingAverage;
+import org.openhab.persistence.jdbc.model.JdbcAggregateFilterCriteria.AggregateFunction;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,15 +57,19 @@ public class JdbcConfiguration {
     private String tableNamePrefix = "item";
     private int tableIdDigitCount = 4;
     private boolean rebuildTableNames = false;
+    // values of all items in a single table instead of one table per item
+    private boolean narrowLayout = false;
+    private boolean partitionByMonth = false;
 
     private int errReconnectThreshold = 0;
 
-    public int timerCount = 0;
-    public int time1000Statements = 0;
-    public long timer1000 = 0;
-    public MovingAverage timeAverage50arr = new MovingAverage(50);
-    public MovingAverage timeAverage100arr = new MovingAverage(100);
-    public MovingAverage timeAverage200arr = new MovingAverage(200);
+    // write-behind queue, disabled if the batch size is 0
+    private int batchSize = 0;
+    private int batchInterval = 1000;
+
+    // aggregation of range queries with a page size, disabled if null
+    private @Nullable AggregateFunction queryAggregation;
+
     public boolean enableLogTime = false;
 
     public JdbcConfiguration(Map<Object, Object> configuration) {
@@ -173,6 +177,47 @@ public class JdbcConfiguration {
             logger.debug("JDBC::updateConfig: rebuildTableNames={}", rebuildTableNames);
         }
 
+        String tl = (String) configuration.get("tableLayout");
+        if (tl != null && !tl.isBlank()) {
+            narrowLayout = "narrow".equalsIgnoreCase(tl.trim());
+            dBDAO.setNarrowLayout(narrowLayout);
+            logger.debug("JDBC::updateConfig: tableLayout={}", tl);
+        }
+
+        String pm = (String) configuration.get("partitionByMonth");
+        if (pm != null && !pm.isBlank()) {
+            partitionByMonth = Boolean.parseBoolean(pm);
+            logger.debug("JDBC::updateConfig: partitionByMonth={}", partitionByMonth);
+        }
+
+        String bs = (String) configuration.get("batchSize");
+        if (bs != null && !bs.isBlank() && isNumericPattern.matcher(bs).matches()) {
+            batchSize = Integer.parseInt(bs);
+            logger.debug("JDBC::updateConfig: batchSize={}", batchSize);
+        }
+
+        String bi = (String) configuration.get("batchInterval");
+        if (bi != null && !bi.isBlank() && isNumericPattern.matcher(bi).matches()) {
+            batchInterval = Integer.parseInt(bi);
+            logger.debug("JDBC::updateConfig: batchInterval={}", batchInterval);
+        }
+
+        String qa = (String) configuration.get("queryAggregation");
+        if (qa != null && !qa.isBlank() && !"NONE".equalsIgnoreCase(qa.trim())) {
+            try {
+                queryAggregation = AggregateFunction.valueOf(qa.trim().toUpperCase());
+                logger.debug("JDBC::updateConfig: queryAggregation={}", queryAggregation);
+            } catch (IllegalArgumentException e) {
+                logger.warn("JDBC::updateConfig: Ignoring unknown queryAggregation '{}'", qa);
+            }
+        }
+
+        String fs = (String) configuration.get("fetchSize");
+        if (fs != null && !fs.isBlank() && isNumericPattern.matcher(fs).matches()) {
+            dBDAO.setFetchSize(Integer.parseInt(fs));
+            logger.debug("JDBC::updateConfig: fetchSize={}", fs);
+        }
+
         // undocumented
         String ac = (String) configuration.get("maximumPoolSize");
         if (ac != null && !ac.isBlank()) {
@@ -351,6 +396,26 @@ public class JdbcConfiguration {
         return tableIdDigitCount;
     }
 
+    public boolean isNarrowLayout() {
+        return narrowLayout;
+    }
+
+    public boolean isPartitionByMonth() {
+        return narrowLayout && partitionByMonth;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getBatchInterval() {
+        return batchInterval;
+    }
+
+    public @Nullable AggregateFunction getQueryAggregation() {
+        return queryAggregation;
+    }
+
     public JdbcBaseDAO getDBDAO() {
         return dBDAO;
     }
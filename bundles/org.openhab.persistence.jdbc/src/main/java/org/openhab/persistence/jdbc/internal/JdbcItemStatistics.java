@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.persistence.PersistenceItemInfo;
+import org.openhab.persistence.jdbc.model.JdbcPersistenceItemInfo;
+
+/**
+ * In-memory index of the number of values and the earliest and latest time of each item, so that the item info
+ * does not need to query the tables.
+ *
+ * The index of an item is seeded once with an aggregate query of its table, and then updated with every value
+ * stored. Values stored before the seed arrives are kept aside and only added if they are newer than the latest value
+ * found by the query, as the older ones have already been counted by it. Values that replace one with the same time
+ * are counted again, so the count is a close estimate rather than exact.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcItemStatistics {
+
+    // number of contributions kept per item until it is seeded, the oldest are dropped beyond
+    private static final int MAX_UNSEEDED = 10000;
+
+    private final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the result of the aggregate query of an item.
+     *
+     * @param itemName the name of the item
+     * @param count the number of values in the table
+     * @param earliest the earliest time in the table, null if it is empty
+     * @param latest the latest time in the table, null if it is empty
+     */
+    public void seed(String itemName, long count, @Nullable Date earliest, @Nullable Date latest) {
+        statistics.computeIfAbsent(itemName, name -> new Statistics()).seed(count, earliest, latest);
+    }
+
+    /**
+     * Adds values stored for an item.
+     *
+     * @param itemName the name of the item
+     * @param count the number of values
+     * @param earliest the earliest time of the values
+     * @param latest the latest time of the values
+     */
+    public void stored(String itemName, int count, Date earliest, Date latest) {
+        statistics.computeIfAbsent(itemName, name -> new Statistics()).stored(count, earliest, latest);
+    }
+
+    /**
+     * Returns the item info with the count, earliest and latest time, if the item has been seeded. Otherwise the
+     * info only contains the name.
+     */
+    public PersistenceItemInfo getInfo(String itemName) {
+        Statistics s = statistics.get(itemName);
+        return s == null ? new JdbcPersistenceItemInfo(itemName) : s.getInfo(itemName);
+    }
+
+    public void clear() {
+        statistics.clear();
+    }
+
+    /**
+     * Values stored with a single call of {@link JdbcItemStatistics#stored(String, int, Date, Date)}.
+     */
+    private static class Contribution {
+        private final int count;
+        private final Date earliest;
+        private final Date latest;
+
+        private Contribution(int count, Date earliest, Date latest) {
+            this.count = count;
+            this.earliest = earliest;
+            this.latest = latest;
+        }
+    }
+
+    /**
+     * Statistics of an item.
+     */
+    private static class Statistics {
+        private boolean seeded = false;
+        private long count = 0;
+        private @Nullable Date earliest;
+        private @Nullable Date latest;
+        // the latest time found by the seeding query, values up to it have been counted by the query
+        private @Nullable Date seededLatest;
+        private final Deque<Contribution> unseeded = new ArrayDeque<>();
+
+        private synchronized void seed(long count, @Nullable Date earliest, @Nullable Date latest) {
+            this.seeded = true;
+            this.count = count;
+            this.earliest = earliest;
+            this.latest = latest;
+            this.seededLatest = latest;
+            for (Contribution contribution : unseeded) {
+                add(contribution);
+            }
+            unseeded.clear();
+        }
+
+        private synchronized void stored(int count, Date earliest, Date latest) {
+            Contribution contribution = new Contribution(count, earliest, latest);
+            if (seeded) {
+                add(contribution);
+            } else {
+                unseeded.addLast(contribution);
+                if (unseeded.size() > MAX_UNSEEDED) {
+                    unseeded.removeFirst();
+                }
+            }
+        }
+
+        private void add(Contribution contribution) {
+            Date seededLatest = this.seededLatest;
+            if (seededLatest != null && !contribution.latest.after(seededLatest)) {
+                // already counted by the seeding query
+                return;
+            }
+            count += contribution.count;
+            earliest = min(earliest, contribution.earliest);
+            latest = max(latest, contribution.latest);
+        }
+
+        private synchronized PersistenceItemInfo getInfo(String itemName) {
+            if (!seeded) {
+                return new JdbcPersistenceItemInfo(itemName);
+            }
+            return new JdbcPersistenceItemInfo(itemName, (int) Math.min(count, Integer.MAX_VALUE), earliest, latest);
+        }
+
+        private static @Nullable Date min(@Nullable Date a, @Nullable Date b) {
+            if (a == null) {
+                return b;
+            }
+            return b == null || a.before(b) ? a : b;
+        }
+
+        private static @Nullable Date max(@Nullable Date a, @Nullable Date b) {
+            if (a == null) {
+                return b;
+            }
+            return b == null || a.after(b) ? a : b;
+        }
+    }
+}
@@ -12,21 +12,38 @@
  */
 package org.openhab.persistence.jdbc.internal;
 
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.knowm.yank.Yank;
+import org.openhab.core.common.NamedThreadFactory;
+import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceItemInfo;
 import org.openhab.persistence.jdbc.model.ItemVO;
+import org.openhab.persistence.jdbc.model.ItemValueInsert;
 import org.openhab.persistence.jdbc.model.ItemsVO;
+import org.openhab.persistence.jdbc.model.JdbcAggregateFilterCriteria;
 import org.openhab.persistence.jdbc.model.JdbcPersistenceItemInfo;
+import org.openhab.persistence.jdbc.model.NarrowItemValueInsert;
+import org.openhab.persistence.jdbc.utils.JdbcMetrics;
+import org.openhab.persistence.jdbc.utils.JdbcMetrics.Operation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,10 +59,21 @@ public class JdbcMapper {
     protected int errCnt;
     protected boolean initialized = false;
     protected JdbcConfiguration conf = null;
-    protected final Map<String, String> sqlTables = new HashMap<>();
-    private long afterAccessMin = 10000;
-    private long afterAccessMax = 0;
+    protected final JdbcTableRegistry sqlTables = new JdbcTableRegistry(this::createTable);
+    protected final Map<String, ItemValueInsert> itemValueInserts = new ConcurrentHashMap<>();
+    protected volatile JdbcWriteQueue writeQueue = null;
+    protected final JdbcPageCursors pageCursors = new JdbcPageCursors();
+    protected final JdbcMetrics metrics = new JdbcMetrics(this::getQueueDepth);
+    protected volatile JdbcItemStatistics itemStatistics = new JdbcItemStatistics();
+    private ExecutorService statisticsSeeder = null;
+    // ids of the items in the items table, used as itemid of the narrow table
+    protected final Map<String, Integer> itemIds = new ConcurrentHashMap<>();
+    private volatile long nextPartitionCheck = 0;
     private static final String ITEM_NAME_PATTERN = "[^a-zA-Z_0-9\\-]";
+    // leaves most connections of the pool for storing values while the statistics are seeded
+    private static final int SEED_THREADS = 4;
+    // values read from a per-item table and written to the narrow table at once while migrating
+    private static final int MIGRATION_BATCH_SIZE = 1000;
 
     /*****************
      * MAPPER ITEMS *
@@ -53,70 +81,79 @@ public class JdbcMapper {
     public boolean pingDB() {
         logger.debug("JDBC::pingDB");
         boolean ret = false;
-        long timerStart = System.currentTimeMillis();
-        if (openConnection()) {
-            if (conf.getDbName() == null) {
-                logger.debug(
-                        "JDBC::pingDB asking db for name as absolutely first db action, after connection is established.");
-                String dbName = conf.getDBDAO().doGetDB();
-                conf.setDbName(dbName);
-                ret = dbName.length() > 0;
-            } else {
-                ret = conf.getDBDAO().doPingDB() > 0;
+        long timerStart = System.nanoTime();
+        try {
+            if (openConnection()) {
+                if (conf.getDbName() == null) {
+                    logger.debug(
+                            "JDBC::pingDB asking db for name as absolutely first db action, after connection is established.");
+                    String dbName = conf.getDBDAO().doGetDB();
+                    conf.setDbName(dbName);
+                    ret = dbName.length() > 0;
+                } else {
+                    ret = conf.getDBDAO().doPingDB() > 0;
+                }
             }
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.PING);
+            throw e;
+        }
+        if (ret) {
+            logTime(Operation.PING, timerStart);
+        } else {
+            metrics.failed(Operation.PING);
         }
-        logTime("pingDB", timerStart, System.currentTimeMillis());
         return ret;
     }
 
     public String getDB() {
         logger.debug("JDBC::getDB");
-        long timerStart = System.currentTimeMillis();
+        long timerStart = System.nanoTime();
         String res = conf.getDBDAO().doGetDB();
-        logTime("pingDB", timerStart, System.currentTimeMillis());
+        logTime(Operation.PING, timerStart);
         return res;
     }
 
     public ItemsVO createNewEntryInItemsTable(ItemsVO vo) {
         logger.debug("JDBC::createNewEntryInItemsTable");
-        long timerStart = System.currentTimeMillis();
+        long timerStart = System.nanoTime();
         Long i = conf.getDBDAO().doCreateNewEntryInItemsTable(vo);
         vo.setItemid(i.intValue());
-        logTime("doCreateNewEntryInItemsTable", timerStart, System.currentTimeMillis());
+        logTime(Operation.SCHEMA, timerStart);
         return vo;
     }
 
     public boolean createItemsTableIfNot(ItemsVO vo) {
         logger.debug("JDBC::createItemsTableIfNot");
-        long timerStart = System.currentTimeMillis();
+        long timerStart = System.nanoTime();
         conf.getDBDAO().doCreateItemsTableIfNot(vo);
-        logTime("doCreateItemsTableIfNot", timerStart, System.currentTimeMillis());
+        logTime(Operation.SCHEMA, timerStart);
         return true;
     }
 
     public ItemsVO deleteItemsEntry(ItemsVO vo) {
         logger.debug("JDBC::deleteItemsEntry");
-        long timerStart = System.currentTimeMillis();
+        long timerStart = System.nanoTime();
         conf.getDBDAO().doDeleteItemsEntry(vo);
-        logTime("deleteItemsEntry", timerStart, System.currentTimeMillis());
+        logTime(Operation.SCHEMA, timerStart);
         return vo;
     }
 
     public List<ItemsVO> getItemIDTableNames() {
         logger.debug("JDBC::getItemIDTableNames");
-        long timerStart = System.currentTimeMillis();
+        long timerStart = System.nanoTime();
         List<ItemsVO> vo = conf.getDBDAO().doGetItemIDTableNames(new ItemsVO());
-        logTime("getItemIDTableNames", timerStart, System.currentTimeMillis());
+        logTime(Operation.SCHEMA, timerStart);
         return vo;
     }
 
     public List<ItemsVO> getItemTables() {
         logger.debug("JDBC::getItemTables");
-        long timerStart = System.currentTimeMillis();
+        long timerStart = System.nanoTime();
         ItemsVO vo = new ItemsVO();
         vo.setJdbcUriDatabaseName(conf.getDbName());
         List<ItemsVO> vol = conf.getDBDAO().doGetItemTables(vo);
-        logTime("getItemTables", timerStart, System.currentTimeMillis());
+        logTime(Operation.SCHEMA, timerStart);
         return vol;
     }
 
@@ -125,44 +162,155 @@ public class JdbcMapper {
      ****************/
     public void updateItemTableNames(List<ItemVO> vol) {
         logger.debug("JDBC::updateItemTableNames");
-        long timerStart = System.currentTimeMillis();
+        long timerStart = System.nanoTime();
         conf.getDBDAO().doUpdateItemTableNames(vol);
-        logTime("updateItemTableNames", timerStart, System.currentTimeMillis());
+        logTime(Operation.SCHEMA, timerStart);
     }
 
     public ItemVO createItemTable(ItemVO vo) {
         logger.debug("JDBC::createItemTable");
-        long timerStart = System.currentTimeMillis();
+        long timerStart = System.nanoTime();
         conf.getDBDAO().doCreateItemTable(vo);
-        logTime("createItemTable", timerStart, System.currentTimeMillis());
+        logTime(Operation.SCHEMA, timerStart);
         return vo;
     }
 
     public Item storeItemValue(Item item) {
         logger.debug("JDBC::storeItemValue: item={}", item.toString());
-        String tableName = getTable(item);
-        if (tableName == null) {
+        ItemValueInsert insert = getItemValueInsert(item);
+        if (insert == null) {
             logger.error("JDBC::store: Unable to store item '{}'.", item.getName());
             return item;
         }
-        long timerStart = System.currentTimeMillis();
-        conf.getDBDAO().doStoreItemValue(item, new ItemVO(tableName, null));
-        logTime("storeItemValue", timerStart, System.currentTimeMillis());
+        if (conf.isPartitionByMonth() && System.currentTimeMillis() >= nextPartitionCheck) {
+            createNarrowPartitions();
+        }
+        JdbcWriteQueue queue = writeQueue;
+        if (queue != null) {
+            // the value and its time are taken now, the value is written with the next batch
+            ItemVO vo = new ItemVO(insert.getTableName(), null);
+            vo.setValue(insert.getValue(item.getState()));
+            vo.setTime(new Date());
+            queue.add(insert, vo);
+            return item;
+        }
+        long timerStart = System.nanoTime();
+        boolean stored;
+        try {
+            stored = conf.getDBDAO().doStoreItemValue(insert, item.getState());
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.STORE);
+            throw e;
+        }
+        if (!stored) {
+            metrics.failed(Operation.STORE);
+            return item;
+        }
+        logTime(Operation.STORE, timerStart);
+        // the time is set by the database server, the local time is close enough for the statistics
+        Date now = new Date();
+        itemStatistics.stored(insert.getItemName(), 1, now, now);
         errCnt = 0;
         return item;
     }
 
-    public List<HistoricItem> getHistItemFilterQuery(FilterCriteria filter, int numberDecimalcount, String table,
+    public void storeItemValues(List<ItemValueInsert> inserts, List<ItemVO> vol) {
+        if (vol.isEmpty()) {
+            return;
+        }
+        logger.debug("JDBC::storeItemValues: table={} values={}", inserts.get(0).getTableName(), vol.size());
+        long timerStart = System.nanoTime();
+        boolean stored;
+        try {
+            stored = conf.getDBDAO().doStoreItemValues(inserts, vol);
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.STORE_BATCH);
+            throw e;
+        }
+        if (!stored) {
+            metrics.failed(Operation.STORE_BATCH);
+            storeItemValuesSingly(inserts, vol);
+            return;
+        }
+        logTime(Operation.STORE_BATCH, timerStart);
+        // a batch of the narrow table holds the values of several items
+        JdbcItemStatistics statistics = itemStatistics;
+        for (int i = 0; i < vol.size(); i++) {
+            Date time = vol.get(i).getTime();
+            statistics.stored(inserts.get(i).getItemName(), 1, time, time);
+        }
+        errCnt = 0;
+    }
+
+    /**
+     * Writes the values of a failed batch one by one, as a single value that cannot be written, e.g. because its
+     * time already exists, fails the whole batch.
+     *
+     * @return the number of values written, or -1 if the database is not reachable
+     */
+    private int storeItemValuesSingly(List<ItemValueInsert> inserts, List<ItemVO> vol) {
+        if (!pingDB()) {
+            logger.warn("JDBC::storeItemValues: Could not write {} values to table '{}', the database is not reachable",
+                    vol.size(), inserts.get(0).getTableName());
+            return -1;
+        }
+        logger.debug("JDBC::storeItemValues: batch failed, writing {} values one by one", vol.size());
+        JdbcItemStatistics statistics = itemStatistics;
+        int failed = 0;
+        for (int i = 0; i < vol.size(); i++) {
+            ItemValueInsert insert = inserts.get(i);
+            ItemVO vo = vol.get(i);
+            long timerStart = System.nanoTime();
+            boolean stored;
+            try {
+                stored = conf.getDBDAO().doStoreItemValue(insert, vo);
+            } catch (RuntimeException e) {
+                logger.debug("JDBC::storeItemValues: Could not write value of '{}': {}", insert.getItemName(),
+                        e.getMessage());
+                stored = false;
+            }
+            if (stored) {
+                logTime(Operation.STORE, timerStart);
+                statistics.stored(insert.getItemName(), 1, vo.getTime(), vo.getTime());
+            } else {
+                metrics.failed(Operation.STORE);
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            logger.warn("JDBC::storeItemValues: Could not write {} of {} values to table '{}'", failed, vol.size(),
+                    inserts.get(0).getTableName());
+        }
+        if (failed < vol.size()) {
+            errCnt = 0;
+        }
+        return vol.size() - failed;
+    }
+
+    public Iterable<HistoricItem> getHistItemFilterQuery(FilterCriteria filter, int numberDecimalcount, String table,
             Item item) {
         logger.debug(
                 "JDBC::getHistItemFilterQuery filter='{}' numberDecimalcount='{}' table='{}' item='{}' itemName='{}'",
                 (filter != null), numberDecimalcount, table, item, item.getName());
         if (table != null) {
-            long timerStart = System.currentTimeMillis();
-            List<HistoricItem> r = conf.getDBDAO().doGetHistItemFilterQuery(item, filter, numberDecimalcount, table,
-                    item.getName());
-            logTime("insertItemValue", timerStart, System.currentTimeMillis());
-            return r;
+            JdbcWriteQueue queue = writeQueue;
+            if (queue != null) {
+                // make sure that the values stored so far are part of the result
+                queue.flush(table);
+            }
+            // the item of a group is its base item, so the name is taken from the filter
+            String source = getQuerySource(filter.getItemName() != null ? filter.getItemName() : item.getName(),
+                    item, table);
+            if (filter instanceof JdbcAggregateFilterCriteria) {
+                // aggregated in the database, one row per bucket
+                return conf.getDBDAO().doGetHistItemAggregateQuery(item, (JdbcAggregateFilterCriteria) filter,
+                        numberDecimalcount, source);
+            }
+            // follow-up pages start after the last value of the previous page instead of skipping it with an offset
+            FilterCriteria query = pageCursors.seek(filter);
+            // the query runs when the result is iterated
+            return pageCursors.track(filter, conf.getDBDAO().doGetHistItemFilterQuery(item, query,
+                    numberDecimalcount, source, item.getName()));
         } else {
             logger.error("JDBC::getHistItemFilterQuery: TABLE is NULL; cannot get data from non-existent table.");
         }
@@ -177,6 +325,7 @@ public class JdbcMapper {
         if (conf.isDriverAvailable() && !conf.isDbConnected()) {
             logger.info("JDBC::openConnection: Driver is available::Yank setupDataSource");
             Yank.setupDefaultConnectionPool(conf.getHikariConfiguration());
+            metrics.observe(Yank.getDefaultConnectionPool());
             conf.setDbConnected(true);
             return true;
         } else if (!conf.isDriverAvailable()) {
@@ -194,6 +343,35 @@ public class JdbcMapper {
         conf.setDbConnected(false);
     }
 
+    /**
+     * Starts the write-behind queue if a batch size is configured.
+     */
+    protected void startWriteQueue() {
+        stopWriteQueue();
+        if (conf.getBatchSize() > 0) {
+            logger.debug("JDBC::startWriteQueue: batchSize={} batchInterval={}", conf.getBatchSize(),
+                    conf.getBatchInterval());
+            writeQueue = new JdbcWriteQueue(conf.getBatchSize(), conf.getBatchInterval(), this::storeItemValues);
+        }
+    }
+
+    /**
+     * Stops the write-behind queue, writing the values that are still queued.
+     */
+    protected void stopWriteQueue() {
+        JdbcWriteQueue queue = writeQueue;
+        writeQueue = null;
+        if (queue != null) {
+            logger.debug("JDBC::stopWriteQueue: writing {} queued values", queue.size());
+            queue.stop();
+        }
+    }
+
+    private int getQueueDepth() {
+        JdbcWriteQueue queue = writeQueue;
+        return queue != null ? queue.size() : 0;
+    }
+
     protected boolean checkDBAccessability() {
         // Check if connection is valid
         if (initialized) {
@@ -216,9 +394,21 @@ public class JdbcMapper {
      * DATABASE TABLEHANDLING *
      **************************/
     protected void checkDBSchema() {
+        // the prepared inserts and page cursors belong to the previous configuration
+        itemValueInserts.clear();
+        pageCursors.clear();
+        itemIds.clear();
         // Create Items Table if does not exist
         createItemsTableIfNot(new ItemsVO());
-        if (conf.getRebuildTableNames()) {
+        if (conf.isNarrowLayout()) {
+            createNarrowTable();
+            // Reset the error counter
+            errCnt = 0;
+            for (ItemsVO vo : getItemIDTableNames()) {
+                itemIds.put(vo.getItemname(), vo.getItemid());
+                sqlTables.put(vo.getItemname(), conf.getDBDAO().getNarrowTable());
+            }
+        } else if (conf.getRebuildTableNames()) {
             formatTableNames();
             logger.info(
                     "JDBC::checkDBSchema: Rebuild complete, configure the 'rebuildTableNames' setting to 'false' to stop rebuilds on startup");
@@ -232,61 +422,200 @@ public class JdbcMapper {
                 sqlTables.put(al.get(i).getItemname(), t);
             }
         }
+        seedItemStatistics();
     }
 
-    protected String getTable(Item item) {
-        int rowId = 0;
-        ItemsVO isvo;
-        ItemVO ivo;
+    /**
+     * Creates the narrow table and, if it is partitioned, the partitions of the current and the next month.
+     */
+    protected void createNarrowTable() {
+        logger.debug("JDBC::createNarrowTable: partitionByMonth={}", conf.isPartitionByMonth());
+        long timerStart = System.nanoTime();
+        conf.getDBDAO().doCreateNarrowTable(conf.isPartitionByMonth());
+        logTime(Operation.SCHEMA, timerStart);
+        if (conf.isPartitionByMonth()) {
+            createNarrowPartitions();
+        }
+    }
 
-        String itemName = item.getName();
+    /**
+     * Creates the partitions of the current and the next month, if they do not exist. This is checked once a day, so
+     * the partition of a month exists before its first value is stored.
+     */
+    protected void createNarrowPartitions() {
+        nextPartitionCheck = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
+        long timerStart = System.nanoTime();
+        YearMonth month = YearMonth.now();
+        try {
+            conf.getDBDAO().doCreateNarrowPartition(month);
+            conf.getDBDAO().doCreateNarrowPartition(month.plusMonths(1));
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.SCHEMA);
+            logger.warn("JDBC::createNarrowPartitions: Could not create the partitions of {}: {}", month,
+                    e.getMessage());
+            return;
+        }
+        logTime(Operation.SCHEMA, timerStart);
+    }
+
+    /**
+     * Seeds the statistics of the items in the background, with one aggregate query per item table. The queries run
+     * in parallel on a few threads.
+     */
+    protected void seedItemStatistics() {
+        stopSeedingItemStatistics();
+        JdbcItemStatistics statistics = new JdbcItemStatistics();
+        itemStatistics = statistics;
+        Set<String> itemNames = sqlTables.getItemNames();
+        if (itemNames.isEmpty()) {
+            return;
+        }
+        logger.debug("JDBC::seedItemStatistics: seeding the statistics of {} items", itemNames.size());
+        ExecutorService seeder = Executors.newFixedThreadPool(Math.min(SEED_THREADS, itemNames.size()),
+                new NamedThreadFactory("JDBC-statistics"));
+        statisticsSeeder = seeder;
+        for (String itemName : itemNames) {
+            seeder.execute(() -> seedItemStatistics(statistics, itemName));
+        }
+        // the threads end once all tables have been queried
+        seeder.shutdown();
+    }
+
+    /**
+     * Stops seeding the statistics, if it is still running.
+     */
+    protected void stopSeedingItemStatistics() {
+        ExecutorService seeder = statisticsSeeder;
+        statisticsSeeder = null;
+        if (seeder != null) {
+            seeder.shutdownNow();
+        }
+    }
+
+    private void seedItemStatistics(JdbcItemStatistics statistics, String itemName) {
         String tableName = sqlTables.get(itemName);
+        if (tableName == null) {
+            return;
+        }
+        if (conf.isNarrowLayout()) {
+            Integer itemId = itemIds.get(itemName);
+            if (itemId == null) {
+                return;
+            }
+            tableName = conf.getDBDAO().getNarrowItemTable(itemId, null);
+        }
+        long timerStart = System.nanoTime();
+        JdbcPersistenceItemInfo info = conf.getDBDAO().doGetItemStatistics(itemName, tableName);
+        if (info == null) {
+            metrics.failed(Operation.SCHEMA);
+            logger.debug("JDBC::seedItemStatistics: Could not query the statistics of item '{}'", itemName);
+            return;
+        }
+        logTime(Operation.SCHEMA, timerStart);
+        statistics.seed(itemName, info.getCount(), info.getEarliest(), info.getLatest());
+    }
 
-        // Table already exists - return the name
-        if (tableName != null) {
-            return tableName;
+    /**
+     * Returns the prepared insert of an item, creating the table of the item if needed. The insert is prepared once
+     * per item and prepared again only if the type of the item changes.
+     *
+     * @param item the item
+     * @return the prepared insert or null, if the table of the item could not be created
+     */
+    protected ItemValueInsert getItemValueInsert(Item item) {
+        ItemValueInsert insert = itemValueInserts.get(item.getName());
+        if (insert != null && insert.isFor(item)) {
+            return insert;
+        }
+        String tableName = getTable(item);
+        if (tableName == null) {
+            metrics.failed(Operation.CREATE_TABLE);
+            return null;
+        }
+        if (conf.isNarrowLayout()) {
+            Integer itemId = itemIds.get(item.getName());
+            if (itemId == null) {
+                logger.error("JDBC::getItemValueInsert: no id found for item '{}'", item.getName());
+                return null;
+            }
+            insert = conf.getDBDAO().prepareNarrowItemValueInsert(item, itemId);
+        } else {
+            insert = conf.getDBDAO().prepareItemValueInsert(item, tableName);
         }
+        logger.debug("JDBC::getItemValueInsert: prepared {}", insert);
+        itemValueInserts.put(item.getName(), insert);
+        return insert;
+    }
+
+    protected String getTable(Item item) {
+        return sqlTables.getOrCreate(item);
+    }
 
+    /**
+     * Returns what the values of an item are queried from: the table of the item, or the values of the item in the
+     * narrow table.
+     */
+    private String getQuerySource(String itemName, Item item, String table) {
+        if (!conf.isNarrowLayout()) {
+            return table;
+        }
+        Integer itemId = itemIds.get(itemName);
+        if (itemId == null) {
+            logger.warn("JDBC::getQuerySource: no id found for item '{}', the query returns no values", itemName);
+            itemId = -1;
+        }
+        return conf.getDBDAO().getNarrowItemTable(itemId, item);
+    }
+
+    /**
+     * Creates the entry in the items table and the table of a new item. In the narrow layout only the entry is
+     * created, as the values are written to the narrow table.
+     *
+     * @param item the item
+     * @return the name of the table or null, if it could not be created
+     */
+    private String createTable(Item item) {
+        long timerStart = System.nanoTime();
+        String itemName = item.getName();
         logger.debug("JDBC::getTable: no table found for item '{}' in sqlTables", itemName);
 
         // Create a new entry in items table
-        isvo = new ItemsVO();
+        ItemsVO isvo = new ItemsVO();
         isvo.setItemname(itemName);
         isvo = createNewEntryInItemsTable(isvo);
-        rowId = isvo.getItemid();
+        int rowId = isvo.getItemid();
         if (rowId == 0) {
             logger.error("JDBC::getTable: Creating table for item '{}' failed.", itemName);
+            return null;
+        }
+        if (conf.isNarrowLayout()) {
+            itemIds.put(itemName, rowId);
+            logTime(Operation.CREATE_TABLE, timerStart);
+            itemStatistics.seed(itemName, 0, null, null);
+            return conf.getDBDAO().getNarrowTable();
         }
         // Create the table name
         logger.debug("JDBC::getTable: getTableName with rowId={} itemName={}", rowId, itemName);
-        tableName = getTableName(rowId, itemName);
-
-        // An error occurred adding the item name into the index list!
-        if (tableName == null) {
-            logger.error("JDBC::getTable: tableName was null; could not create a table for item '{}'", itemName);
-            return null;
-        }
+        String tableName = getTableName(rowId, itemName);
 
         // Create table for item
         String dataType = conf.getDBDAO().getDataType(item);
-        ivo = new ItemVO(tableName, itemName);
+        ItemVO ivo = new ItemVO(tableName, itemName);
         ivo.setDbType(dataType);
-        ivo = createItemTable(ivo);
-        logger.debug("JDBC::getTable: Table created for item '{}' with dataType {} in SQL database.", itemName,
-                dataType);
-        sqlTables.put(itemName, tableName);
-
-        // Check if the new entry is in the table list
-        // If it's not in the list, then there was an error and we need to do
-        // some tidying up
-        // The item needs to be removed from the index table to avoid duplicates
-        if (sqlTables.get(itemName) == null) {
+        try {
+            createItemTable(ivo);
+        } catch (RuntimeException e) {
+            // The item needs to be removed from the index table to avoid duplicates
             logger.error("JDBC::getTable: Item '{}' was not added to the table - removing index", itemName);
             isvo = new ItemsVO();
             isvo.setItemname(itemName);
             deleteItemsEntry(isvo);
+            throw e;
         }
-
+        logger.debug("JDBC::getTable: Table created for item '{}' with dataType {} in SQL database.", itemName,
+                dataType);
+        logTime(Operation.CREATE_TABLE, timerStart);
+        itemStatistics.seed(itemName, 0, null, null);
         return tableName;
     }
 
@@ -365,12 +694,126 @@ public class JdbcMapper {
     }
 
     public Set<PersistenceItemInfo> getItems() {
-        // TODO: in general it would be possible to query the count, earliest and latest values for each item too but it
-        // would be a very costly operation
-        return sqlTables.keySet().stream().map(itemName -> new JdbcPersistenceItemInfo(itemName))
+        // count, earliest and latest are taken from the statistics, as soon as they have been seeded
+        JdbcItemStatistics statistics = itemStatistics;
+        return sqlTables.getItemNames().stream().map(statistics::getInfo)
                 .collect(Collectors.<PersistenceItemInfo> toUnmodifiableSet());
     }
 
+    /**
+     * Copies the values of all items from the tables of the per-item layout into the narrow table. The values are
+     * read in pages of {@value #MIGRATION_BATCH_SIZE}, so that a pool with a single connection suffices, and written
+     * with one batch per page. The per-item tables are kept.
+     *
+     * @param items returns the item of a name, or null if it does not exist
+     * @return the number of items whose values have been migrated
+     */
+    public int migrateToNarrowTable(Function<String, Item> items) {
+        if (!conf.isNarrowLayout()) {
+            logger.warn("JDBC::migrateToNarrowTable: the narrow table layout is not configured");
+            return 0;
+        }
+        int migrated = 0;
+        for (ItemsVO vo : getItemIDTableNames()) {
+            String itemName = vo.getItemname();
+            Item item = items.apply(itemName);
+            // the values of a group are converted with its base item
+            Item baseItem = item instanceof GroupItem ? ((GroupItem) item).getBaseItem() : item;
+            if (baseItem == null) {
+                logger.warn("JDBC::migrateToNarrowTable: no item or base item found for '{}', skipping its table",
+                        itemName);
+                continue;
+            }
+            String tableName = getTableName(vo.getItemid(), itemName);
+            try {
+                long count = migrateToNarrowTable(item, baseItem, vo.getItemid(), tableName);
+                logger.info("JDBC::migrateToNarrowTable: migrated {} values of item '{}' from table '{}'", count,
+                        itemName, tableName);
+                migrated++;
+            } catch (RuntimeException e) {
+                metrics.failed(Operation.STORE_BATCH);
+                logger.warn("JDBC::migrateToNarrowTable: Could not migrate the values of item '{}': {}", itemName,
+                        e.getMessage());
+            }
+        }
+        seedItemStatistics();
+        return migrated;
+    }
+
+    private long migrateToNarrowTable(Item item, Item baseItem, int itemId, String tableName) {
+        NarrowItemValueInsert insert = conf.getDBDAO().prepareNarrowItemValueInsert(item, itemId);
+        FilterCriteria page = new FilterCriteria();
+        page.setItemName(item.getName());
+        page.setOrdering(Ordering.ASCENDING);
+        page.setPageSize(MIGRATION_BATCH_SIZE);
+        // a previous run may have copied a part of the values already, they are not copied again
+        ZonedDateTime migratedUntil = getMigratedUntil(baseItem, itemId, item.getName(), tableName);
+        if (migratedUntil != null) {
+            page.setBeginDate(migratedUntil);
+        }
+        long count = 0;
+        List<ItemValueInsert> inserts = new ArrayList<>();
+        List<ItemVO> vol = new ArrayList<>();
+        while (true) {
+            // each page continues after the last time of the previous one
+            for (HistoricItem value : conf.getDBDAO().doGetHistItemFilterQuery(baseItem, page, -1, tableName,
+                    item.getName(), false)) {
+                ItemVO vo = new ItemVO(insert.getTableName(), null);
+                vo.setValue(insert.getValue(value.getState()));
+                vo.setTime(Date.from(value.getTimestamp().toInstant()));
+                inserts.add(insert);
+                vol.add(vo);
+                page.setBeginDate(value.getTimestamp());
+            }
+            if (vol.isEmpty()) {
+                return count;
+            }
+            long timerStart = System.nanoTime();
+            if (conf.getDBDAO().doStoreItemValues(inserts, vol)) {
+                logTime(Operation.STORE_BATCH, timerStart);
+                count += vol.size();
+            } else {
+                // values that have been copied before fail the whole batch, the others are written one by one
+                metrics.failed(Operation.STORE_BATCH);
+                int stored = storeItemValuesSingly(inserts, vol);
+                if (stored < 0) {
+                    throw new IllegalStateException("the database is not reachable");
+                }
+                count += stored;
+            }
+            if (vol.size() < MIGRATION_BATCH_SIZE) {
+                return count;
+            }
+            inserts.clear();
+            vol.clear();
+        }
+    }
+
+    /**
+     * Returns the time until which the values of an item have already been copied into the narrow table, i.e. the
+     * latest time in the narrow table that is not after the latest time in the table of the item. Values stored with
+     * the narrow layout since then are newer.
+     *
+     * @return the time or null, if no values have been copied yet
+     */
+    private ZonedDateTime getMigratedUntil(Item baseItem, int itemId, String itemName, String tableName) {
+        JdbcPersistenceItemInfo info = conf.getDBDAO().doGetItemStatistics(itemName, tableName);
+        if (info == null || info.getLatest() == null) {
+            return null;
+        }
+        FilterCriteria last = new FilterCriteria();
+        last.setItemName(itemName);
+        last.setOrdering(Ordering.DESCENDING);
+        last.setPageSize(1);
+        // the end date is exclusive
+        last.setEndDate(ZonedDateTime.ofInstant(info.getLatest().toInstant().plusMillis(1), ZoneId.systemDefault()));
+        for (HistoricItem value : conf.getDBDAO().doGetHistItemFilterQuery(baseItem, last, -1,
+                conf.getDBDAO().getNarrowItemTable(itemId, baseItem), itemName, true)) {
+            return value.getTimestamp();
+        }
+        return null;
+    }
+
     private static String formatRight(final Object value, final int len) {
         final String valueAsString = String.valueOf(value);
         if (valueAsString.length() < len) {
@@ -388,31 +831,21 @@ public class JdbcMapper {
     /*****************
      * H E L P E R S *
      *****************/
-    private void logTime(String me, long timerStart, long timerStop) {
-        if (conf.enableLogTime && logger.isInfoEnabled()) {
-            conf.timerCount++;
-            int timerDiff = (int) (timerStop - timerStart);
-            if (timerDiff < afterAccessMin) {
-                afterAccessMin = timerDiff;
-            }
-            if (timerDiff > afterAccessMax) {
-                afterAccessMax = timerDiff;
-            }
-            conf.timeAverage50arr.add(timerDiff);
-            conf.timeAverage100arr.add(timerDiff);
-            conf.timeAverage200arr.add(timerDiff);
-            if (conf.timerCount == 1) {
-                conf.timer1000 = System.currentTimeMillis();
-            }
-            if (conf.timerCount == 1001) {
-                conf.time1000Statements = Math.round(((int) (System.currentTimeMillis() - conf.timer1000)) / 1000);// Seconds
-                conf.timerCount = 0;
-            }
-            logger.info(
-                    "JDBC::logTime: '{}':\n afterAccess     = {} ms\n timeAverage50  = {} ms\n timeAverage100 = {} ms\n timeAverage200 = {} ms\n afterAccessMin  = {} ms\n afterAccessMax  = {} ms\n 1000Statements = {} sec\n statementCount = {}\n",
-                    me, timerDiff, conf.timeAverage50arr.getAverageInteger(),
-                    conf.timeAverage100arr.getAverageInteger(), conf.timeAverage200arr.getAverageInteger(),
-                    afterAccessMin, afterAccessMax, conf.time1000Statements, conf.timerCount);
+    public JdbcMetrics getMetrics() {
+        return metrics;
+    }
+
+    public boolean isNarrowLayout() {
+        return conf != null && conf.isNarrowLayout();
+    }
+
+    /**
+     * Records the latency of an operation. If enabled, a summary of all metrics is logged every 1000 operations.
+     */
+    private void logTime(Operation operation, long timerStart) {
+        long count = metrics.record(operation, timerStart);
+        if (conf.enableLogTime && count % 1000 == 0) {
+            logger.info("JDBC::logTime: {}", metrics);
         }
     }
 }
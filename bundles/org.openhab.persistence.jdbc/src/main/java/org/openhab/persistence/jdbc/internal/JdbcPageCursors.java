@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers where the pages of paged queries ended, so that the following page can be read with a condition on the
+ * time, which is the primary key of the item tables, instead of making the database skip all previous pages.
+ *
+ * A query session is identified by all criteria of a filter except its page number. Only the most recently used
+ * sessions are kept.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcPageCursors {
+    private final Logger logger = LoggerFactory.getLogger(JdbcPageCursors.class);
+
+    private static final int MAX_SESSIONS = 256;
+
+    private final Map<String, Cursor> cursors = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.@Nullable Entry<String, Cursor> eldest) {
+            return size() > MAX_SESSIONS;
+        }
+    };
+
+    /**
+     * Returns the filter to read a page with. If the previous page of the same session has been read completely,
+     * this is a copy of the filter reading the first page after the last time of the previous page. Otherwise it is
+     * the filter itself.
+     *
+     * @param filter the filter of the requested page
+     * @return the filter to query the database with
+     */
+    public FilterCriteria seek(FilterCriteria filter) {
+        if (!isPaged(filter) || filter.getPageNumber() == 0) {
+            return filter;
+        }
+        Cursor cursor;
+        synchronized (cursors) {
+            cursor = cursors.get(getSession(filter));
+        }
+        if (cursor == null || cursor.pageNumber != filter.getPageNumber() - 1) {
+            return filter;
+        }
+        logger.debug("JDBC::seek: reading page {} of item '{}' after {}", filter.getPageNumber(),
+                filter.getItemName(), cursor.lastTime);
+
+        FilterCriteria seek = new FilterCriteria();
+        seek.setItemName(filter.getItemName());
+        seek.setOrdering(filter.getOrdering());
+        seek.setOperator(filter.getOperator());
+        seek.setState(filter.getState());
+        seek.setPageSize(filter.getPageSize());
+        seek.setPageNumber(0);
+        // both bounds exclude the given time
+        if (filter.getOrdering() == Ordering.ASCENDING) {
+            seek.setBeginDate(cursor.lastTime);
+            seek.setEndDate(filter.getEndDateZoned());
+        } else {
+            seek.setBeginDate(filter.getBeginDateZoned());
+            seek.setEndDate(cursor.lastTime);
+        }
+        return seek;
+    }
+
+    /**
+     * Returns the result of a page, which remembers the time of its last value once it has been iterated
+     * completely.
+     *
+     * @param filter the filter of the requested page
+     * @param items the result of the page
+     * @return the result to return
+     */
+    public Iterable<HistoricItem> track(FilterCriteria filter, Iterable<HistoricItem> items) {
+        if (!isPaged(filter)) {
+            return items;
+        }
+        String session = getSession(filter);
+        int pageNumber = filter.getPageNumber();
+        int pageSize = filter.getPageSize();
+        return () -> new Iterator<>() {
+            private final Iterator<HistoricItem> iterator = items.iterator();
+            private @Nullable ZonedDateTime lastTime;
+            private int count = 0;
+
+            @Override
+            public boolean hasNext() {
+                boolean hasNext = iterator.hasNext();
+                ZonedDateTime time = lastTime;
+                if (!hasNext && count == pageSize && time != null) {
+                    // only full pages can be followed by another one
+                    synchronized (cursors) {
+                        cursors.put(session, new Cursor(pageNumber, time));
+                    }
+                    lastTime = null;
+                }
+                return hasNext;
+            }
+
+            @Override
+            public HistoricItem next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                HistoricItem item = iterator.next();
+                lastTime = item.getTimestamp();
+                count++;
+                return item;
+            }
+        };
+    }
+
+    public void clear() {
+        synchronized (cursors) {
+            cursors.clear();
+        }
+    }
+
+    private boolean isPaged(FilterCriteria filter) {
+        return filter.getPageSize() != Integer.MAX_VALUE;
+    }
+
+    private String getSession(FilterCriteria filter) {
+        return filter.getItemName() + "|" + filter.getBeginDateZoned() + "|" + filter.getEndDateZoned() + "|"
+                + filter.getOrdering() + "|" + filter.getPageSize() + "|" + filter.getOperator() + "|"
+                + filter.getState();
+    }
+
+    private static class Cursor {
+        private final int pageNumber;
+        private final ZonedDateTime lastTime;
+
+        private Cursor(int pageNumber, ZonedDateTime lastTime) {
+            this.pageNumber = pageNumber;
+            this.lastTime = lastTime;
+        }
+    }
+}
@@ -12,7 +12,8 @@
  */
 package org.openhab.persistence.jdbc.internal;
 
-import java.util.ArrayList;
+import java.time.Duration;
+import java.time.ZonedDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
@@ -32,6 +33,8 @@ import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.UnDefType;
+import org.openhab.persistence.jdbc.model.JdbcAggregateFilterCriteria;
+import org.openhab.persistence.jdbc.model.JdbcAggregateFilterCriteria.AggregateFunction;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -48,8 +51,8 @@ import org.slf4j.LoggerFactory;
  * @author Kai Kreuzer - Migration to 3.x
  */
 @NonNullByDefault
-@Component(service = { PersistenceService.class,
-        QueryablePersistenceService.class }, configurationPid = "org.openhab.jdbc", configurationPolicy = ConfigurationPolicy.REQUIRE)
+@Component(service = { PersistenceService.class, QueryablePersistenceService.class,
+        JdbcPersistenceService.class }, configurationPid = "org.openhab.jdbc", configurationPolicy = ConfigurationPolicy.REQUIRE)
 public class JdbcPersistenceService extends JdbcMapper implements QueryablePersistenceService {
 
     private final Logger logger = LoggerFactory.getLogger(JdbcPersistenceService.class);
@@ -74,6 +77,7 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
     @Activate
     public void activate(BundleContext bundleContext, Map<Object, Object> configuration) {
         logger.debug("JDBC::activate: persistence service activated");
+        metrics.register();
         updateConfig(configuration);
     }
 
@@ -98,6 +102,9 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
     public void deactivate(final int reason) {
         logger.debug("JDBC::deactivate:  persistence bundle stopping. Disconnecting from database. reason={}", reason);
         // closeConnection();
+        stopWriteQueue();
+        stopSeedingItemStatistics();
+        metrics.unregister();
         initialized = false;
     }
 
@@ -195,24 +202,67 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
             table = getTable(item);
         }
 
-        long timerStart = System.currentTimeMillis();
-        List<HistoricItem> items = new ArrayList<>();
-        items = getHistItemFilterQuery(filter, conf.getNumberDecimalcount(), table, item);
+        FilterCriteria query = filter;
+        AggregateFunction function = conf.getQueryAggregation();
+        if (function != null && isAggregatable(filter)) {
+            if (filter.getPageNumber() > 0) {
+                // the first page already covers the whole range
+                return Collections.emptyList();
+            }
+            query = aggregate(filter, function);
+        }
 
-        logger.debug("JDBC::query: query for {} returned {} rows in {} ms", item.getName(), items.size(),
-                System.currentTimeMillis() - timerStart);
+        // the rows are read while the result is iterated
+        Iterable<HistoricItem> items = getHistItemFilterQuery(query, conf.getNumberDecimalcount(), table, item);
+        if (items == null) {
+            return Collections.emptyList();
+        }
 
         // Success
         errCnt = 0;
         return items;
     }
 
+    /**
+     * Checks whether a query is aggregated with the configured function: a query over a range with a page size,
+     * like the one of a chart, which does not filter the values by state.
+     */
+    private boolean isAggregatable(FilterCriteria filter) {
+        return filter.getBeginDateZoned() != null && filter.getPageSize() != Integer.MAX_VALUE
+                && filter.getState() == null;
+    }
+
+    /**
+     * Returns a query that aggregates the values of the range of a filter into at most as many buckets as its page
+     * size, so that the database returns one row per bucket instead of every value.
+     */
+    private FilterCriteria aggregate(FilterCriteria filter, AggregateFunction function) {
+        ZonedDateTime begin = filter.getBeginDateZoned();
+        if (begin == null) {
+            return filter;
+        }
+        ZonedDateTime end = filter.getEndDateZoned();
+        if (end == null) {
+            end = ZonedDateTime.now();
+        }
+        long range = Math.max(0, Duration.between(begin, end).getSeconds());
+        int pageSize = Math.max(1, filter.getPageSize());
+        // rounded up, so that the buckets do not exceed the page size
+        long bucketWidth = Math.max(1, (range + pageSize - 1) / pageSize);
+        logger.debug("JDBC::query: aggregating item '{}' with {} in buckets of {}s", filter.getItemName(), function,
+                bucketWidth);
+        return JdbcAggregateFilterCriteria.of(filter, Duration.ofSeconds(bucketWidth), function);
+    }
+
     public void updateConfig(Map<Object, Object> configuration) {
         logger.debug("JDBC::updateConfig");
 
+        stopWriteQueue();
         conf = new JdbcConfiguration(configuration);
         if (conf.valid && checkDBAccessability()) {
+            conf.getDBDAO().setMetrics(metrics);
             checkDBSchema();
+            startWriteQueue();
             // connection has been established ... initialization completed!
             initialized = true;
         } else {
@@ -222,6 +272,20 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
         logger.debug("JDBC::updateConfig: configuration complete for service={}.", getId());
     }
 
+    /**
+     * Copies the values of the per-item tables into the narrow table, see
+     * {@link JdbcMapper#migrateToNarrowTable(java.util.function.Function)}.
+     *
+     * @return the number of items whose values have been migrated
+     */
+    public int migrateToNarrowTable() {
+        if (!checkDBAccessability()) {
+            logger.warn("JDBC::migrateToNarrowTable: database not connected, migration aborted");
+            return 0;
+        }
+        return migrateToNarrowTable(itemRegistry::get);
+    }
+
     @Override
     public List<PersistenceStrategy> getDefaultStrategies() {
         return Collections.emptyList();
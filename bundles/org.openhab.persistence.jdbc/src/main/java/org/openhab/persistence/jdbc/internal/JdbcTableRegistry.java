@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.items.Item;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread-safe registry of the item tables. Known tables are looked up without locking. The table of a new item is
+ * created only once: the first caller creates it, while concurrent callers for the same item wait for its result.
+ * Callers for other items are not blocked. If the creation fails, the item is removed again, so that the next call
+ * retries.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcTableRegistry {
+    private final Logger logger = LoggerFactory.getLogger(JdbcTableRegistry.class);
+
+    private final Map<String, CompletableFuture<@Nullable String>> tables = new ConcurrentHashMap<>();
+    private final Function<Item, @Nullable String> creator;
+
+    /**
+     * @param creator creates the table of an item and returns its name, or null if it could not be created
+     */
+    public JdbcTableRegistry(Function<Item, @Nullable String> creator) {
+        this.creator = creator;
+    }
+
+    /**
+     * Returns the name of the table of an item, if the table exists.
+     *
+     * @param itemName the name of the item
+     * @return the name of the table or null, if there is no table or it is still being created
+     */
+    public @Nullable String get(String itemName) {
+        CompletableFuture<@Nullable String> table = tables.get(itemName);
+        return table != null ? table.getNow(null) : null;
+    }
+
+    /**
+     * Returns the name of the table of an item, creating the table if needed.
+     *
+     * @param item the item
+     * @return the name of the table or null, if it could not be created
+     */
+    public @Nullable String getOrCreate(Item item) {
+        String itemName = item.getName();
+        CompletableFuture<@Nullable String> table = tables.get(itemName);
+        if (table == null) {
+            CompletableFuture<@Nullable String> created = new CompletableFuture<>();
+            table = tables.putIfAbsent(itemName, created);
+            if (table == null) {
+                return create(item, created);
+            }
+        }
+        try {
+            return table.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private @Nullable String create(Item item, CompletableFuture<@Nullable String> created) {
+        String tableName = null;
+        try {
+            tableName = creator.apply(item);
+        } catch (RuntimeException e) {
+            logger.error("JDBC::getTable: Creating the table of item '{}' failed: {}", item.getName(), e.getMessage());
+        }
+        if (tableName == null) {
+            // do not keep the failure, the next call tries again
+            tables.remove(item.getName(), created);
+        }
+        created.complete(tableName);
+        return tableName;
+    }
+
+    /**
+     * Registers an existing table.
+     */
+    public void put(String itemName, String tableName) {
+        tables.put(itemName, CompletableFuture.completedFuture(tableName));
+    }
+
+    /**
+     * Returns the names of the items with a table.
+     */
+    public Set<String> getItemNames() {
+        return tables.keySet().stream().filter(itemName -> get(itemName) != null).collect(Collectors.toSet());
+    }
+
+    public int size() {
+        return tables.size();
+    }
+
+    public void clear() {
+        tables.clear();
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.common.NamedThreadFactory;
+import org.openhab.persistence.jdbc.model.ItemVO;
+import org.openhab.persistence.jdbc.model.ItemValueInsert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind queue, which collects the values of stored items and writes them with one batch per table. With the
+ * per-item layout a batch holds the values of a single item, with the narrow table the values of all items.
+ *
+ * The queue is flushed when it holds the configured number of values or when the configured interval has passed,
+ * whichever comes first. If the database cannot keep up and the queue grows far beyond the batch size, the caller
+ * writes the values itself.
+ *
+ * The values of a table are written while holding the lock of that table, so a flush before a query also waits for a
+ * write of the same table that is already in progress.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcWriteQueue {
+    private final Logger logger = LoggerFactory.getLogger(JdbcWriteQueue.class);
+
+    // number of batches that may be pending before store() has to wait for the database
+    private static final int MAX_PENDING_BATCHES = 4;
+
+    /**
+     * Writes the values of a single table.
+     */
+    @FunctionalInterface
+    public interface Writer {
+        /**
+         * @param inserts the prepared insert of each value, all with the same table
+         * @param values the values
+         */
+        void write(List<ItemValueInsert> inserts, List<ItemVO> values);
+    }
+
+    private final int batchSize;
+    private final Writer writer;
+    private final ScheduledExecutorService scheduler = Executors
+            .newSingleThreadScheduledExecutor(new NamedThreadFactory("JDBC-writer"));
+    private final ScheduledFuture<?> flushJob;
+    private final Map<String, Lock> tableLocks = new ConcurrentHashMap<>();
+
+    private final Map<String, Batch> pending = new LinkedHashMap<>();
+    private int size = 0;
+    private boolean flushScheduled = false;
+
+    /**
+     * @param batchSize the number of values after which the queue is flushed
+     * @param interval the number of milliseconds after which the queue is flushed
+     * @param writer writes the values of an item table
+     */
+    public JdbcWriteQueue(int batchSize, long interval, Writer writer) {
+        this.batchSize = Math.max(1, batchSize);
+        this.writer = writer;
+        long delay = Math.max(1, interval);
+        flushJob = scheduler.scheduleWithFixedDelay(this::flush, delay, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a value. The time of the value must be set.
+     *
+     * @param insert the prepared insert of the item
+     * @param vo the value
+     */
+    public void add(ItemValueInsert insert, ItemVO vo) {
+        boolean flushNow;
+        synchronized (this) {
+            Batch batch = pending.computeIfAbsent(insert.getTableName(), tableName -> new Batch());
+            Integer last = batch.last.get(insert);
+            if (last != null && batch.values.get(last).getTime().equals(vo.getTime())) {
+                // the time is the primary key, so a value stored within the same millisecond replaces the previous one
+                batch.values.set(last, vo);
+                return;
+            }
+            batch.last.put(insert, batch.values.size());
+            batch.inserts.add(insert);
+            batch.values.add(vo);
+            size++;
+            if (size >= batchSize * MAX_PENDING_BATCHES) {
+                flushNow = true;
+            } else if (size >= batchSize && !flushScheduled) {
+                flushScheduled = true;
+                flushNow = false;
+            } else {
+                return;
+            }
+        }
+        if (flushNow) {
+            logger.debug("JDBC::add: write queue is full, writing {} values on the caller thread", size);
+            flush();
+            return;
+        }
+        try {
+            scheduler.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            // the queue has been stopped, write the values right away
+            flush();
+        }
+    }
+
+    /**
+     * Writes all queued values.
+     */
+    public void flush() {
+        List<String> tableNames;
+        synchronized (this) {
+            tableNames = new ArrayList<>(pending.keySet());
+            flushScheduled = false;
+        }
+        tableNames.forEach(this::flush);
+    }
+
+    /**
+     * Writes the queued values of a single table, e.g. before the table is queried.
+     *
+     * @param tableName the name of the table
+     */
+    public void flush(String tableName) {
+        Lock lock = tableLocks.computeIfAbsent(tableName, name -> new ReentrantLock());
+        lock.lock();
+        try {
+            Batch batch;
+            synchronized (this) {
+                batch = pending.remove(tableName);
+                if (batch == null) {
+                    return;
+                }
+                size -= batch.values.size();
+            }
+            write(batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Stops the periodic flush and writes all values that are still queued.
+     */
+    public void stop() {
+        flushJob.cancel(false);
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void write(Batch batch) {
+        try {
+            writer.write(batch.inserts, batch.values);
+        } catch (RuntimeException e) {
+            logger.warn("JDBC::write: Could not write {} values to table '{}': {}", batch.values.size(),
+                    batch.inserts.get(0).getTableName(), e.getMessage());
+        }
+    }
+
+    private static class Batch {
+        private final List<ItemValueInsert> inserts = new ArrayList<>();
+        private final List<ItemVO> values = new ArrayList<>();
+        // index of the latest value of each item
+        private final Map<ItemValueInsert, Integer> last = new HashMap<>();
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal.console;
+
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.io.console.Console;
+import org.openhab.core.io.console.extensions.AbstractConsoleCommandExtension;
+import org.openhab.core.io.console.extensions.ConsoleCommandExtension;
+import org.openhab.persistence.jdbc.internal.JdbcPersistenceService;
+import org.openhab.persistence.jdbc.utils.JdbcMetrics;
+import org.openhab.persistence.jdbc.utils.JdbcMetrics.Operation;
+import org.openhab.persistence.jdbc.utils.LatencyHistogram.Snapshot;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * The {@link JdbcCommandExtension} provides console commands to show the metrics of the JDBC persistence service and
+ * to migrate its values into the narrow table.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+@Component(service = ConsoleCommandExtension.class)
+public class JdbcCommandExtension extends AbstractConsoleCommandExtension {
+
+    private static final String SUBCMD_STATS = "stats";
+    private static final String SUBCMD_RESET = "reset";
+    private static final String SUBCMD_MIGRATE = "migrate";
+
+    private final JdbcPersistenceService persistenceService;
+
+    @Activate
+    public JdbcCommandExtension(final @Reference JdbcPersistenceService persistenceService) {
+        super("jdbc", "Show the metrics of the JDBC persistence service and migrate its values.");
+        this.persistenceService = persistenceService;
+    }
+
+    @Override
+    public void execute(String[] args, Console console) {
+        if (args.length == 1 && SUBCMD_MIGRATE.equals(args[0])) {
+            migrate(console);
+            return;
+        }
+        if (args.length == 0 || !SUBCMD_STATS.equals(args[0])) {
+            printUsage(console);
+            return;
+        }
+        JdbcMetrics metrics = persistenceService.getMetrics();
+        if (args.length > 1) {
+            if (SUBCMD_RESET.equals(args[1])) {
+                metrics.reset();
+                console.println("The metrics have been reset");
+            } else {
+                printUsage(console);
+            }
+            return;
+        }
+        console.println(String.format("%-12s %10s %10s %10s %10s %10s %8s", "operation", "count", "mean µs",
+                "p50 µs", "p99 µs", "max µs", "errors"));
+        for (Operation operation : Operation.values()) {
+            print(console, operation.getLabel(), metrics.getLatency(operation), metrics.getErrors(operation));
+        }
+        print(console, "poolWait", metrics.getPoolWait(), metrics.getPoolTimeouts());
+        console.println("connections: active=" + metrics.getActiveConnections() + " idle="
+                + metrics.getIdleConnections() + " pending=" + metrics.getPendingThreads());
+        console.println("write queue: " + metrics.getQueueDepth() + " value(s)");
+    }
+
+    private void migrate(Console console) {
+        if (!persistenceService.isNarrowLayout()) {
+            console.println("The narrow table layout is not configured, set 'tableLayout' to 'narrow' first");
+            return;
+        }
+        console.println("Migrating the values of the per-item tables, see the log for the progress ...");
+        int migrated = persistenceService.migrateToNarrowTable();
+        console.println("The values of " + migrated + " item(s) have been migrated into the narrow table");
+    }
+
+    private void print(Console console, String name, Snapshot snapshot, long errors) {
+        console.println(String.format("%-12s %10d %10d %10d %10d %10d %8d", name, snapshot.getCount(),
+                snapshot.getMean(), snapshot.getP50(), snapshot.getP99(), snapshot.getMax(), errors));
+    }
+
+    @Override
+    public List<String> getUsages() {
+        return List.of(
+                buildCommandUsage(SUBCMD_STATS,
+                        "shows the latencies and errors of the database operations and the state of the connection pool"),
+                buildCommandUsage(SUBCMD_STATS + " " + SUBCMD_RESET, "resets the latencies and errors"),
+                buildCommandUsage(SUBCMD_MIGRATE,
+                        "copies the values of the per-item tables into the narrow table, keeping the per-item tables"));
+    }
+}
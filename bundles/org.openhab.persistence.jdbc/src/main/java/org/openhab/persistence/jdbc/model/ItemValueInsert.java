@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.types.State;
+
+/**
+ * Represents the insert of values into the table of an item. It is prepared once per item, so that storing a value
+ * needs neither SQL generation nor type lookups. As the SQL text of an item does not change, the statement caches of
+ * the JDBC drivers can reuse the prepared statements.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class ItemValueInsert {
+
+    /**
+     * Converts a state into the value written to the value column.
+     */
+    @FunctionalInterface
+    public interface ValueBinder {
+        Object bind(State state);
+    }
+
+    private final String itemName;
+    private final String tableName;
+    private final Class<?> itemClass;
+    private final @Nullable Class<?> baseItemClass;
+    private final String dbType;
+    private final Class<?> javaType;
+    private final ValueBinder binder;
+    private final String sql;
+    private final int valueCount;
+    private final String batchSql;
+    private final int batchValueCount;
+
+    /**
+     * @param item the item
+     * @param tableName the name of the table of the item
+     * @param dbType the SQL type of the value column
+     * @param javaType the type of the values returned by the binder
+     * @param binder converts the states of the item
+     * @param sql the insert with the time created by the database, all parameters take the value
+     * @param batchSql the insert with the time as first parameter, all other parameters take the value
+     */
+    public ItemValueInsert(Item item, String tableName, String dbType, Class<?> javaType, ValueBinder binder,
+            String sql, String batchSql) {
+        this.itemName = item.getName();
+        this.tableName = tableName;
+        this.itemClass = item.getClass();
+        this.baseItemClass = getBaseItemClass(item);
+        this.dbType = dbType;
+        this.javaType = javaType;
+        this.binder = binder;
+        this.sql = sql;
+        this.valueCount = countParameters(sql);
+        this.batchSql = batchSql;
+        this.batchValueCount = countParameters(batchSql) - 1;
+    }
+
+    /**
+     * Checks whether this insert has been prepared for an item of the same type.
+     */
+    public boolean isFor(Item item) {
+        return itemClass == item.getClass() && baseItemClass == getBaseItemClass(item);
+    }
+
+    public String getItemName() {
+        return itemName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getDbType() {
+        return dbType;
+    }
+
+    public Class<?> getJavaType() {
+        return javaType;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public String getBatchSql() {
+        return batchSql;
+    }
+
+    public Object getValue(State state) {
+        return binder.bind(state);
+    }
+
+    /**
+     * Returns the parameters of {@link #getSql()} for the given state.
+     */
+    public Object[] getParameters(State state) {
+        Object value = binder.bind(state);
+        Object[] params = new Object[valueCount];
+        for (int i = 0; i < valueCount; i++) {
+            params[i] = value;
+        }
+        return params;
+    }
+
+    /**
+     * Returns the parameters of {@link #getBatchSql()} for the given value.
+     *
+     * @param time the time parameter
+     * @param value the value, as returned by {@link #getValue(State)}
+     */
+    public Object[] getBatchParameters(Object time, Object value) {
+        Object[] params = new Object[batchValueCount + 1];
+        params[0] = time;
+        for (int i = 1; i <= batchValueCount; i++) {
+            params[i] = value;
+        }
+        return params;
+    }
+
+    private static @Nullable Class<?> getBaseItemClass(Item item) {
+        if (item instanceof GroupItem) {
+            Item baseItem = ((GroupItem) item).getBaseItem();
+            return baseItem != null ? baseItem.getClass() : null;
+        }
+        return null;
+    }
+
+    private static int countParameters(String sql) {
+        int count = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            if (sql.charAt(i) == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "ItemValueInsert [tableName=" + tableName + ", dbType=" + dbType + ", sql=" + sql + "]";
+    }
+}
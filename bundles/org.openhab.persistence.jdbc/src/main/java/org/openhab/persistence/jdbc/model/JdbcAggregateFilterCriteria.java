@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+import java.time.Duration;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.persistence.FilterCriteria;
+
+/**
+ * Filter of a query that aggregates the values of an item in time buckets of a fixed width, like a chart does. The
+ * aggregation runs in the database, so only one row per bucket is read.
+ *
+ * A bucket starts at a multiple of its width since 1970-01-01 00:00:00 and is returned with its start as time. The
+ * times are taken as stored, i.e. in local time without a time zone, so daily buckets start at local midnight on all
+ * databases. Paging does not apply to aggregated queries.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcAggregateFilterCriteria extends FilterCriteria {
+
+    /**
+     * The aggregate function applied to the values of a bucket.
+     */
+    public enum AggregateFunction {
+        AVG,
+        MIN,
+        MAX,
+        SUM,
+        /** the value with the latest time of the bucket */
+        LAST
+    }
+
+    private final Duration bucketWidth;
+    private final AggregateFunction function;
+
+    /**
+     * @param bucketWidth the width of a bucket, at least one second
+     * @param function the function aggregating the values of a bucket
+     */
+    public JdbcAggregateFilterCriteria(Duration bucketWidth, AggregateFunction function) {
+        if (bucketWidth.getSeconds() < 1) {
+            throw new IllegalArgumentException("The width of a bucket must be at least one second");
+        }
+        this.bucketWidth = bucketWidth;
+        this.function = function;
+    }
+
+    /**
+     * Creates an aggregated copy of a filter, with its item, dates and ordering.
+     */
+    public static JdbcAggregateFilterCriteria of(FilterCriteria filter, Duration bucketWidth,
+            AggregateFunction function) {
+        JdbcAggregateFilterCriteria aggregate = new JdbcAggregateFilterCriteria(bucketWidth, function);
+        aggregate.setItemName(filter.getItemName());
+        aggregate.setBeginDate(filter.getBeginDateZoned());
+        aggregate.setEndDate(filter.getEndDateZoned());
+        aggregate.setOrdering(filter.getOrdering());
+        return aggregate;
+    }
+
+    public Duration getBucketWidth() {
+        return bucketWidth;
+    }
+
+    public AggregateFunction getFunction() {
+        return function;
+    }
+}
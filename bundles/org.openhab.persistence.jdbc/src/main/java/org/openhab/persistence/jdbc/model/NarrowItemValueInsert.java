@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+import java.util.Date;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.items.Item;
+import org.openhab.core.types.State;
+
+/**
+ * Represents the insert of values of an item into the narrow table, which holds the values of all items in the
+ * columns itemid, time, value_num and value_str. Numbers and times, as epoch milliseconds, are written to value_num,
+ * all other values to value_str. As the SQL text is the same for all items, values of different items can be
+ * written with one batch.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class NarrowItemValueInsert extends ItemValueInsert {
+
+    private final Integer itemId;
+
+    /**
+     * @param item the item
+     * @param tableName the name of the narrow table
+     * @param itemId the id of the item in the items table
+     * @param dbType the SQL type of the item in the per-item layout
+     * @param javaType the type of the values returned by the binder
+     * @param binder converts the states of the item
+     * @param sql the insert of itemid, value_num and value_str with the time created by the database
+     * @param batchSql the insert of itemid, time, value_num and value_str
+     */
+    public NarrowItemValueInsert(Item item, String tableName, int itemId, String dbType, Class<?> javaType,
+            ValueBinder binder, String sql, String batchSql) {
+        super(item, tableName, dbType, javaType, binder, sql, batchSql);
+        this.itemId = itemId;
+    }
+
+    public int getItemId() {
+        return itemId;
+    }
+
+    /**
+     * Returns whether the values of an item of the given type are written to value_num.
+     */
+    public static boolean isNumeric(Class<?> javaType) {
+        return Number.class.isAssignableFrom(javaType) || Date.class.isAssignableFrom(javaType);
+    }
+
+    @Override
+    public Object[] getParameters(State state) {
+        Object value = getValue(state);
+        return new Object[] { itemId, getNumber(value), getString(value) };
+    }
+
+    @Override
+    public Object[] getBatchParameters(Object time, Object value) {
+        return new Object[] { itemId, time, getNumber(value), getString(value) };
+    }
+
+    private static @Nullable Object getNumber(Object value) {
+        if (value instanceof Number) {
+            return value;
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        return null;
+    }
+
+    private static @Nullable Object getString(Object value) {
+        return value instanceof Number || value instanceof Date ? null : value.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "NarrowItemValueInsert [tableName=" + getTableName() + ", itemId=" + itemId + ", sql=" + getSql() + "]";
+    }
+}
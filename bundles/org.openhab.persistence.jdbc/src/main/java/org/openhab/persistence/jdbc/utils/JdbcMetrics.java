@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.persistence.jdbc.utils.LatencyHistogram.Snapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTracker;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Latencies and error counts of the database operations, and the state of the connection pool and the write-behind
+ * queue. Recording is lock-free and cheap enough to be always enabled. The metrics can be read on the console and
+ * via JMX.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcMetrics implements JdbcMetricsMXBean {
+    private final Logger logger = LoggerFactory.getLogger(JdbcMetrics.class);
+
+    public static final String OBJECT_NAME = "org.openhab.persistence.jdbc:type=JdbcMetrics";
+
+    /**
+     * The measured operations.
+     */
+    public enum Operation {
+        STORE("store"),
+        STORE_BATCH("storeBatch"),
+        QUERY("query"),
+        CREATE_TABLE("createTable"),
+        PING("ping"),
+        SCHEMA("schema");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final AtomicLong operations = new AtomicLong();
+    private final LatencyHistogram poolWait = new LatencyHistogram();
+    private final LongAdder poolTimeouts = new LongAdder();
+    private final IntSupplier queueDepth;
+    private volatile @Nullable PoolStats poolStats;
+    private @Nullable ObjectName registeredName;
+
+    public JdbcMetrics() {
+        this(() -> 0);
+    }
+
+    /**
+     * @param queueDepth returns the number of values in the write-behind queue
+     */
+    public JdbcMetrics(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    /**
+     * Records the latency of an operation.
+     *
+     * @param operation the operation
+     * @param startNanos the {@link System#nanoTime()} at which the operation started
+     * @return the number of operations recorded so far
+     */
+    public long record(Operation operation, long startNanos) {
+        latencies.get(operation).recordSince(startNanos);
+        return operations.incrementAndGet();
+    }
+
+    /**
+     * Counts a failed operation.
+     */
+    public void failed(Operation operation) {
+        errors.get(operation).increment();
+    }
+
+    /**
+     * Records the execution of a query, see {@link ResultSetIterable.Listener}.
+     */
+    public void queryExecuted(long startNanos, boolean failed) {
+        if (failed) {
+            failed(Operation.QUERY);
+        } else {
+            record(Operation.QUERY, startNanos);
+        }
+    }
+
+    public Snapshot getLatency(Operation operation) {
+        return latencies.get(operation).snapshot();
+    }
+
+    public long getErrors(Operation operation) {
+        return errors.get(operation).sum();
+    }
+
+    /**
+     * Observes the wait time and the connections of a connection pool.
+     */
+    public void observe(HikariDataSource dataSource) {
+        poolStats = null;
+        try {
+            dataSource.setMetricsTrackerFactory((poolName, stats) -> {
+                poolStats = stats;
+                return new PoolTracker();
+            });
+        } catch (IllegalStateException e) {
+            logger.debug("JDBC::observe: Cannot observe the connection pool: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Makes the metrics available via JMX.
+     */
+    public synchronized void register() {
+        if (registeredName != null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            logger.warn("JDBC::register: Cannot register the metrics via JMX: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void unregister() {
+        ObjectName name = registeredName;
+        registeredName = null;
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                logger.debug("JDBC::unregister: Cannot unregister the metrics: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Snapshot> getLatencies() {
+        Map<String, Snapshot> result = new LinkedHashMap<>();
+        latencies.forEach((operation, histogram) -> result.put(operation.getLabel(), histogram.snapshot()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        errors.forEach((operation, count) -> result.put(operation.getLabel(), count.sum()));
+        return result;
+    }
+
+    @Override
+    public Snapshot getPoolWait() {
+        return poolWait.snapshot();
+    }
+
+    @Override
+    public long getPoolTimeouts() {
+        return poolTimeouts.sum();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        PoolStats stats = poolStats;
+        return stats != null ? stats.getActiveConnections() : 0;
+    }
+
+    @Override
+    public int getIdleConnections() {
+        PoolStats stats = poolStats;
+        return stats != null ? stats.getIdleConnections() : 0;
+    }
+
+    @Override
+    public int getPendingThreads() {
+        PoolStats stats = poolStats;
+        return stats != null ? stats.getPendingThreads() : 0;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public void reset() {
+        latencies.values().forEach(LatencyHistogram::reset);
+        errors.values().forEach(LongAdder::reset);
+        poolWait.reset();
+        poolTimeouts.reset();
+    }
+
+    /**
+     * Returns a summary of all metrics on a single line.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        latencies.forEach((operation, histogram) -> {
+            Snapshot snapshot = histogram.snapshot();
+            if (snapshot.getCount() > 0 || getErrors(operation) > 0) {
+                sb.append(operation.getLabel()).append("[p50=").append(snapshot.getP50()).append("µs p99=")
+                        .append(snapshot.getP99()).append("µs max=").append(snapshot.getMax()).append("µs n=")
+                        .append(snapshot.getCount()).append(" errors=").append(getErrors(operation)).append("] ");
+            }
+        });
+        Snapshot wait = poolWait.snapshot();
+        sb.append("poolWait[p99=").append(wait.getP99()).append("µs timeouts=").append(getPoolTimeouts())
+                .append("] active=").append(getActiveConnections()).append(" pending=").append(getPendingThreads())
+                .append(" queue=").append(getQueueDepth());
+        return sb.toString();
+    }
+
+    private class PoolTracker extends MetricsTracker {
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            poolWait.recordNanos(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            poolTimeouts.increment();
+        }
+    }
+}
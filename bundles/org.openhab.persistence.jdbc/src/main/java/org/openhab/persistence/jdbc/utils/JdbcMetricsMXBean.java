@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.utils;
+
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.persistence.jdbc.utils.LatencyHistogram.Snapshot;
+
+/**
+ * JMX view of the {@link JdbcMetrics}. All latencies are in microseconds.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public interface JdbcMetricsMXBean {
+
+    /**
+     * Returns the latencies per operation.
+     */
+    Map<String, Snapshot> getLatencies();
+
+    /**
+     * Returns the number of failures per operation.
+     */
+    Map<String, Long> getErrors();
+
+    /**
+     * Returns the time spent waiting for a connection of the pool.
+     */
+    Snapshot getPoolWait();
+
+    long getPoolTimeouts();
+
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getPendingThreads();
+
+    int getQueueDepth();
+
+    void reset();
+}
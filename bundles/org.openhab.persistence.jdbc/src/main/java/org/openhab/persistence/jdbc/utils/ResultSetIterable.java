@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.utils;
+
+import java.lang.ref.Cleaner;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.sql.DataSource;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.knowm.yank.Yank;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a query with a forward-only cursor and maps its rows on demand, so that large results are never held in
+ * memory. Every iterator runs the query on its own connection, which is returned to the pool as soon as the last row
+ * has been read, or when the iterator is garbage collected if the iteration is abandoned. As that may take until the
+ * next garbage collection, queries with a limited number of rows, whose iteration is often abandoned after the first
+ * row, should be read with {@link #readAll()} instead.
+ *
+ * Errors are logged and end the iteration, like the queries of Yank.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class ResultSetIterable<T> implements Iterable<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultSetIterable.class);
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * Maps the current row of a result set.
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Is notified when the query has been executed.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param startNanos the {@link System#nanoTime()} before the query was executed
+         * @param failed whether the execution failed
+         */
+        void executed(long startNanos, boolean failed);
+    }
+
+    private final String sql;
+    private final Object[] params;
+    private final int fetchSize;
+    private final RowMapper<T> mapper;
+    private final Listener listener;
+
+    /**
+     * @param sql the query
+     * @param params the parameters of the query
+     * @param fetchSize the number of rows fetched at once, 0 for the default of the driver
+     * @param mapper maps a row
+     * @param listener is notified when the query has been executed
+     */
+    public ResultSetIterable(String sql, Object[] params, int fetchSize, RowMapper<T> mapper, Listener listener) {
+        this.sql = sql;
+        this.params = params;
+        this.fetchSize = fetchSize;
+        this.mapper = mapper;
+        this.listener = listener;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new ResultSetIterator();
+    }
+
+    /**
+     * Runs the query and maps all rows right away. The connection is returned to the pool before this method returns.
+     *
+     * @return the mapped rows, which are empty if the query failed
+     */
+    public List<T> readAll() {
+        List<T> result = new ArrayList<>();
+        DataSource dataSource = Yank.getDefaultConnectionPool();
+        if (dataSource == null) {
+            LOGGER.warn("JDBC::query: Error reading the result of '{}': no connection pool", sql);
+            return result;
+        }
+        long startNanos = System.nanoTime();
+        boolean executed = false;
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            setParameters(statement);
+            try (ResultSet rs = statement.executeQuery()) {
+                executed = true;
+                listener.executed(startNanos, false);
+                while (rs.next()) {
+                    result.add(mapper.map(rs));
+                }
+            }
+        } catch (SQLException e) {
+            if (!executed) {
+                listener.executed(startNanos, true);
+            }
+            LOGGER.warn("JDBC::query: Error reading the result of '{}': {}", sql, e.getMessage());
+        }
+        return result;
+    }
+
+    private void setParameters(PreparedStatement statement) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            statement.setObject(i + 1, params[i]);
+        }
+    }
+
+    private class ResultSetIterator implements Iterator<T> {
+        private final Resources resources = new Resources();
+        private final Cleaner.Cleanable cleanable = CLEANER.register(this, resources);
+        private @Nullable T next;
+        private boolean done = false;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                try {
+                    ResultSet rs = resources.resultSet;
+                    if (rs == null) {
+                        long startNanos = System.nanoTime();
+                        try {
+                            rs = open();
+                        } catch (SQLException e) {
+                            listener.executed(startNanos, true);
+                            throw e;
+                        }
+                        listener.executed(startNanos, false);
+                    }
+                    if (rs.next()) {
+                        next = mapper.map(rs);
+                    } else {
+                        close();
+                    }
+                } catch (SQLException e) {
+                    LOGGER.warn("JDBC::query: Error reading the result of '{}': {}", sql, e.getMessage());
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            T result = next;
+            if (result == null && hasNext()) {
+                result = next;
+            }
+            if (result == null) {
+                throw new NoSuchElementException();
+            }
+            next = null;
+            return result;
+        }
+
+        private ResultSet open() throws SQLException {
+            DataSource dataSource = Yank.getDefaultConnectionPool();
+            if (dataSource == null) {
+                throw new SQLException("no connection pool");
+            }
+            Connection connection = dataSource.getConnection();
+            resources.connection = connection;
+            if (fetchSize != 0 && connection.getAutoCommit()) {
+                // some drivers, like PostgreSQL, use a cursor only within a transaction
+                connection.setAutoCommit(false);
+            }
+            PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            resources.statement = statement;
+            statement.setFetchSize(fetchSize);
+            setParameters(statement);
+            ResultSet rs = statement.executeQuery();
+            resources.resultSet = rs;
+            return rs;
+        }
+
+        private void close() {
+            done = true;
+            cleanable.clean();
+        }
+    }
+
+    /**
+     * Holds the resources of an iterator, separately from it, so that they can be closed after the iterator has
+     * become unreachable.
+     */
+    private static class Resources implements Runnable {
+        private @Nullable Connection connection;
+        private @Nullable PreparedStatement statement;
+        private @Nullable ResultSet resultSet;
+
+        @Override
+        public void run() {
+            try {
+                ResultSet rs = resultSet;
+                if (rs != null) {
+                    rs.close();
+                }
+                PreparedStatement st = statement;
+                if (st != null) {
+                    st.close();
+                }
+            } catch (SQLException e) {
+                LOGGER.debug("JDBC::query: Error closing the result: {}", e.getMessage());
+            } finally {
+                Connection c = connection;
+                if (c != null) {
+                    try {
+                        if (!c.getAutoCommit()) {
+                            // only read, but end the transaction before the connection returns to the pool
+                            c.rollback();
+                            c.setAutoCommit(true);
+                        }
+                    } catch (SQLException e) {
+                        LOGGER.debug("JDBC::query: Error ending the transaction: {}", e.getMessage());
+                    }
+                    try {
+                        c.close();
+                    } catch (SQLException e) {
+                        LOGGER.debug("JDBC::query: Error closing the connection: {}", e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+}
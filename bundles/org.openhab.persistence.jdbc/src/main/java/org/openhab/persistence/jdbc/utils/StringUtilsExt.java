@@ -43,7 +43,7 @@ public class StringUtilsExt {
      */
     public static final String replaceArrayMerge(String str, String separate, Object[] separators) {
         for (int i = 0; i < separators.length; i++) {
-            str = str.replaceFirst(separate, (String) separators[i]);
+            str = replaceFirstLiteral(str, separate, (String) separators[i]);
         }
         return str;
     }
@@ -53,11 +53,28 @@ public class StringUtilsExt {
      */
     public static final String replaceArrayMerge(String str, String[] separate, String[] separators) {
         for (int i = 0; i < separators.length; i++) {
-            str = str.replaceFirst(separate[i], separators[i]);
+            str = replaceFirstLiteral(str, separate[i], separators[i]);
         }
         return str;
     }
 
+    /**
+     * Replaces the first occurrence of a word, without interpreting the word or its replacement as regular
+     * expression.
+     *
+     * @param str String for replacement
+     * @param word the word to be replaced
+     * @param replacement the replacement
+     * @return the String with the first occurrence of word replaced
+     */
+    public static String replaceFirstLiteral(String str, String word, String replacement) {
+        int index = str.indexOf(word);
+        if (index < 0) {
+            return str;
+        }
+        return str.substring(0, index) + replacement + str.substring(index + word.length());
+    }
+
     /**
      * @see #parseJdbcURL(String url, Properties def)
      */
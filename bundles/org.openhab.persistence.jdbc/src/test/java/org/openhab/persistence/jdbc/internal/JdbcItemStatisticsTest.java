@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Date;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.persistence.PersistenceItemInfo;
+
+/**
+ * Tests the seeding and updating of {@link JdbcItemStatistics}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcItemStatisticsTest {
+
+    private final JdbcItemStatistics statistics = new JdbcItemStatistics();
+
+    @Test
+    public void itemIsUnknownUntilSeeded() {
+        statistics.stored("Item1", 1, new Date(1000), new Date(1000));
+        PersistenceItemInfo info = statistics.getInfo("Item1");
+        assertThat(info.getName(), is("Item1"));
+        assertThat(info.getCount(), is(nullValue()));
+        assertThat(statistics.getInfo("Item2").getCount(), is(nullValue()));
+    }
+
+    @Test
+    public void storedValuesAreAddedToTheSeed() {
+        statistics.seed("Item1", 10, new Date(1000), new Date(2000));
+        statistics.stored("Item1", 2, new Date(3000), new Date(4000));
+        PersistenceItemInfo info = statistics.getInfo("Item1");
+        assertThat(info.getCount(), is(12));
+        assertThat(info.getEarliest(), is(new Date(1000)));
+        assertThat(info.getLatest(), is(new Date(4000)));
+    }
+
+    @Test
+    public void valuesCountedByTheSeedAreNotAddedAgain() {
+        // stored while the seeding query runs, and found by it
+        statistics.stored("Item1", 1, new Date(2000), new Date(2000));
+        // stored after the query has read the table
+        statistics.stored("Item1", 1, new Date(3000), new Date(3000));
+        statistics.seed("Item1", 10, new Date(1000), new Date(2000));
+        PersistenceItemInfo info = statistics.getInfo("Item1");
+        assertThat(info.getCount(), is(11));
+        assertThat(info.getLatest(), is(new Date(3000)));
+
+        // values stored after the seed are added
+        statistics.stored("Item1", 1, new Date(5000), new Date(5000));
+        assertThat(statistics.getInfo("Item1").getCount(), is(12));
+    }
+
+    @Test
+    public void emptyTableIsSeeded() {
+        statistics.seed("Item1", 0, null, null);
+        PersistenceItemInfo info = statistics.getInfo("Item1");
+        assertThat(info.getCount(), is(0));
+        assertThat(info.getEarliest(), is(nullValue()));
+
+        statistics.stored("Item1", 1, new Date(1000), new Date(1000));
+        info = statistics.getInfo("Item1");
+        assertThat(info.getCount(), is(1));
+        assertThat(info.getEarliest(), is(new Date(1000)));
+        assertThat(info.getLatest(), is(new Date(1000)));
+    }
+
+    @Test
+    public void clearForgetsTheSeed() {
+        statistics.seed("Item1", 10, new Date(1000), new Date(2000));
+        statistics.clear();
+        assertThat(statistics.getInfo("Item1").getCount(), is(nullValue()));
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.persistence.jdbc.model.JdbcHistoricItem;
+
+/**
+ * Tests the seek of follow-up pages by {@link JdbcPageCursors}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcPageCursorsTest {
+
+    private static final ZonedDateTime BEGIN = ZonedDateTime.parse("2020-01-01T00:00:00Z");
+    private static final ZonedDateTime END = ZonedDateTime.parse("2020-02-01T00:00:00Z");
+
+    private final JdbcPageCursors cursors = new JdbcPageCursors();
+
+    private static FilterCriteria createFilter(Ordering ordering, int pageNumber) {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setItemName("Item1");
+        filter.setBeginDate(BEGIN);
+        filter.setEndDate(END);
+        filter.setOrdering(ordering);
+        filter.setPageSize(2);
+        filter.setPageNumber(pageNumber);
+        return filter;
+    }
+
+    private static HistoricItem createItem(ZonedDateTime time) {
+        return new JdbcHistoricItem("Item1", new DecimalType(1), time);
+    }
+
+    private static void iterate(Iterable<HistoricItem> items) {
+        for (HistoricItem item : items) {
+            assertThat(item, is(notNullValue()));
+        }
+    }
+
+    @Test
+    public void ascendingPageContinuesAfterTheLastTime() {
+        FilterCriteria first = createFilter(Ordering.ASCENDING, 0);
+        assertThat(cursors.seek(first), is(sameInstance(first)));
+        iterate(cursors.track(first, List.of(createItem(BEGIN.plusHours(1)), createItem(BEGIN.plusHours(2)))));
+
+        FilterCriteria seek = cursors.seek(createFilter(Ordering.ASCENDING, 1));
+        assertThat(seek.getPageNumber(), is(0));
+        assertThat(seek.getPageSize(), is(2));
+        assertThat(seek.getOrdering(), is(Ordering.ASCENDING));
+        assertThat(seek.getBeginDateZoned(), is(BEGIN.plusHours(2)));
+        assertThat(seek.getEndDateZoned(), is(END));
+    }
+
+    @Test
+    public void descendingPageContinuesBeforeTheLastTime() {
+        FilterCriteria first = createFilter(Ordering.DESCENDING, 0);
+        iterate(cursors.track(first, List.of(createItem(END.minusHours(1)), createItem(END.minusHours(2)))));
+
+        FilterCriteria seek = cursors.seek(createFilter(Ordering.DESCENDING, 1));
+        assertThat(seek.getPageNumber(), is(0));
+        assertThat(seek.getOrdering(), is(Ordering.DESCENDING));
+        assertThat(seek.getBeginDateZoned(), is(BEGIN));
+        assertThat(seek.getEndDateZoned(), is(END.minusHours(2)));
+    }
+
+    @Test
+    public void incompletePageIsNotFollowed() {
+        FilterCriteria first = createFilter(Ordering.ASCENDING, 0);
+        iterate(cursors.track(first, List.of(createItem(BEGIN.plusHours(1)))));
+
+        FilterCriteria second = createFilter(Ordering.ASCENDING, 1);
+        assertThat(cursors.seek(second), is(sameInstance(second)));
+    }
+
+    @Test
+    public void pageIsNotFollowedUntilItHasBeenIterated() {
+        FilterCriteria first = createFilter(Ordering.ASCENDING, 0);
+        cursors.track(first, List.of(createItem(BEGIN.plusHours(1)), createItem(BEGIN.plusHours(2)))).iterator()
+                .next();
+
+        FilterCriteria second = createFilter(Ordering.ASCENDING, 1);
+        assertThat(cursors.seek(second), is(sameInstance(second)));
+    }
+
+    @Test
+    public void onlyTheNextPageIsSought() {
+        iterate(cursors.track(createFilter(Ordering.ASCENDING, 0),
+                List.of(createItem(BEGIN.plusHours(1)), createItem(BEGIN.plusHours(2)))));
+
+        FilterCriteria third = createFilter(Ordering.ASCENDING, 2);
+        assertThat(cursors.seek(third), is(sameInstance(third)));
+    }
+
+    @Test
+    public void otherSessionsAreNotSought() {
+        iterate(cursors.track(createFilter(Ordering.ASCENDING, 0),
+                List.of(createItem(BEGIN.plusHours(1)), createItem(BEGIN.plusHours(2)))));
+
+        FilterCriteria other = createFilter(Ordering.ASCENDING, 1);
+        other.setItemName("Item2");
+        assertThat(cursors.seek(other), is(sameInstance(other)));
+        FilterCriteria descending = createFilter(Ordering.DESCENDING, 1);
+        assertThat(cursors.seek(descending), is(sameInstance(descending)));
+
+        cursors.clear();
+        FilterCriteria second = createFilter(Ordering.ASCENDING, 1);
+        assertThat(cursors.seek(second), is(sameInstance(second)));
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.items.NumberItem;
+
+/**
+ * Tests the single-flight table creation of {@link JdbcTableRegistry}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcTableRegistryTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final AtomicInteger created = new AtomicInteger();
+    private final CountDownLatch creating = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private @Nullable String createSlowly(Item item) {
+        created.incrementAndGet();
+        creating.countDown();
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "item_" + item.getName();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void tableIsCreatedOnceForConcurrentCallers() throws Exception {
+        JdbcTableRegistry registry = new JdbcTableRegistry(this::createSlowly);
+        Item item = new NumberItem("Item1");
+        List<Future<@Nullable String>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(() -> registry.getOrCreate(item)));
+        }
+        assertThat(creating.await(5, TimeUnit.SECONDS), is(true));
+        // the table is not known while it is being created
+        assertThat(registry.get("Item1"), is(nullValue()));
+        assertThat(registry.getItemNames().isEmpty(), is(true));
+
+        release.countDown();
+        for (Future<@Nullable String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS), is("item_Item1"));
+        }
+        assertThat(created.get(), is(1));
+        assertThat(registry.get("Item1"), is("item_Item1"));
+        assertThat(registry.getItemNames(), is(Set.of("Item1")));
+    }
+
+    @Test
+    public void otherItemsAreNotBlockedByACreation() throws Exception {
+        JdbcTableRegistry registry = new JdbcTableRegistry(
+                item -> "Item1".equals(item.getName()) ? createSlowly(item) : "item_" + item.getName());
+        Future<@Nullable String> slow = executor.submit(() -> registry.getOrCreate(new NumberItem("Item1")));
+        assertThat(creating.await(5, TimeUnit.SECONDS), is(true));
+
+        assertThat(registry.getOrCreate(new NumberItem("Item2")), is("item_Item2"));
+        assertThat(slow.isDone(), is(false));
+        release.countDown();
+        assertThat(slow.get(5, TimeUnit.SECONDS), is("item_Item1"));
+    }
+
+    @Test
+    public void failedCreationIsRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        JdbcTableRegistry registry = new JdbcTableRegistry(item -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("database is not available");
+            }
+            return attempts.get() == 2 ? null : "item_" + item.getName();
+        });
+        Item item = new NumberItem("Item1");
+        assertThat(registry.getOrCreate(item), is(nullValue()));
+        assertThat(registry.getOrCreate(item), is(nullValue()));
+        assertThat(registry.size(), is(0));
+
+        assertThat(registry.getOrCreate(item), is("item_Item1"));
+        assertThat(registry.getOrCreate(item), is("item_Item1"));
+        assertThat(attempts.get(), is(3));
+    }
+
+    @Test
+    public void existingTablesAreNotCreated() {
+        JdbcTableRegistry registry = new JdbcTableRegistry(item -> {
+            throw new IllegalStateException("must not be called");
+        });
+        registry.put("Item1", "item0001");
+        assertThat(registry.getOrCreate(new NumberItem("Item1")), is("item0001"));
+
+        registry.clear();
+        assertThat(registry.get("Item1"), is(nullValue()));
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.persistence.jdbc.model.ItemVO;
+import org.openhab.persistence.jdbc.model.ItemValueInsert;
+
+/**
+ * Tests the merging of values and the flushes of {@link JdbcWriteQueue}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class JdbcWriteQueueTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private final List<List<ItemVO>> batches = new ArrayList<>();
+    private final CountDownLatch written = new CountDownLatch(1);
+
+    private void write(List<ItemValueInsert> inserts, List<ItemVO> values) {
+        synchronized (batches) {
+            batches.add(new ArrayList<>(values));
+        }
+        written.countDown();
+    }
+
+    private static ItemValueInsert createInsert(String itemName, String tableName) {
+        return new ItemValueInsert(new NumberItem(itemName), tableName, "DOUBLE", Double.class, state -> 0.0,
+                "INSERT INTO " + tableName + " (time, value) VALUES (NOW(), ?)",
+                "INSERT INTO " + tableName + " (time, value) VALUES (?, ?)");
+    }
+
+    private static ItemVO createValue(String tableName, long time, double value) {
+        ItemVO vo = new ItemVO(tableName, null);
+        vo.setTime(new Date(time));
+        vo.setValue(value);
+        return vo;
+    }
+
+    @Test
+    public void valueOfTheSameTimeReplacesThePreviousOne() {
+        JdbcWriteQueue queue = new JdbcWriteQueue(100, HOUR, this::write);
+        try {
+            ItemValueInsert insert = createInsert("Item1", "item0001");
+            queue.add(insert, createValue("item0001", 1000, 1));
+            queue.add(insert, createValue("item0001", 1000, 2));
+            queue.add(insert, createValue("item0001", 1001, 3));
+            assertThat(queue.size(), is(2));
+
+            queue.flush();
+            assertThat(queue.size(), is(0));
+            assertThat(batches.size(), is(1));
+            assertThat(batches.get(0).size(), is(2));
+            assertThat(batches.get(0).get(0).getValue(), is(2.0));
+            assertThat(batches.get(0).get(1).getValue(), is(3.0));
+        } finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    public void valuesOfOtherItemsAreNotReplaced() {
+        JdbcWriteQueue queue = new JdbcWriteQueue(100, HOUR, this::write);
+        try {
+            // with the narrow table all items share a table
+            queue.add(createInsert("Item1", "item_values"), createValue("item_values", 1000, 1));
+            queue.add(createInsert("Item2", "item_values"), createValue("item_values", 1000, 2));
+            assertThat(queue.size(), is(2));
+
+            queue.flush();
+            assertThat(batches.size(), is(1));
+            assertThat(batches.get(0).size(), is(2));
+        } finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    public void tableIsFlushedOnItsOwn() {
+        JdbcWriteQueue queue = new JdbcWriteQueue(100, HOUR, this::write);
+        try {
+            queue.add(createInsert("Item1", "item0001"), createValue("item0001", 1000, 1));
+            queue.add(createInsert("Item2", "item0002"), createValue("item0002", 1000, 2));
+
+            queue.flush("item0001");
+            assertThat(queue.size(), is(1));
+            assertThat(batches.size(), is(1));
+            assertThat(batches.get(0).get(0).getTableName(), is("item0001"));
+
+            queue.flush("item0001");
+            assertThat(batches.size(), is(1));
+        } finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    public void tableFlushWaitsForAWriteInProgress() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        JdbcWriteQueue queue = new JdbcWriteQueue(100, HOUR, (inserts, values) -> {
+            writing.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            write(inserts, values);
+        });
+        try {
+            queue.add(createInsert("Item1", "item0001"), createValue("item0001", 1000, 1));
+            Thread writer = new Thread(() -> queue.flush());
+            writer.start();
+            assertThat(writing.await(5, TimeUnit.SECONDS), is(true));
+
+            CountDownLatch flushed = new CountDownLatch(1);
+            Thread query = new Thread(() -> {
+                queue.flush("item0001");
+                flushed.countDown();
+            });
+            query.start();
+            assertThat(flushed.await(100, TimeUnit.MILLISECONDS), is(false));
+
+            release.countDown();
+            assertThat(flushed.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(batches.size(), is(1));
+            writer.join();
+        } finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    public void queueIsFlushedWhenTheBatchIsFull() throws InterruptedException {
+        JdbcWriteQueue queue = new JdbcWriteQueue(2, HOUR, this::write);
+        try {
+            ItemValueInsert insert = createInsert("Item1", "item0001");
+            queue.add(insert, createValue("item0001", 1000, 1));
+            assertThat(written.await(100, TimeUnit.MILLISECONDS), is(false));
+
+            queue.add(insert, createValue("item0001", 1001, 2));
+            assertThat(written.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(batches.get(0).size(), is(2));
+        } finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    public void queueIsFlushedAfterTheInterval() throws InterruptedException {
+        JdbcWriteQueue queue = new JdbcWriteQueue(100, 50, this::write);
+        try {
+            queue.add(createInsert("Item1", "item0001"), createValue("item0001", 1000, 1));
+            assertThat(written.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(queue.size(), is(0));
+        } finally {
+            queue.stop();
+        }
+    }
+
+    @Test
+    public void stopWritesTheQueuedValues() {
+        JdbcWriteQueue queue = new JdbcWriteQueue(100, HOUR, this::write);
+        queue.add(createInsert("Item1", "item0001"), createValue("item0001", 1000, 1));
+        queue.stop();
+        assertThat(batches.size(), is(1));
+    }
+}
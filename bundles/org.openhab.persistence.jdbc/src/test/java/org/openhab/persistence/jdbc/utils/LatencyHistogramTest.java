@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.persistence.jdbc.utils.LatencyHistogram.Snapshot;
+
+/**
+ * Tests the buckets and percentiles of {@link LatencyHistogram}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallLatenciesAreCountedExactly() {
+        for (int micros = 0; micros < 16; micros++) {
+            assertThat(LatencyHistogram.index(micros), is(micros));
+            assertThat(LatencyHistogram.upperBound(micros), is((long) micros));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        // each bucket starts right after the upper bound of the previous one
+        for (long micros = 1; micros < 1 << 20; micros++) {
+            int index = LatencyHistogram.index(micros);
+            int previous = LatencyHistogram.index(micros - 1);
+            assertThat(index, is(either(is(previous)).or(is(previous + 1))));
+            if (index != previous) {
+                assertThat(LatencyHistogram.upperBound(previous), is(micros - 1));
+            }
+            assertThat(LatencyHistogram.upperBound(index), is(greaterThanOrEqualTo(micros)));
+        }
+    }
+
+    @Test
+    public void upperBoundIsWithinAnEighth() {
+        for (int exponent = 4; exponent <= 40; exponent++) {
+            for (long micros : new long[] { 1L << exponent, (1L << exponent) + 1, (1L << (exponent + 1)) - 1 }) {
+                long upperBound = LatencyHistogram.upperBound(LatencyHistogram.index(micros));
+                assertThat(upperBound, is(greaterThanOrEqualTo(micros)));
+                assertThat(upperBound - micros, is(lessThanOrEqualTo(micros / 8)));
+            }
+        }
+    }
+
+    @Test
+    public void hugeLatenciesAreCountedInTheLastBucket() {
+        int last = LatencyHistogram.index((1L << 41) - 1);
+        assertThat(LatencyHistogram.index(1L << 41), is(last));
+        assertThat(LatencyHistogram.index(Long.MAX_VALUE), is(last));
+    }
+
+    @Test
+    public void snapshotReportsPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.recordNanos(i * 1000L);
+        }
+        Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(100L));
+        assertThat(snapshot.getMean(), is(50L));
+        assertThat(snapshot.getMax(), is(100L));
+        assertThat(snapshot.getP50(), is(both(greaterThanOrEqualTo(50L)).and(lessThanOrEqualTo(56L))));
+        assertThat(snapshot.getP99(), is(both(greaterThanOrEqualTo(99L)).and(lessThanOrEqualTo(100L))));
+
+        histogram.reset();
+        snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(0L));
+        assertThat(snapshot.getP99(), is(0L));
+        assertThat(snapshot.getMax(), is(0L));
+    }
+}
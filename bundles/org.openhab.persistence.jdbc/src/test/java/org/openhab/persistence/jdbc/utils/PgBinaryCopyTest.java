@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.utils;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.persistence.jdbc.utils.PgBinaryCopy.FieldEncoder;
+
+/**
+ * Tests the binary COPY format written by {@link PgBinaryCopy}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class PgBinaryCopyTest {
+
+    private interface Encoding {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static DataInputStream encode(Encoding encoding) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        encoding.write(new DataOutputStream(buffer));
+        return new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+    }
+
+    private static FieldEncoder getEncoder(String sqlType) {
+        FieldEncoder encoder = PgBinaryCopy.getEncoder(sqlType);
+        assertThat(encoder, is(notNullValue()));
+        return encoder;
+    }
+
+    @Test
+    public void headerAndTrailer() throws IOException {
+        DataInputStream in = encode(out -> {
+            PgBinaryCopy.writeHeader(out);
+            PgBinaryCopy.writeTrailer(out);
+        });
+        byte[] signature = new byte[11];
+        in.readFully(signature);
+        assertThat(signature, is(new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0 }));
+        // flags and length of the header extension
+        assertThat(in.readInt(), is(0));
+        assertThat(in.readInt(), is(0));
+        assertThat(in.readShort(), is((short) -1));
+        assertThat(in.available(), is(0));
+    }
+
+    @Test
+    public void tupleHasTheFieldCountAndLengths() throws IOException {
+        PgBinaryCopy copy = new PgBinaryCopy("item_values", List.of("itemid", "value_num", "value_str"),
+                List.of(getEncoder("INTEGER"), getEncoder("DOUBLE PRECISION"), getEncoder("TEXT")));
+        DataInputStream in = encode(out -> copy.writeTuple(out, new Object[] { 7, null, "ä" }));
+        assertThat(in.readShort(), is((short) 3));
+        assertThat(in.readInt(), is(4));
+        assertThat(in.readInt(), is(7));
+        // null
+        assertThat(in.readInt(), is(-1));
+        // the length is the number of bytes, not of characters
+        assertThat(in.readInt(), is(2));
+        byte[] text = new byte[2];
+        in.readFully(text);
+        assertThat(new String(text, StandardCharsets.UTF_8), is("ä"));
+        assertThat(in.available(), is(0));
+    }
+
+    @Test
+    public void numbersAreWrittenInTheSizeOfTheType() throws IOException {
+        DataInputStream in = encode(out -> {
+            getEncoder("SMALLINT").encode(out, 1);
+            getEncoder("bigint").encode(out, 2);
+            getEncoder("REAL").encode(out, 1.5);
+            getEncoder("float8").encode(out, 2.5);
+        });
+        assertThat(in.readInt(), is(2));
+        assertThat(in.readShort(), is((short) 1));
+        assertThat(in.readInt(), is(8));
+        assertThat(in.readLong(), is(2L));
+        assertThat(in.readInt(), is(4));
+        assertThat(in.readFloat(), is(1.5f));
+        assertThat(in.readInt(), is(8));
+        assertThat(in.readDouble(), is(2.5));
+    }
+
+    @Test
+    public void typesAreNormalized() {
+        assertThat(PgBinaryCopy.getEncoder("VARCHAR(255)"), is(notNullValue()));
+        assertThat(PgBinaryCopy.getEncoder("timestamp  without time zone"), is(notNullValue()));
+        assertThat(PgBinaryCopy.getEncoder("TIMESTAMP(3)"), is(notNullValue()));
+        // types without a binary encoder fall back to inserts
+        assertThat(PgBinaryCopy.getEncoder("NUMERIC(10,2)"), is(nullValue()));
+        assertThat(PgBinaryCopy.getEncoder("TIMESTAMPTZ"), is(nullValue()));
+    }
+
+    @Test
+    public void timestampIsWrittenInMicrosSince2000() throws IOException {
+        Timestamp timestamp = Timestamp.valueOf(LocalDateTime.of(2000, 1, 1, 0, 0, 1, 5000));
+        assertThat(PgBinaryCopy.toMicros(timestamp), is(1_000_005L));
+        assertThat(PgBinaryCopy.toMicros(Timestamp.valueOf(LocalDateTime.of(1999, 12, 31, 23, 59, 59))),
+                is(-1_000_000L));
+        // dates are converted in the local time of the JVM, as the driver does for a TIMESTAMP column
+        Date date = Timestamp.valueOf(LocalDateTime.of(2000, 1, 2, 0, 0));
+        assertThat(PgBinaryCopy.toMicros(new Date(date.getTime())), is(86_400_000_000L));
+
+        DataInputStream in = encode(out -> getEncoder("TIMESTAMP").encode(out, timestamp));
+        assertThat(in.readInt(), is(8));
+        assertThat(in.readLong(), is(1_000_005L));
+    }
+
+    @Test
+    public void eachColumnNeedsAnEncoder() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new PgBinaryCopy("item_values", List.of("itemid", "time"), List.of(getEncoder("INTEGER"))));
+    }
+}
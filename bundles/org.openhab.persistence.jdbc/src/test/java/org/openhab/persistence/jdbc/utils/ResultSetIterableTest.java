@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.utils;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.knowm.yank.Yank;
+
+/**
+ * Tests that {@link ResultSetIterable} hands its connection back to the pool. The pool holds a single connection, so
+ * a query can only get a connection when the previous one has been closed.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class ResultSetIterableTest {
+
+    private final List<Boolean> executions = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty("jdbcUrl", "jdbc:h2:mem:ResultSetIterableTest;DB_CLOSE_DELAY=-1");
+        properties.setProperty("maximumPoolSize", "1");
+        properties.setProperty("connectionTimeout", "250");
+        Yank.setupDefaultConnectionPool(properties);
+        Yank.execute("CREATE TABLE IF NOT EXISTS item0001 (time TIMESTAMP, value INTEGER)", new Object[0]);
+        Yank.execute("DELETE FROM item0001", new Object[0]);
+        for (int i = 1; i <= 3; i++) {
+            Yank.execute("INSERT INTO item0001 (time, value) VALUES (NOW(), ?)", new Object[] { i });
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Yank.releaseDefaultConnectionPool();
+    }
+
+    private ResultSetIterable<Integer> query(String sql) {
+        return new ResultSetIterable<>(sql, new Object[] { 1 }, 2, rs -> rs.getInt(1),
+                (startNanos, failed) -> executions.add(failed));
+    }
+
+    private static boolean isConnectionAvailable() {
+        DataSource dataSource = Yank.getDefaultConnectionPool();
+        assertThat(dataSource, is(notNullValue()));
+        try (Connection connection = dataSource.getConnection()) {
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void connectionIsClosedWhenTheLastRowHasBeenRead() {
+        Iterator<Integer> iterator = query("SELECT value FROM item0001 WHERE value >= ? ORDER BY value").iterator();
+        assertThat(iterator.next(), is(1));
+        // the iteration holds the only connection of the pool
+        assertThat(isConnectionAvailable(), is(false));
+
+        assertThat(iterator.next(), is(2));
+        assertThat(iterator.next(), is(3));
+        assertThat(iterator.hasNext(), is(false));
+        assertThat(isConnectionAvailable(), is(true));
+        assertThrows(NoSuchElementException.class, iterator::next);
+        assertThat(executions, is(List.of(false)));
+    }
+
+    @Test
+    public void everyIterationRunsTheQueryAgain() {
+        ResultSetIterable<Integer> result = query("SELECT value FROM item0001 WHERE value > ? ORDER BY value");
+        List<Integer> values = new ArrayList<>();
+        result.forEach(values::add);
+        result.forEach(values::add);
+        assertThat(values, is(List.of(2, 3, 2, 3)));
+        assertThat(executions, is(List.of(false, false)));
+        assertThat(isConnectionAvailable(), is(true));
+    }
+
+    @Test
+    public void connectionIsClosedWhenTheQueryFails() {
+        Iterator<Integer> iterator = query("SELECT value FROM missing WHERE value > ?").iterator();
+        assertThat(iterator.hasNext(), is(false));
+        assertThat(executions, is(List.of(true)));
+        assertThat(isConnectionAvailable(), is(true));
+    }
+
+    @Test
+    public void readAllClosesTheConnection() {
+        assertThat(query("SELECT value FROM item0001 WHERE value >= ? ORDER BY value").readAll(),
+                is(List.of(1, 2, 3)));
+        assertThat(isConnectionAvailable(), is(true));
+        assertThat(executions, is(List.of(false)));
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.utils;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the literal replacements of {@link StringUtilsExt}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class StringUtilsExtTest {
+
+    @Test
+    public void onlyTheFirstOccurrenceIsReplaced() {
+        assertThat(StringUtilsExt.replaceFirstLiteral("#a# #a#", "#a#", "b"), is("b #a#"));
+        assertThat(StringUtilsExt.replaceFirstLiteral("#a#", "#b#", "c"), is("#a#"));
+    }
+
+    @Test
+    public void wordAndReplacementAreNotRegularExpressions() {
+        assertThat(StringUtilsExt.replaceFirstLiteral("x.y xzy", "x.y", "?"), is("? xzy"));
+        assertThat(StringUtilsExt.replaceFirstLiteral("VALUES (#value#)", "#value#", "$1\\d"), is("VALUES ($1\\d)"));
+        assertThat(StringUtilsExt.replaceFirstLiteral("SELECT (", "(", "["), is("SELECT ["));
+    }
+
+    @Test
+    public void placeholdersAreReplacedInOrder() {
+        String sql = "INSERT INTO #tableName# (time, value) VALUES (#tablePrimaryValue#, ?)";
+        assertThat(
+                StringUtilsExt.replaceArrayMerge(sql, new String[] { "#tableName#", "#tablePrimaryValue#" },
+                        new String[] { "item$0001", "NOW()" }),
+                is("INSERT INTO item$0001 (time, value) VALUES (NOW(), ?)"));
+        assertThat(StringUtilsExt.replaceArrayMerge("#x# #x#", "#x#", new Object[] { "a", "b" }), is("a b"));
+    }
+}
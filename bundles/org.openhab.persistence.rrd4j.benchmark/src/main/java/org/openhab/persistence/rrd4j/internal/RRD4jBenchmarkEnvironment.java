@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.OpenHAB;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.ui.items.ItemUIRegistry;
+
+/**
+ * The {@link RRD4jBenchmarkEnvironment} runs a {@link RRD4jPersistenceService} on a temporary user data folder, with
+ * an item registry that knows a {@link NumberItem} of any name.
+ *
+ * The database folder of the service is fixed when its class is loaded, so all environments of a JVM share the same
+ * temporary folder, which is emptied whenever an environment is created or closed.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jBenchmarkEnvironment implements AutoCloseable {
+
+    private static final long HOUR = 3600;
+    private static final long YEAR = 365 * 24 * HOUR;
+
+    private static @Nullable Path userDataFolder;
+
+    private final Map<String, NumberItem> items = new ConcurrentHashMap<>();
+    private final ItemUIRegistry itemRegistry = createItemRegistry();
+    private final RRD4jPersistenceService service;
+
+    /**
+     * Starts the persistence service on an empty database folder.
+     *
+     * @param config the configuration of the service
+     * @throws IOException if the temporary folder cannot be prepared
+     */
+    public RRD4jBenchmarkEnvironment(Map<String, Object> config) throws IOException {
+        clear(getDatabaseFolder());
+        service = new RRD4jPersistenceService(itemRegistry);
+        service.activate(new HashMap<>(config));
+    }
+
+    public RRD4jPersistenceService getService() {
+        return service;
+    }
+
+    /**
+     * Returns the registry of the items, which can serve as UI registry, too.
+     */
+    public ItemUIRegistry getItemRegistry() {
+        return itemRegistry;
+    }
+
+    public NumberItem getItem(String name) {
+        return items.computeIfAbsent(name, NumberItem::new);
+    }
+
+    /**
+     * Fills the databases of the given items with values for the last year, one per minute and one every ten seconds
+     * for the last hour, so that all archives of the default definition hold data.
+     *
+     * @param itemNames the names of the items
+     * @throws IOException if the values cannot be imported
+     */
+    public void createHistory(Collection<String> itemNames) throws IOException {
+        Path directory = Files.createTempDirectory(getUserDataFolder(), "import");
+        try {
+            long now = System.currentTimeMillis() / 1000;
+            for (String itemName : itemNames) {
+                getItem(itemName);
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        new GZIPOutputStream(Files.newOutputStream(directory.resolve(itemName + ".csv.gz"))),
+                        StandardCharsets.UTF_8))) {
+                    for (long time = now - YEAR; time < now; time += time < now - HOUR ? 60 : 10) {
+                        writer.write(time + "," + Math.sin(time / 3600.0) * 20 + "\n");
+                    }
+                }
+            }
+            int imported = service.importItems(directory, itemNames);
+            if (imported != itemNames.size()) {
+                throw new IOException("Only " + imported + " of " + itemNames.size() + " items have been imported");
+            }
+        } finally {
+            clear(directory);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Sets the state of an item and stores it.
+     *
+     * @param name the name of the item
+     * @param value the new state
+     */
+    public void store(String name, double value) {
+        NumberItem item = getItem(name);
+        item.setState(new DecimalType(value));
+        service.store(item);
+    }
+
+    /**
+     * Writes all values that are still queued by the service to the databases.
+     */
+    public void flush() {
+        service.flushAll();
+    }
+
+    /**
+     * Stops the persistence service, which writes all pending values, and deletes the databases.
+     */
+    @Override
+    public void close() throws IOException {
+        service.deactivate();
+        clear(getDatabaseFolder());
+    }
+
+    /**
+     * Returns the temporary user data folder, creating it on the first call.
+     */
+    public static synchronized Path getUserDataFolder() throws IOException {
+        Path folder = userDataFolder;
+        if (folder == null) {
+            folder = Files.createTempDirectory("rrd4j-benchmark");
+            System.setProperty(OpenHAB.USERDATA_DIR_PROG_ARGUMENT, folder.toString());
+            final Path root = folder;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    clear(root);
+                    Files.deleteIfExists(root);
+                } catch (IOException e) {
+                    // nothing left to do
+                }
+            }));
+            userDataFolder = folder;
+        }
+        return folder;
+    }
+
+    private static Path getDatabaseFolder() throws IOException {
+        return getUserDataFolder().resolve("persistence").resolve("rrd4j");
+    }
+
+    private static void clear(Path folder) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).filter(file -> !file.equals(folder)).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private ItemUIRegistry createItemRegistry() {
+        return (ItemUIRegistry) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ItemUIRegistry.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "get":
+                        case "getItem":
+                            return getItem((String) args[0]);
+                        case "getItems":
+                        case "getAll":
+                            return args == null || args.length == 0 ? new ArrayList<Item>(items.values())
+                                    : defaultValue(method);
+                        case "getLabel":
+                            return args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "BenchmarkItemRegistry";
+                        default:
+                            return defaultValue(method);
+                    }
+                });
+    }
+
+    private static @Nullable Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (Collection.class.isAssignableFrom(type)) {
+            return new ArrayList<>();
+        } else if (type == Stream.class) {
+            return Stream.empty();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.HistoricItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the latency of queries over ranges served by the different archives of the default definition.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RRD4jQueryBenchmark {
+
+    private static final String ITEM_NAME = "Query";
+
+    @Param({ "1h", "1d", "1y" })
+    public String range = "1h";
+
+    private @Nullable RRD4jBenchmarkEnvironment environment;
+    private ChronoUnit unit = ChronoUnit.HOURS;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        RRD4jBenchmarkEnvironment environment = new RRD4jBenchmarkEnvironment(Map.of());
+        environment.createHistory(List.of(ITEM_NAME));
+        this.environment = environment;
+        switch (range) {
+            case "1h":
+                unit = ChronoUnit.HOURS;
+                break;
+            case "1d":
+                unit = ChronoUnit.DAYS;
+                break;
+            case "1y":
+                unit = ChronoUnit.YEARS;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown range '" + range + "'");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        RRD4jBenchmarkEnvironment environment = this.environment;
+        if (environment != null) {
+            environment.close();
+            this.environment = null;
+        }
+    }
+
+    @Benchmark
+    public void query(Blackhole blackhole) {
+        RRD4jBenchmarkEnvironment environment = this.environment;
+        if (environment == null) {
+            throw new IllegalStateException("The benchmark has not been set up");
+        }
+        ZonedDateTime end = ZonedDateTime.now();
+        FilterCriteria filter = new FilterCriteria();
+        filter.setItemName(ITEM_NAME);
+        filter.setBeginDate(end.minus(1, unit));
+        filter.setEndDate(end);
+        for (HistoricItem item : environment.getService().query(filter)) {
+            blackhole.consume(item.getState());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many times per second the states of all items can be stored.
+ *
+ * A call of {@link RRD4jPersistenceService#store(org.openhab.core.items.Item)} only queues the value, the databases
+ * are opened and written by the threads of the service while the benchmark runs. The throughput thus reflects the
+ * contention of the queue, the database pool and its locks between the caller and the writers, not the time of the
+ * writes themselves, which is measured by {@link RRD4jWriteBenchmark}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RRD4jStoreBenchmark {
+
+    @Param({ "1", "100", "10000" })
+    public int itemCount;
+
+    @Param({ "ITEM", "GROUPED" })
+    public String layout = "ITEM";
+
+    private @Nullable RRD4jBenchmarkEnvironment environment;
+    private String[] itemNames = new String[0];
+    private double value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        environment = new RRD4jBenchmarkEnvironment(Map.of("layout", layout));
+        itemNames = new String[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            itemNames[i] = "Store" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        RRD4jBenchmarkEnvironment environment = this.environment;
+        if (environment != null) {
+            environment.close();
+            this.environment = null;
+        }
+    }
+
+    @Benchmark
+    public void storeAll() {
+        RRD4jBenchmarkEnvironment environment = this.environment;
+        if (environment == null) {
+            throw new IllegalStateException("The benchmark has not been set up");
+        }
+        value++;
+        for (String itemName : itemNames) {
+            environment.store(itemName, value);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time to store the states of all items and write them to their databases, i.e. the queue, the
+ * database pool, its locks and the updates of the files.
+ *
+ * rrd4j accepts at most one update per second and database, so every invocation waits for the next second before it
+ * is measured. The databases are created before the measurement starts.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class RRD4jWriteBenchmark {
+
+    @Param({ "1", "100", "10000" })
+    public int itemCount;
+
+    @Param({ "ITEM", "GROUPED" })
+    public String layout = "ITEM";
+
+    private @Nullable RRD4jBenchmarkEnvironment environment;
+    private String[] itemNames = new String[0];
+    private double value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        RRD4jBenchmarkEnvironment environment = new RRD4jBenchmarkEnvironment(Map.of("layout", layout));
+        itemNames = new String[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            itemNames[i] = "Write" + i;
+            environment.store(itemNames[i], value);
+        }
+        environment.flush();
+        this.environment = environment;
+    }
+
+    @Setup(Level.Invocation)
+    public void waitForNextSecond() throws InterruptedException {
+        Thread.sleep(1000 - System.currentTimeMillis() % 1000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        RRD4jBenchmarkEnvironment environment = this.environment;
+        if (environment != null) {
+            environment.close();
+            this.environment = null;
+        }
+    }
+
+    @Benchmark
+    public void storeAndWriteAll() {
+        RRD4jBenchmarkEnvironment environment = this.environment;
+        if (environment == null) {
+            throw new IllegalStateException("The benchmark has not been set up");
+        }
+        value++;
+        for (String itemName : itemNames) {
+            environment.store(itemName, value);
+        }
+        environment.flush();
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal.charts;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.persistence.rrd4j.internal.RRD4jBenchmarkEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.service.http.HttpService;
+
+/**
+ * Measures the time needed to render a chart of a few items. The charts end in the past, so that they are not served
+ * from the chart cache.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RRD4jChartBenchmark {
+
+    @Param({ "h", "D", "Y" })
+    public String period = "h";
+
+    @Param({ "1", "4" })
+    public int itemCount;
+
+    private @Nullable RRD4jBenchmarkEnvironment environment;
+    private @Nullable RRD4jChartServlet servlet;
+    private String items = "";
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        RRD4jBenchmarkEnvironment environment = new RRD4jBenchmarkEnvironment(Map.of());
+        List<String> itemNames = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            itemNames.add("Chart" + i);
+        }
+        environment.createHistory(itemNames);
+        items = String.join(",", itemNames);
+        this.environment = environment;
+
+        RRD4jChartServlet servlet = new RRD4jChartServlet();
+        servlet.httpService = (HttpService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { HttpService.class }, (proxy, method, args) -> null);
+        servlet.itemUIRegistry = environment.getItemRegistry();
+        servlet.persistenceService = environment.getService();
+        servlet.activate(Map.of());
+        this.servlet = servlet;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        RRD4jChartServlet servlet = this.servlet;
+        if (servlet != null) {
+            servlet.deactivate();
+            this.servlet = null;
+        }
+        RRD4jBenchmarkEnvironment environment = this.environment;
+        if (environment != null) {
+            environment.close();
+            this.environment = null;
+        }
+    }
+
+    @Benchmark
+    public @Nullable BufferedImage render() throws ItemNotFoundException {
+        RRD4jChartServlet servlet = this.servlet;
+        if (servlet == null) {
+            throw new IllegalStateException("The benchmark has not been set up");
+        }
+        Long duration = RRD4jChartServlet.PERIODS.get(period);
+        Date endTime = new Date(System.currentTimeMillis() - 5000);
+        Date startTime = new Date(endTime.getTime() + (duration != null ? duration : -3600000L));
+        return servlet.createChart("rrd4j", "", startTime, endTime, 480, 640, items, null, 96, true);
+    }
+}
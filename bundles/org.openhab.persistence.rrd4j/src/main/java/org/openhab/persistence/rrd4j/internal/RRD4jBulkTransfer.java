@@ -0,0 +1,410 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.common.NamedThreadFactory;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.QueryablePersistenceService;
+import org.openhab.persistence.rrd4j.internal.RRD4jGroupMapping.Slot;
+import org.openhab.persistence.rrd4j.internal.RRD4jPersistenceService.RrdArchiveDef;
+import org.openhab.persistence.rrd4j.internal.RRD4jPersistenceService.RrdDefConfig;
+import org.rrd4j.DsType;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.RrdMemoryBackendFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RRD4jBulkTransfer} exports and imports the history of items and replays the values stored by other
+ * persistence services. The items are processed in parallel on a temporary thread pool.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jBulkTransfer {
+
+    private static final String EXPORT_EXTENSION = ".csv.gz";
+    private static final String UNKNOWN_VALUE = "U";
+    private static final int REPLAY_PAGE_SIZE = 10000;
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jBulkTransfer.class);
+
+    private final RRD4jPersistenceService service;
+    private final RRD4jDbPool dbPool;
+    private final RRD4jCatalog catalog;
+    private final RRD4jGroupMapping groupMapping;
+
+    /**
+     * Writes the values of a database that is going to be created.
+     */
+    @FunctionalInterface
+    private interface HistoryWriter {
+        void write(RrdDb db) throws IOException;
+    }
+
+    /**
+     * @param service the service holding the databases
+     * @param dbPool the pool of open databases
+     * @param catalog the catalog of the database files
+     * @param groupMapping the mapping of items to group files
+     */
+    public RRD4jBulkTransfer(RRD4jPersistenceService service, RRD4jDbPool dbPool, RRD4jCatalog catalog,
+            RRD4jGroupMapping groupMapping) {
+        this.service = service;
+        this.dbPool = dbPool;
+        this.catalog = catalog;
+        this.groupMapping = groupMapping;
+    }
+
+    /**
+     * Writes the history of the given items into the directory, one gzipped CSV file per item with lines of the form
+     * <code>&lt;timestamp&gt;,&lt;value&gt;</code>, where the value <code>U</code> marks the end of a period without
+     * values. Every part of the time range is taken from the finest archive holding it.
+     *
+     * @param directory the directory to write to
+     * @param itemNames the names of the items, or an empty collection for all items
+     * @return the number of exported items
+     * @throws IOException if the directory cannot be created
+     */
+    public int exportItems(Path directory, Collection<String> itemNames) throws IOException {
+        Files.createDirectories(directory);
+        Collection<String> names = itemNames;
+        if (names.isEmpty()) {
+            Set<String> all = new TreeSet<>(catalog.listAliases());
+            all.addAll(groupMapping.getItemNames());
+            names = all;
+        }
+        return runParallel(names, name -> exportItem(name, directory.resolve(name + EXPORT_EXTENSION)));
+    }
+
+    private boolean exportItem(String name, Path file) {
+        Slot slot = service.findSlot(name);
+        if (slot == null) {
+            logger.info("Not exporting '{}' as there is no rrd4j database for it", name);
+            return false;
+        }
+        RRD4jTimeSeries history;
+        // the values are read while no update happens, so that they are consistent
+        Lock lock = dbPool.getLock(slot.getAlias());
+        lock.lock();
+        try {
+            RrdDb db = service.getExistingDB(slot.getAlias());
+            if (db == null) {
+                return false;
+            }
+            try {
+                history = service.fetchHistory(db, slot.getDsName());
+            } finally {
+                service.releaseDB(slot.getAlias());
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read rrd4j database of '{}': {}", name, e.getMessage());
+            return false;
+        } finally {
+            lock.unlock();
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8))) {
+            boolean known = false;
+            for (int i = 0; i < history.size(); i++) {
+                double value = history.getValue(i);
+                if (!Double.isNaN(value)) {
+                    writer.write(history.getTimestamp(i) + "," + value + "\n");
+                    known = true;
+                } else if (known && (i == history.size() - 1 || !Double.isNaN(history.getValue(i + 1)))) {
+                    // a period of unknown values is stored by its end only
+                    writer.write(history.getTimestamp(i) + "," + UNKNOWN_VALUE + "\n");
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not export '{}' to '{}': {}", name, file, e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates the databases of the given items from files written by {@link #exportItems(Path, Collection)}. Items
+     * that already have a database are skipped.
+     *
+     * @param directory the directory to read from
+     * @param itemNames the names of the items, or an empty collection for all files in the directory
+     * @return the number of imported items
+     * @throws IOException if the directory cannot be read
+     */
+    public int importItems(Path directory, Collection<String> itemNames) throws IOException {
+        Collection<String> names = itemNames;
+        if (names.isEmpty()) {
+            List<String> all = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXPORT_EXTENSION)) {
+                for (Path file : stream) {
+                    String fileName = file.getFileName().toString();
+                    all.add(fileName.substring(0, fileName.length() - EXPORT_EXTENSION.length()));
+                }
+            }
+            names = all;
+        }
+        return runParallel(names, name -> importItem(name, directory.resolve(name + EXPORT_EXTENSION)));
+    }
+
+    private boolean importItem(String name, Path file) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (line == null) {
+                return false;
+            }
+            String first = line;
+            return createFromHistory(name, parseTimestamp(first) - 1, db -> {
+                long lastUpdate = db.getLastUpdateTime();
+                for (String next = first; next != null; next = reader.readLine()) {
+                    int separator = next.indexOf(',');
+                    long time = parseTimestamp(next);
+                    if (time > lastUpdate) {
+                        String value = next.substring(separator + 1).trim();
+                        db.createSample(time)
+                                .setValue(0, UNKNOWN_VALUE.equals(value) ? Double.NaN : Double.parseDouble(value))
+                                .update();
+                        lastUpdate = time;
+                    }
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not import '{}' from '{}': {}", name, file, e.getMessage());
+            return false;
+        }
+    }
+
+    private static long parseTimestamp(String line) {
+        int separator = line.indexOf(',');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Illegal line '" + line + "'");
+        }
+        return Long.parseLong(line.substring(0, separator).trim());
+    }
+
+    /**
+     * Creates the databases of the given items from the values stored by another persistence service, as far back as
+     * the archives of their definitions reach. Items that already have a database are skipped. The values are read
+     * page by page, so that the memory needed is bounded.
+     *
+     * @param source the service to read from
+     * @param itemNames the names of the items
+     * @return the number of items that have been created
+     */
+    public int replayFrom(QueryablePersistenceService source, Collection<String> itemNames) {
+        return runParallel(itemNames, name -> replayItem(source, name));
+    }
+
+    private boolean replayItem(QueryablePersistenceService source, String name) {
+        RrdDefConfig rdc = service.getRrdDefConfig(name);
+        if (rdc == null) {
+            return false;
+        }
+        long span = 0;
+        for (RrdArchiveDef archive : rdc.archives) {
+            span = Math.max(span, (long) rdc.step * archive.steps * archive.rows);
+        }
+        FilterCriteria filter = new FilterCriteria();
+        filter.setItemName(name);
+        filter.setBeginDate(ZonedDateTime.now().minusSeconds(span));
+        filter.setOrdering(Ordering.ASCENDING);
+        filter.setPageSize(REPLAY_PAGE_SIZE);
+        filter.setPageNumber(0);
+        Iterator<HistoricItem> values = queryAll(source, filter);
+        if (!values.hasNext()) {
+            return false;
+        }
+        HistoricItem first = values.next();
+        long startTime = first.getTimestamp().toEpochSecond() - 1;
+        try {
+            return createFromHistory(name, startTime, db -> {
+                long lastUpdate = db.getLastUpdateTime();
+                double lastValue = Double.NaN;
+                HistoricItem historicItem = first;
+                while (historicItem != null) {
+                    long time = historicItem.getTimestamp().toEpochSecond();
+                    DecimalType state = historicItem.getState().as(DecimalType.class);
+                    if (state != null && time > lastUpdate) {
+                        // the stored values change at their timestamp, so the previous value holds until then
+                        if (!Double.isNaN(lastValue) && time - 1 > lastUpdate) {
+                            db.createSample(time - 1).setValue(0, lastValue).update();
+                        }
+                        lastValue = state.toBigDecimal().doubleValue();
+                        db.createSample(time).setValue(0, lastValue).update();
+                        lastUpdate = time;
+                    }
+                    historicItem = values.hasNext() ? values.next() : null;
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not replay '{}' from '{}': {}", name, source.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns all results of a query, reading them page by page.
+     *
+     * @param source the service to query
+     * @param filter the filter of the query, with the page size set
+     * @return the results in the order of the filter
+     */
+    private Iterator<HistoricItem> queryAll(QueryablePersistenceService source, FilterCriteria filter) {
+        return new Iterator<HistoricItem>() {
+            private Iterator<HistoricItem> page = source.query(filter).iterator();
+            private int count = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (page.hasNext()) {
+                    return true;
+                }
+                if (count < filter.getPageSize()) {
+                    // the last page has not been full, so there are no more results
+                    return false;
+                }
+                filter.setPageNumber(filter.getPageNumber() + 1);
+                page = source.query(filter).iterator();
+                count = 0;
+                return page.hasNext();
+            }
+
+            @Override
+            public HistoricItem next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                count++;
+                return page.next();
+            }
+        };
+    }
+
+    /**
+     * Creates the database file of an item from its history. The history is written to a database in memory first,
+     * which is then stored as a whole.
+     *
+     * @param name the name of the item
+     * @param startTime the time of the database creation, i.e. before the first value, in seconds since the epoch
+     * @param writer writes the values of the item into the database
+     * @return <code>false</code> if the item already has a database or its definition does not allow to write
+     *         historic values
+     * @throws IOException if the database could not be created
+     */
+    private boolean createFromHistory(String name, long startTime, HistoryWriter writer) throws IOException {
+        if (service.findSlot(name) != null) {
+            logger.info("Not creating rrd4j database for '{}' as it exists already", name);
+            return false;
+        }
+        RrdDefConfig rdc = service.getRrdDefConfig(name);
+        if (rdc == null || rdc.dsType != DsType.GAUGE) {
+            logger.info("Not creating rrd4j database for '{}' as only GAUGE definitions are supported", name);
+            return false;
+        }
+        Lock lock = dbPool.getLock(name);
+        lock.lock();
+        try {
+            File file = RRD4jPersistenceService.getDBFile(name);
+            if (file.exists()) {
+                return false;
+            }
+            RrdDef rrdDef = service.getRrdDef(name, file);
+            rrdDef.setStartTime(Math.min(startTime, System.currentTimeMillis() / 1000 - 1));
+            RrdDb db = new RrdDb(rrdDef, new RrdMemoryBackendFactory());
+            byte[] bytes;
+            try {
+                // the gaps between historic values may well exceed the heartbeat
+                RRD4jPersistenceService.setHeartbeat(db, db.getLastUpdateTime() + 1);
+                writer.write(db);
+                RRD4jPersistenceService.setHeartbeat(db, rdc.heartbeat);
+                bytes = db.getBytes();
+            } finally {
+                db.close();
+            }
+            RRD4jSnapshots.writeFile(file.toPath(), bytes);
+            service.forget(name);
+        } finally {
+            lock.unlock();
+        }
+        service.scheduleCatalogRefresh(name);
+        return true;
+    }
+
+    /**
+     * Runs a task for all given items on a temporary thread pool.
+     *
+     * @param itemNames the names of the items
+     * @param task the task, returning whether it has been successful
+     * @return the number of items the task has been successful for
+     */
+    private int runParallel(Collection<String> itemNames, Predicate<String> task) {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("RRD4j-bulk"));
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (String itemName : itemNames) {
+                results.add(executor.submit(() -> task.test(itemName)));
+            }
+            int successful = 0;
+            for (Future<Boolean> result : results) {
+                try {
+                    if (result.get()) {
+                        successful++;
+                    }
+                } catch (ExecutionException e) {
+                    logger.warn("Error processing rrd4j database: {}", e.getCause().getMessage());
+                }
+            }
+            return successful;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
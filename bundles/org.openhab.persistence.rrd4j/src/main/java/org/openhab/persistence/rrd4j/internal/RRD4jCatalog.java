@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.NamedThreadFactory;
+import org.openhab.core.persistence.PersistenceItemInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RRD4jCatalog} keeps the information about all database files in memory. It watches the database folder,
+ * so that files that are added or removed from outside are reflected as well.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jCatalog {
+
+    public static final String FILE_EXTENSION = ".rrd";
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jCatalog.class);
+
+    private final Map<String, RRD4jItemInfo> entries = new ConcurrentHashMap<>();
+
+    private final Path folder;
+    private final Consumer<String> refresher;
+    private final Consumer<String> removed;
+
+    private @Nullable WatchService watchService;
+    private @Nullable ExecutorService watcher;
+
+    /**
+     * @param folder the folder holding the database files
+     * @param refresher called with the alias of a database file that has been added to the folder
+     * @param removed called with the alias of a database file that has been removed from the folder
+     */
+    public RRD4jCatalog(Path folder, Consumer<String> refresher, Consumer<String> removed) {
+        this.folder = folder;
+        this.refresher = refresher;
+        this.removed = removed;
+    }
+
+    /**
+     * Lists the aliases of all database files in the folder.
+     *
+     * @return the aliases
+     */
+    public List<String> listAliases() {
+        List<String> aliases = new ArrayList<>();
+        if (Files.isDirectory(folder)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*" + FILE_EXTENSION)) {
+                for (Path file : stream) {
+                    aliases.add(getAlias(file));
+                }
+            } catch (IOException e) {
+                logger.warn("Could not list rrd4j database files in '{}': {}", folder, e.getMessage());
+            }
+        }
+        return aliases;
+    }
+
+    /**
+     * Starts watching the folder for added and removed database files.
+     */
+    public void start() {
+        try {
+            Files.createDirectories(folder);
+            WatchService watchService = folder.getFileSystem().newWatchService();
+            folder.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+            this.watchService = watchService;
+            // the watcher blocks while waiting for changes, so it does not run on the shared scheduler
+            ExecutorService watcher = Executors.newSingleThreadExecutor(new NamedThreadFactory("RRD4j-catalog"));
+            watcher.execute(() -> watch(watchService));
+            this.watcher = watcher;
+        } catch (IOException e) {
+            logger.warn("Could not watch rrd4j database folder '{}': {}", folder, e.getMessage());
+        }
+    }
+
+    public void stop() {
+        WatchService watchService = this.watchService;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("Error closing watch service: {}", e.getMessage());
+            }
+            this.watchService = null;
+        }
+        ExecutorService watcher = this.watcher;
+        if (watcher != null) {
+            // closing the watch service ends the watch
+            watcher.shutdown();
+            this.watcher = null;
+        }
+    }
+
+    private void watch(WatchService watchService) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    if (!(context instanceof Path) || !context.toString().endsWith(FILE_EXTENSION)) {
+                        continue;
+                    }
+                    String alias = getAlias((Path) context);
+                    if (event.kind() == ENTRY_DELETE) {
+                        entries.remove(alias);
+                        removed.accept(alias);
+                    } else if (event.kind() == ENTRY_CREATE && !entries.containsKey(alias)) {
+                        refresher.accept(alias);
+                    }
+                }
+                if (!key.reset()) {
+                    logger.debug("rrd4j database folder '{}' is no longer accessible", folder);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the catalog has been stopped
+        }
+    }
+
+    private static String getAlias(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.substring(0, fileName.length() - FILE_EXTENSION.length());
+    }
+
+    public @Nullable RRD4jItemInfo get(String alias) {
+        return entries.get(alias);
+    }
+
+    public void put(RRD4jItemInfo info) {
+        entries.put(info.getName(), info);
+    }
+
+    public void remove(String alias) {
+        entries.remove(alias);
+    }
+
+    /**
+     * Updates the time of the last update of a database.
+     *
+     * @param alias the alias of the database
+     * @param time the time of the update in seconds since the epoch
+     * @return <code>false</code> if the database is not in the catalog yet
+     */
+    public boolean updateLastUpdateTime(String alias, long time) {
+        RRD4jItemInfo info = entries.get(alias);
+        if (info == null) {
+            return false;
+        }
+        info.setLastUpdateTime(time);
+        return true;
+    }
+
+    public Set<PersistenceItemInfo> getAll() {
+        return Collections.unmodifiableSet(new HashSet<>(entries.values()));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
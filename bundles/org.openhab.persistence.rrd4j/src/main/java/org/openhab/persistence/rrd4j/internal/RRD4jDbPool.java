@@ -0,0 +1,302 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.rrd4j.core.RrdDb;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RRD4jDbPool} keeps a bounded number of {@link RrdDb} instances open, so that the database files do not
+ * have to be opened and parsed again for every single store or query.
+ *
+ * Every {@link #acquire(String)} must be paired with a {@link #release(String)}. Databases that are not in use are
+ * closed in least-recently-used order when the pool grows beyond its capacity, or when they have been idle for longer
+ * than the configured timeout.
+ *
+ * Databases are opened outside of the pool monitor, so that a slow file does not block access to all others. A
+ * fixed set of striped locks (see {@link #getLock(String)}) makes sure that a file is only opened once and that
+ * callers can serialize their writes to the same file without blocking writes to different files. Databases are also
+ * only closed while holding the lock of their alias.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jDbPool {
+
+    public static final int DEFAULT_MAX_OPEN_FILES = 256;
+    public static final int DEFAULT_IDLE_TIMEOUT = 300;
+
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * Opens (and if necessary creates) the database for the given alias.
+     */
+    @FunctionalInterface
+    public interface DbOpener {
+        RrdDb open(String alias) throws IOException;
+    }
+
+    private static class PoolEntry {
+        private final RrdDb db;
+        private int usageCount;
+        private long lastAccess;
+        private boolean evicted;
+
+        private PoolEntry(RrdDb db) {
+            this.db = db;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jDbPool.class);
+
+    private final DbOpener opener;
+
+    // access ordered, so iteration starts with the least recently used entry
+    private final Map<String, PoolEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Lock[] locks = new Lock[LOCK_STRIPES];
+
+    private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT * 1000L;
+    private boolean closed = false;
+
+    public RRD4jDbPool(DbOpener opener) {
+        this.opener = opener;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Returns the lock guarding the database with the given alias. Different aliases may share the same lock.
+     *
+     * @param alias the alias of the database
+     * @return the (reentrant) lock for this alias
+     */
+    public Lock getLock(String alias) {
+        return locks[(alias.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    /**
+     * Sets the limits of this pool.
+     *
+     * @param maxOpenFiles the maximum number of databases kept open while not in use
+     * @param idleTimeout the number of seconds after which an unused database is closed
+     */
+    public void setLimits(int maxOpenFiles, int idleTimeout) {
+        synchronized (this) {
+            this.maxOpenFiles = Math.max(1, maxOpenFiles);
+            this.idleTimeoutMillis = Math.max(1, idleTimeout) * 1000L;
+        }
+        evictOverCapacity();
+    }
+
+    /**
+     * Returns the open database for the given alias, opening it if necessary.
+     *
+     * @param alias the alias (i.e. file name without extension) of the database
+     * @return the database or <code>null</code> if it could not be opened
+     * @throws IOException if opening the database failed
+     */
+    public @Nullable RrdDb acquire(String alias) throws IOException {
+        Lock lock = getLock(alias);
+        lock.lock();
+        try {
+            synchronized (this) {
+                if (closed) {
+                    return null;
+                }
+                PoolEntry entry = entries.get(alias);
+                if (entry != null && !entry.db.isClosed()) {
+                    entry.usageCount++;
+                    entry.lastAccess = System.currentTimeMillis();
+                    return entry.db;
+                }
+            }
+            RrdDb db = opener.open(alias);
+            synchronized (this) {
+                if (!closed) {
+                    PoolEntry entry = new PoolEntry(db);
+                    entry.usageCount = 1;
+                    entry.lastAccess = System.currentTimeMillis();
+                    entries.put(alias, entry);
+                    return db;
+                }
+            }
+            // the pool has been closed while the database was opened
+            closeAll(List.of(db));
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands a database obtained by {@link #acquire(String)} back to the pool.
+     *
+     * @param alias the alias that was used to acquire the database
+     */
+    public void release(String alias) {
+        boolean evicted;
+        synchronized (this) {
+            PoolEntry entry = entries.get(alias);
+            if (entry == null) {
+                return;
+            }
+            if (entry.usageCount > 0) {
+                entry.usageCount--;
+            }
+            entry.lastAccess = System.currentTimeMillis();
+            evicted = entry.evicted && entry.usageCount == 0;
+        }
+        if (evicted) {
+            evict(alias);
+        }
+        evictOverCapacity();
+    }
+
+    /**
+     * Closes the database for the given alias, e.g. because its file is going to be replaced or has been deleted. A
+     * database that is in use is closed as soon as it is released.
+     *
+     * @param alias the alias of the database
+     */
+    public void evict(String alias) {
+        Lock lock = getLock(alias);
+        lock.lock();
+        try {
+            RrdDb db = null;
+            synchronized (this) {
+                PoolEntry entry = entries.get(alias);
+                if (entry != null && entry.usageCount == 0) {
+                    entries.remove(alias);
+                    db = entry.db;
+                } else if (entry != null) {
+                    entry.evicted = true;
+                }
+            }
+            if (db != null) {
+                closeAll(List.of(db));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes all databases that have not been used within the idle timeout.
+     */
+    public void closeIdle() {
+        List<String> candidates = new ArrayList<>();
+        long oldest;
+        synchronized (this) {
+            oldest = System.currentTimeMillis() - idleTimeoutMillis;
+            for (Map.Entry<String, PoolEntry> entry : entries.entrySet()) {
+                if (entry.getValue().usageCount == 0 && entry.getValue().lastAccess < oldest) {
+                    candidates.add(entry.getKey());
+                }
+            }
+        }
+        evictAll(candidates, entry -> entry.lastAccess < oldest);
+    }
+
+    /**
+     * Closes all databases and rejects further requests.
+     */
+    public void close() {
+        List<RrdDb> evicted = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (PoolEntry entry : entries.values()) {
+                if (entry.usageCount > 0) {
+                    logger.debug("Closing rrd4j database '{}' while it is still in use", entry.db.getPath());
+                }
+                evicted.add(entry.db);
+            }
+            entries.clear();
+        }
+        closeAll(evicted);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evictOverCapacity() {
+        List<String> candidates = new ArrayList<>();
+        synchronized (this) {
+            int excess = entries.size() - maxOpenFiles;
+            Iterator<Map.Entry<String, PoolEntry>> it = entries.entrySet().iterator();
+            while (candidates.size() < excess && it.hasNext()) {
+                Map.Entry<String, PoolEntry> entry = it.next();
+                if (entry.getValue().usageCount == 0) {
+                    candidates.add(entry.getKey());
+                }
+            }
+        }
+        evictAll(candidates, entry -> entries.size() > maxOpenFiles);
+    }
+
+    /**
+     * Closes the databases of the given aliases if they are still unused and match the condition. Each database is
+     * closed while holding the lock of its alias, so that it cannot be opened a second time before it is closed.
+     * Aliases whose lock is taken are skipped, as their database is about to be used anyway.
+     *
+     * @param aliases the aliases of the databases to close
+     * @param condition checked again for each entry within the pool monitor
+     */
+    private void evictAll(List<String> aliases, Predicate<PoolEntry> condition) {
+        for (String alias : aliases) {
+            Lock lock = getLock(alias);
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                PoolEntry entry;
+                synchronized (this) {
+                    entry = entries.get(alias);
+                    if (entry == null || entry.usageCount > 0 || !condition.test(entry)) {
+                        continue;
+                    }
+                    entries.remove(alias);
+                }
+                closeAll(List.of(entry.db));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void closeAll(List<RrdDb> dbs) {
+        for (RrdDb db : dbs) {
+            try {
+                db.close();
+            } catch (IOException e) {
+                logger.debug("Error closing rrd4j database: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RRD4jGroupMapping} records which datasource of which shared database file holds the values of an item,
+ * if the grouped layout is used.
+ *
+ * Items sharing a definition are packed into group files with a fixed number of datasources (<code>ds0</code>,
+ * <code>ds1</code>, ...), which are stored in the {@link #FOLDER} sub folder and named after the definition. The
+ * mapping is written to {@link #MAPPING_FILE} in that folder whenever it changes.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jGroupMapping {
+
+    public static final String FOLDER = "groups";
+    public static final String MAPPING_FILE = "mapping.properties";
+
+    private static final String ALIAS_PREFIX = FOLDER + "/";
+    private static final String DATASOURCE_PREFIX = "ds";
+    private static final String CAPACITY_PREFIX = "@";
+
+    /**
+     * The location of the values of an item: the alias of the database file and the name of the datasource.
+     */
+    public static class Slot {
+        private final String alias;
+        private final String dsName;
+
+        public Slot(String alias, String dsName) {
+            this.alias = alias;
+            this.dsName = dsName;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public String getDsName() {
+            return dsName;
+        }
+
+        public boolean isGrouped() {
+            return isGroupAlias(alias);
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jGroupMapping.class);
+
+    private final Path mappingFile;
+
+    private final Map<String, Slot> slots = new HashMap<>();
+    // the items of every group file, indexed by their datasource
+    private final Map<String, @Nullable String[]> groups = new HashMap<>();
+
+    /**
+     * @param folder the folder holding the database files
+     */
+    public RRD4jGroupMapping(Path folder) {
+        this.mappingFile = folder.resolve(FOLDER).resolve(MAPPING_FILE);
+    }
+
+    public static boolean isGroupAlias(String alias) {
+        return alias.startsWith(ALIAS_PREFIX);
+    }
+
+    /**
+     * Returns the name of the definition a group file has been created for.
+     *
+     * @param alias the alias of the group file
+     * @return the name of the definition
+     */
+    public static String getDefinition(String alias) {
+        return alias.substring(ALIAS_PREFIX.length(), alias.lastIndexOf('_'));
+    }
+
+    public static String getDsName(int index) {
+        return DATASOURCE_PREFIX + index;
+    }
+
+    /**
+     * Loads the mapping from disk, replacing the one in memory.
+     */
+    public synchronized void load() {
+        slots.clear();
+        groups.clear();
+        if (!Files.exists(mappingFile)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(mappingFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            logger.warn("Could not read rrd4j group mapping '{}': {}", mappingFile, e.getMessage());
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(CAPACITY_PREFIX)) {
+                try {
+                    groups.putIfAbsent(key.substring(CAPACITY_PREFIX.length()),
+                            new String[Integer.parseInt(properties.getProperty(key))]);
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring illegal entry '{}' in rrd4j group mapping", key);
+                }
+            }
+        }
+        for (String itemName : properties.stringPropertyNames()) {
+            if (itemName.startsWith(CAPACITY_PREFIX)) {
+                continue;
+            }
+            String value = properties.getProperty(itemName);
+            int separator = value.lastIndexOf(':');
+            String[] items = separator > 0 ? groups.get(value.substring(0, separator)) : null;
+            int index = -1;
+            try {
+                index = Integer.parseInt(value.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            if (items == null || index < 0 || index >= items.length || items[index] != null) {
+                logger.warn("Ignoring illegal entry '{}' in rrd4j group mapping", itemName);
+                continue;
+            }
+            items[index] = itemName;
+            slots.put(itemName, new Slot(value.substring(0, separator), getDsName(index)));
+        }
+        logger.debug("Loaded {} item(s) in {} rrd4j group file(s)", slots.size(), groups.size());
+    }
+
+    /**
+     * Returns the slot of an item.
+     *
+     * @param itemName the name of the item
+     * @return the slot or <code>null</code> if the item is not stored in a group file
+     */
+    public synchronized @Nullable Slot get(String itemName) {
+        return slots.get(itemName);
+    }
+
+    /**
+     * Returns the slot of an item, assigning a free one in a group file of the given definition if necessary.
+     *
+     * @param itemName the name of the item
+     * @param definition the name of the definition that applies to the item
+     * @param capacity the number of datasources of newly created group files
+     * @return the slot
+     */
+    public synchronized Slot assign(String itemName, String definition, int capacity) {
+        Slot slot = slots.get(itemName);
+        if (slot != null) {
+            return slot;
+        }
+        for (Map.Entry<String, @Nullable String[]> group : groups.entrySet()) {
+            String alias = group.getKey();
+            String[] items = group.getValue();
+            if (items != null && isGroupOf(alias, definition)) {
+                for (int i = 0; i < items.length; i++) {
+                    if (items[i] == null) {
+                        return assign(itemName, alias, items, i);
+                    }
+                }
+            }
+        }
+        String alias = nextAlias(definition);
+        String[] items = new String[Math.max(1, capacity)];
+        groups.put(alias, items);
+        return assign(itemName, alias, items, 0);
+    }
+
+    private Slot assign(String itemName, String alias, String[] items, int index) {
+        items[index] = itemName;
+        Slot slot = new Slot(alias, getDsName(index));
+        slots.put(itemName, slot);
+        save();
+        return slot;
+    }
+
+    /**
+     * Reserves the alias of a new group file of the given definition. No item is assigned to the file until it is
+     * {@link #register(String, int, List) registered}.
+     *
+     * @param definition the name of the definition
+     * @return the alias of the new group file
+     */
+    public synchronized String reserve(String definition) {
+        String alias = nextAlias(definition);
+        groups.put(alias, new String[0]);
+        return alias;
+    }
+
+    /**
+     * Assigns the given items to the datasources of a group file reserved by {@link #reserve(String)}, in the given
+     * order.
+     *
+     * @param alias the alias of the group file
+     * @param capacity the number of datasources of the file
+     * @param itemNames the names of the items
+     */
+    public synchronized void register(String alias, int capacity, List<String> itemNames) {
+        String[] items = new String[capacity];
+        for (int i = 0; i < itemNames.size(); i++) {
+            items[i] = itemNames.get(i);
+            slots.put(itemNames.get(i), new Slot(alias, getDsName(i)));
+        }
+        groups.put(alias, items);
+        save();
+    }
+
+    /**
+     * Returns the number of datasources of a group file.
+     *
+     * @param alias the alias of the group file
+     * @return the number of datasources or 0 if the file is unknown
+     */
+    public synchronized int getCapacity(String alias) {
+        String[] items = groups.get(alias);
+        return items != null ? items.length : 0;
+    }
+
+    /**
+     * Returns the items of a group file, indexed by their datasource. Unused datasources are <code>null</code>.
+     *
+     * @param alias the alias of the group file
+     * @return the names of the items
+     */
+    public synchronized @Nullable String[] getItems(String alias) {
+        String[] items = groups.get(alias);
+        return items != null ? items.clone() : new String[0];
+    }
+
+    public synchronized List<String> getItemNames() {
+        return new ArrayList<>(slots.keySet());
+    }
+
+    private boolean isGroupOf(String alias, String definition) {
+        return getDefinition(alias).equals(definition);
+    }
+
+    private String nextAlias(String definition) {
+        int n = 0;
+        while (groups.containsKey(ALIAS_PREFIX + definition + "_" + n)) {
+            n++;
+        }
+        return ALIAS_PREFIX + definition + "_" + n;
+    }
+
+    private void save() {
+        Properties properties = new Properties();
+        for (Map.Entry<String, @Nullable String[]> group : groups.entrySet()) {
+            String[] items = group.getValue();
+            if (items != null && items.length > 0) {
+                properties.setProperty(CAPACITY_PREFIX + group.getKey(), Integer.toString(items.length));
+            }
+        }
+        for (Map.Entry<String, Slot> slot : slots.entrySet()) {
+            properties.setProperty(slot.getKey(), slot.getValue().getAlias() + ":"
+                    + slot.getValue().getDsName().substring(DATASOURCE_PREFIX.length()));
+        }
+        Path tmp = mappingFile.resolveSibling(MAPPING_FILE + ".tmp");
+        try {
+            Files.createDirectories(mappingFile.getParent());
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "rrd4j group mapping: item = group file:datasource index");
+            }
+            Files.move(tmp, mappingFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not write rrd4j group mapping '{}': {}", mappingFile, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.persistence.rrd4j.internal.RRD4jPersistenceService.RrdDefConfig;
+import org.rrd4j.DsType;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdMemoryBackendFactory;
+import org.rrd4j.core.Sample;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RRD4jGroupMigration} moves the values of items that are stored in files of their own into group files.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jGroupMigration {
+
+    private static final String MIGRATED_EXTENSION = ".migrated";
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jGroupMigration.class);
+
+    private final RRD4jPersistenceService service;
+    private final RRD4jDbPool dbPool;
+    private final RRD4jCatalog catalog;
+    private final RRD4jGroupMapping groupMapping;
+
+    /**
+     * @param service the service holding the databases
+     * @param dbPool the pool of open databases
+     * @param catalog the catalog of the database files
+     * @param groupMapping the mapping of items to group files
+     */
+    public RRD4jGroupMigration(RRD4jPersistenceService service, RRD4jDbPool dbPool, RRD4jCatalog catalog,
+            RRD4jGroupMapping groupMapping) {
+        this.service = service;
+        this.dbPool = dbPool;
+        this.catalog = catalog;
+        this.groupMapping = groupMapping;
+    }
+
+    /**
+     * Moves the values of all items that are stored in files of their own into group files. The history of every
+     * item is read from all its archives and replayed into a new group file, merged in time order with the other
+     * items of the group. The original files are kept with the extension <code>.migrated</code>.
+     *
+     * @param groupSize the number of items per group file
+     * @return the number of migrated items
+     */
+    public synchronized int migrate(int groupSize) {
+        Map<String, List<String>> aliasesByDefinition = new TreeMap<>();
+        for (String alias : catalog.listAliases()) {
+            RrdDefConfig rdc = service.getRrdDefConfig(alias);
+            if (groupMapping.get(alias) == null && rdc != null && rdc.dsType == DsType.GAUGE) {
+                aliasesByDefinition.computeIfAbsent(rdc.name, name -> new ArrayList<>()).add(alias);
+            }
+        }
+        int migrated = 0;
+        for (Map.Entry<String, List<String>> entry : aliasesByDefinition.entrySet()) {
+            List<String> aliases = entry.getValue();
+            for (int i = 0; i < aliases.size(); i += groupSize) {
+                List<String> group = aliases.subList(i, Math.min(aliases.size(), i + groupSize));
+                if (migrateGroup(entry.getKey(), group, groupSize)) {
+                    migrated += group.size();
+                }
+            }
+        }
+        logger.info("Migrated {} rrd4j database(s) into group files", migrated);
+        return migrated;
+    }
+
+    private boolean migrateGroup(String definition, List<String> aliases, int groupSize) {
+        RrdDefConfig rdc = service.getDefinition(definition);
+        if (rdc == null) {
+            return false;
+        }
+        String groupAlias = groupMapping.reserve(definition);
+        File groupFile = RRD4jPersistenceService.getDBFile(groupAlias);
+        // no values must be written to the files while they are migrated
+        List<Lock> locks = new ArrayList<>();
+        for (String alias : aliases) {
+            Lock lock = dbPool.getLock(alias);
+            lock.lock();
+            locks.add(lock);
+        }
+        try {
+            List<RRD4jTimeSeries> series = new ArrayList<>();
+            long startTime = System.currentTimeMillis() / 1000 - 1;
+            for (String alias : aliases) {
+                RrdDb db = service.getDB(alias);
+                if (db == null) {
+                    return false;
+                }
+                try {
+                    RRD4jTimeSeries history = service.fetchHistory(db, RRD4jPersistenceService.DATASOURCE_STATE);
+                    if (history.size() > 0) {
+                        startTime = Math.min(startTime, history.getTimestamp(0) - rdc.step);
+                    }
+                    series.add(history);
+                } finally {
+                    service.releaseDB(alias);
+                }
+            }
+
+            RrdDb groupDb = new RrdDb(service.getGroupRrdDef(groupAlias, groupSize, groupFile, startTime),
+                    new RrdMemoryBackendFactory());
+            byte[] bytes;
+            try {
+                // the gaps between the values of coarse archives must not exceed the heartbeat while replaying
+                RRD4jPersistenceService.setHeartbeat(groupDb, groupDb.getLastUpdateTime() + 1);
+                replay(groupDb, series);
+                RRD4jPersistenceService.setHeartbeat(groupDb, rdc.heartbeat);
+                bytes = groupDb.getBytes();
+            } finally {
+                groupDb.close();
+            }
+            RRD4jSnapshots.writeFile(groupFile.toPath(), bytes);
+
+            groupMapping.register(groupAlias, groupSize, aliases);
+            for (String alias : aliases) {
+                service.forget(alias);
+                Path file = RRD4jPersistenceService.getDBFile(alias).toPath();
+                Files.move(file, file.resolveSibling(file.getFileName() + MIGRATED_EXTENSION),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            // values stored during the migration are still queued, they are written into the group file right away
+            service.flushGroup(groupAlias, aliases.get(0));
+            logger.debug("Migrated rrd4j databases {} into '{}'", aliases, groupAlias);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not migrate rrd4j databases {} into '{}': {}", aliases, groupAlias, e.getMessage());
+            return false;
+        } finally {
+            for (Lock lock : locks) {
+                lock.unlock();
+            }
+        }
+        for (String alias : aliases) {
+            service.scheduleCatalogRefresh(alias);
+        }
+        return true;
+    }
+
+    /**
+     * Writes several series into the datasources of a database, in time order. At every point in time, each
+     * datasource gets the value of the step of its series that contains this point, or unknown if there is none.
+     *
+     * @param db the database, having one datasource per series
+     * @param series the series, including their unknown values
+     * @throws IOException if the database could not be written
+     */
+    private void replay(RrdDb db, List<RRD4jTimeSeries> series) throws IOException {
+        int total = 0;
+        for (RRD4jTimeSeries part : series) {
+            total += part.size();
+        }
+        long[] times = new long[total];
+        int n = 0;
+        for (RRD4jTimeSeries part : series) {
+            for (int i = 0; i < part.size(); i++) {
+                times[n++] = part.getTimestamp(i);
+            }
+        }
+        Arrays.sort(times);
+
+        int[] cursors = new int[series.size()];
+        long lastUpdate = db.getLastUpdateTime();
+        for (long time : times) {
+            if (time <= lastUpdate) {
+                continue;
+            }
+            Sample sample = db.createSample(time);
+            for (int i = 0; i < series.size(); i++) {
+                RRD4jTimeSeries part = series.get(i);
+                int cursor = cursors[i];
+                while (cursor < part.size() && part.getTimestamp(cursor) < time) {
+                    cursor++;
+                }
+                cursors[i] = cursor;
+                double value = Double.NaN;
+                if (cursor < part.size()) {
+                    long step;
+                    if (cursor > 0) {
+                        step = part.getTimestamp(cursor) - part.getTimestamp(cursor - 1);
+                    } else {
+                        step = part.size() > 1 ? part.getTimestamp(1) - part.getTimestamp(0) : 1;
+                    }
+                    if (part.getTimestamp(cursor) - time < step) {
+                        value = part.getValue(cursor);
+                    }
+                }
+                sample.setValue(i, value);
+            }
+            sample.update();
+            lastUpdate = time;
+        }
+    }
+}
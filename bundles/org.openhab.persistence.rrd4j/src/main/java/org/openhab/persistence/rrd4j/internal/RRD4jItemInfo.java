@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.util.Date;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.persistence.PersistenceItemInfo;
+
+/**
+ * This is a Java bean describing an rrd4j database file in the catalog of the persistence service.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jItemInfo implements PersistenceItemInfo {
+
+    private final String name;
+    private final long step;
+    private final String archives;
+    private final long finestArchiveStep;
+    private final long fileSize;
+    private final long earliest;
+    private volatile long latest;
+
+    /**
+     * @param name the alias of the database
+     * @param step the step of the database in seconds
+     * @param archives a description of the archives of the database
+     * @param finestArchiveStep the step of the finest archive in seconds
+     * @param fileSize the size of the database file in bytes
+     * @param earliest the time of the oldest value that can be held, in seconds since the epoch
+     * @param latest the time of the last update, in seconds since the epoch
+     */
+    public RRD4jItemInfo(String name, long step, String archives, long finestArchiveStep, long fileSize,
+            long earliest, long latest) {
+        this.name = name;
+        this.step = step;
+        this.archives = archives;
+        this.finestArchiveStep = finestArchiveStep;
+        this.fileSize = fileSize;
+        this.earliest = earliest;
+        this.latest = latest;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The number of values is not known for round-robin databases, so <code>null</code> is returned.
+     */
+    @Override
+    public @Nullable Integer getCount() {
+        return null;
+    }
+
+    @Override
+    public @Nullable Date getEarliest() {
+        return new Date(earliest * 1000);
+    }
+
+    @Override
+    public @Nullable Date getLatest() {
+        return new Date(latest * 1000);
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    public String getArchives() {
+        return archives;
+    }
+
+    public long getFinestArchiveStep() {
+        return finestArchiveStep;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public long getLastUpdateTime() {
+        return latest;
+    }
+
+    void setLastUpdateTime(long latest) {
+        this.latest = latest;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (step = " + step + "s, archives = [" + archives + "], size = " + fileSize + " bytes)";
+    }
+}
@@ -12,13 +12,17 @@
  */
 package org.openhab.persistence.rrd4j.internal;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -31,6 +35,9 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.DoubleFunction;
+import java.util.regex.Pattern;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -57,15 +64,26 @@ import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceCronStrategy;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.State;
+import org.openhab.persistence.rrd4j.internal.RRD4jGroupMapping.Slot;
+import org.openhab.persistence.rrd4j.internal.RRD4jSampleQueue.Aggregation;
+import org.openhab.persistence.rrd4j.internal.RRD4jSampleQueue.PendingSample;
+import org.openhab.persistence.rrd4j.internal.RRD4jTimeSeries.Downsampling;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.DsType;
-import org.rrd4j.core.FetchData;
+import org.rrd4j.core.ArcDef;
+import org.rrd4j.core.Archive;
+import org.rrd4j.core.Datasource;
 import org.rrd4j.core.FetchRequest;
+import org.rrd4j.core.RrdBackendFactory;
 import org.rrd4j.core.RrdDb;
 import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.RrdMemoryBackendFactory;
+import org.rrd4j.core.RrdNioBackendFactory;
+import org.rrd4j.core.RrdRandomAccessFileBackendFactory;
 import org.rrd4j.core.Sample;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,32 +98,111 @@ import org.slf4j.LoggerFactory;
  * @author Karel Goderis - remove TimerThread dependency
  */
 @NonNullByDefault
-@Component(service = { PersistenceService.class,
-        QueryablePersistenceService.class }, configurationPid = "org.openhab.rrd4j")
+@Component(service = { PersistenceService.class, QueryablePersistenceService.class,
+        RRD4jPersistenceService.class }, configurationPid = "org.openhab.rrd4j")
 public class RRD4jPersistenceService implements QueryablePersistenceService {
 
     private static final String DEFAULT_OTHER = "default_other";
     private static final String DEFAULT_NUMERIC = "default_numeric";
     private static final String DEFAULT_QUANTIFIABLE = "default_quantifiable";
 
+    private static final String CONFIG_MAX_OPEN_FILES = "maxOpenFiles";
+    private static final String CONFIG_IDLE_TIMEOUT = "idleTimeout";
+    private static final String CONFIG_SAMPLE_AGGREGATION = "sampleAggregation";
+    private static final String CONFIG_BACKEND = "backend";
+    private static final String CONFIG_SYNC_INTERVAL = "syncInterval";
+    private static final String CONFIG_QUERY_DOWNSAMPLING = "queryDownsampling";
+    private static final String CONFIG_STITCH_ARCHIVES = "stitchArchives";
+    private static final String CONFIG_PREWARM = "prewarm";
+    private static final String CONFIG_LAYOUT = "layout";
+    private static final String CONFIG_GROUP_SIZE = "groupSize";
+    private static final String CONFIG_MIGRATE = "migrate";
+
+    private static final int DEFAULT_SYNC_INTERVAL = 300;
+    private static final int DEFAULT_GROUP_SIZE = 32;
+
+    /**
+     * The storage backends that can be configured for the database files.
+     */
+    private enum Backend {
+        /** memory-mapped files, synchronized to disk periodically */
+        NIO,
+        /** plain file access, every update is written immediately */
+        FILE,
+        /** databases are held in memory and written to disk periodically */
+        MEMORY
+    }
+
+    /**
+     * The ways items can be distributed over database files.
+     */
+    private enum Layout {
+        /** every item is stored in a file of its own */
+        ITEM,
+        /** items sharing a definition are stored in group files, one datasource per item */
+        GROUPED
+    }
+
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(3,
             new NamedThreadFactory("RRD4j"));
 
     private final Map<String, @Nullable RrdDefConfig> rrdDefs = new ConcurrentHashMap<>();
 
-    private static final String DATASOURCE_STATE = "state";
+    private volatile RrdDefIndex rrdDefIndex = new RrdDefIndex(List.of());
+
+    public static final String DATASOURCE_STATE = "state";
 
     public static final String DB_FOLDER = getUserPersistenceDataFolder() + File.separator + "rrd4j";
 
     private final Logger logger = LoggerFactory.getLogger(RRD4jPersistenceService.class);
 
-    private final Map<String, @Nullable ScheduledFuture<?>> scheduledJobs = new HashMap<>();
+    private final RRD4jSampleQueue sampleQueue = new RRD4jSampleQueue();
+
+    private Aggregation sampleAggregation = Aggregation.LAST;
+
+    private Downsampling queryDownsampling = Downsampling.NONE;
+
+    private boolean stitchArchives = false;
+
+    private final RRD4jDbPool dbPool = new RRD4jDbPool(this::openDB);
+
+    private @Nullable ScheduledFuture<?> idleJob;
+
+    private Backend backend = Backend.NIO;
+
+    private RrdBackendFactory backendFactory = RrdBackendFactory.getDefaultFactory();
+
+    // aliases of the databases that are held in memory
+    private final Set<String> memoryAliases = ConcurrentHashMap.newKeySet();
+
+    private final RRD4jSnapshots snapshots = new RRD4jSnapshots(this, dbPool);
+
+    private @Nullable ScheduledFuture<?> snapshotJob;
+
+    private final RRD4jCatalog catalog = new RRD4jCatalog(Path.of(DB_FOLDER), this::scheduleCatalogRefresh,
+            this::onCatalogRemoved);
+
+    private Layout layout = Layout.ITEM;
+
+    private int groupSize = DEFAULT_GROUP_SIZE;
+
+    private final RRD4jGroupMapping groupMapping = new RRD4jGroupMapping(Path.of(DB_FOLDER));
+
+    // the resolved slots of all items that have been accessed
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    private final RRD4jGroupMigration migration = new RRD4jGroupMigration(this, dbPool, catalog, groupMapping);
+
+    private final RRD4jBulkTransfer bulkTransfer = new RRD4jBulkTransfer(this, dbPool, catalog, groupMapping);
 
     protected final ItemRegistry itemRegistry;
 
+    private final RRD4jPrewarmer prewarmer;
+
     @Activate
     public RRD4jPersistenceService(final @Reference ItemRegistry itemRegistry) {
         this.itemRegistry = itemRegistry;
+        this.prewarmer = new RRD4jPrewarmer(this, catalog, itemRegistry, scheduler);
     }
 
     @Override
@@ -119,70 +216,272 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
     }
 
     @Override
-    public synchronized void store(final Item item, @Nullable final String alias) {
+    public void store(final Item item, @Nullable final String alias) {
         final String name = alias == null ? item.getName() : alias;
-        RrdDb db = getDB(name);
-        if (db != null) {
-            ConsolFun function = getConsolidationFunction(db);
+        DecimalType state = item.getStateAs(DecimalType.class);
+        if (state != null) {
             long now = System.currentTimeMillis() / 1000;
-            if (function != ConsolFun.AVERAGE) {
-                try {
-                    // we store the last value again, so that the value change
-                    // in the database is not interpolated, but
-                    // happens right at this spot
-                    if (now - 1 > db.getLastUpdateTime()) {
-                        // only do it if there is not already a value
-                        double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
-                        if (!Double.isNaN(lastValue)) {
-                            Sample sample = db.createSample();
-                            sample.setTime(now - 1);
-                            sample.setValue(DATASOURCE_STATE, lastValue);
-                            sample.update();
-                            logger.debug("Stored '{}' with state '{}' in rrd4j database (again)", name,
-                                    mapToState(lastValue, item.getName()));
+            if (sampleQueue.add(name, item.getName(), now, state.toBigDecimal().doubleValue())) {
+                // the values of a step are collected until it ends, which also writes the values of the items
+                // sharing a group file at once
+                scheduleFlush(name, getDelayUntilNextStep(name));
+            } else {
+                logger.trace("Merged state '{}' of '{}' into pending sample", state, name);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of milliseconds until the current step of the database of an item ends. The step is taken
+     * from the existing file if it is known, as it may differ from the current definition.
+     *
+     * @param name the name (or alias) of the item
+     * @return the delay in milliseconds
+     */
+    private long getDelayUntilNextStep(String name) {
+        RRD4jItemInfo info = catalog.get(name);
+        long step;
+        if (info != null) {
+            step = info.getStep();
+        } else {
+            RrdDefConfig rdc = getRrdDefConfig(name);
+            step = rdc == null ? 1 : rdc.step;
+        }
+        long stepMillis = Math.max(1, step) * 1000;
+        return stepMillis - System.currentTimeMillis() % stepMillis;
+    }
+
+    private void scheduleFlush(String alias, long delay) {
+        try {
+            scheduler.schedule(() -> flush(alias), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // this happens if the system is shut down, remaining samples are flushed on deactivation
+            logger.debug("Could not schedule write of '{}': {}", alias, e.getMessage());
+        }
+    }
+
+    private void flush(String alias) {
+        // writes to the same file are serialized, writes to different files may run in parallel
+        Lock lock = dbPool.getLock(alias);
+        Slot slot;
+        lock.lock();
+        try {
+            // the slot is resolved while holding the lock, as the file may just have been migrated into a group file
+            slot = groupMapping.get(alias);
+            if (slot == null) {
+                slot = getSlot(alias);
+            }
+            if (!slot.isGrouped()) {
+                PendingSample sample = sampleQueue.poll(alias);
+                RrdDb db = sample == null ? null : getDB(alias);
+                if (sample != null && db != null) {
+                    try {
+                        if (!write(db, alias, sample) && sampleQueue.requeue(alias, sample)) {
+                            // the database has already been updated within this second, try again with the next one
+                            scheduleFlush(alias, 1000);
                         }
+                    } finally {
+                        releaseDB(alias);
                     }
-                } catch (IOException e) {
-                    logger.debug("Error storing last value (again): {}", e.getMessage());
                 }
+                return;
             }
-            try {
-                Sample sample = db.createSample();
-                sample.setTime(now);
-
-                DecimalType state = item.getStateAs(DecimalType.class);
-                if (state != null) {
-                    double value = state.toBigDecimal().doubleValue();
-                    if (db.getDatasource(DATASOURCE_STATE).getType() == DsType.COUNTER) { // counter values must be
-                                                                                          // adjusted by stepsize
-                        value = value * db.getRrdDef().getStep();
-                    }
-                    sample.setValue(DATASOURCE_STATE, value);
-                    sample.update();
-                    logger.debug("Stored '{}' with state '{}' in rrd4j database", name, state);
+        } finally {
+            lock.unlock();
+        }
+        // once grouped, an item stays in its group, so the lock of the item is not needed anymore
+        flushGroup(slot.getAlias(), alias);
+    }
+
+    /**
+     * Writes all pending samples on the calling thread.
+     */
+    void flushAll() {
+        for (String alias : sampleQueue.getPendingAliases()) {
+            flush(alias);
+        }
+    }
+
+    /**
+     * Writes the pending samples of all items of a group file with a single update.
+     *
+     * @param alias the alias of the group file
+     * @param name the name of an item of the group, used to reschedule the write
+     */
+    void flushGroup(String alias, String name) {
+        Lock lock = dbPool.getLock(alias);
+        lock.lock();
+        try {
+            @Nullable
+            String[] items = groupMapping.getItems(alias);
+            @Nullable
+            PendingSample[] samples = new PendingSample[items.length];
+            boolean pending = false;
+            for (int i = 0; i < items.length; i++) {
+                String itemName = items[i];
+                if (itemName != null) {
+                    samples[i] = sampleQueue.poll(itemName);
+                    pending |= samples[i] != null;
                 }
-            } catch (IllegalArgumentException e) {
-                if (e.getMessage().contains("at least one second step is required")) {
-                    // we try to store the value one second later
-                    ScheduledFuture<?> job = scheduledJobs.get(name);
-                    if (job != null) {
-                        job.cancel(true);
-                        scheduledJobs.remove(name);
+            }
+            if (!pending) {
+                return;
+            }
+            RrdDb db = getDB(alias);
+            if (db != null) {
+                try {
+                    if (!writeGroup(db, alias, items, samples)) {
+                        // the file has already been updated within this second, try again with the next one
+                        boolean reschedule = false;
+                        for (int i = 0; i < items.length; i++) {
+                            String itemName = items[i];
+                            PendingSample sample = samples[i];
+                            if (itemName != null && sample != null) {
+                                reschedule |= sampleQueue.requeue(itemName, sample);
+                            }
+                        }
+                        if (reschedule) {
+                            scheduleFlush(name, 1000);
+                        }
                     }
-                    job = scheduler.schedule(() -> store(item, name), 1, TimeUnit.SECONDS);
-                    scheduledJobs.put(name, job);
+                } finally {
+                    releaseDB(alias);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean writeGroup(RrdDb db, String alias, @Nullable String[] items, @Nullable PendingSample[] samples) {
+        long now = System.currentTimeMillis() / 1000;
+        long time = 0;
+        for (PendingSample pendingSample : samples) {
+            if (pendingSample != null) {
+                time = Math.max(time, pendingSample.getTime());
+            }
+        }
+        try {
+            long lastUpdate = db.getLastUpdateTime();
+            time = Math.max(time, lastUpdate + 1);
+            if (time > now) {
+                // rrd4j requires at least one second between two updates
+                return false;
+            }
+            // datasources without a new value keep their last one, as an unknown value would mark a gap, until their
+            // item has not been updated within the heartbeat, like in a file of its own
+            int count = Math.min(items.length, db.getDsCount());
+            double[] values = new double[count];
+            boolean known = false;
+            for (int i = 0; i < count; i++) {
+                Datasource datasource = db.getDatasource(i);
+                String itemName = items[i];
+                RRD4jItemInfo info = itemName == null ? null : catalog.get(itemName);
+                if (samples[i] == null && info != null
+                        && time - info.getLastUpdateTime() > datasource.getHeartbeat()) {
+                    values[i] = Double.NaN;
                 } else {
-                    logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
+                    values[i] = datasource.getLastValue();
+                }
+                known |= !Double.isNaN(values[i]);
+            }
+            if (known && time - 1 > lastUpdate && getConsolidationFunction(db) != ConsolFun.AVERAGE) {
+                // store the last values again, so that the value changes are not interpolated (see write())
+                Sample sample = db.createSample(time - 1);
+                for (int i = 0; i < count; i++) {
+                    sample.setValue(i, values[i]);
                 }
-            } catch (Exception e) {
-                logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
+                sample.update();
             }
+            for (int i = 0; i < count; i++) {
+                PendingSample pendingSample = samples[i];
+                if (pendingSample != null) {
+                    values[i] = pendingSample.getValue(sampleAggregation);
+                }
+            }
+            Sample sample = db.createSample(time);
+            for (int i = 0; i < count; i++) {
+                sample.setValue(i, values[i]);
+            }
+            sample.update();
+            if (backend == Backend.MEMORY) {
+                snapshots.markDirty(alias);
+            }
+            for (int i = 0; i < count; i++) {
+                String itemName = items[i];
+                PendingSample pendingSample = samples[i];
+                if (itemName != null && pendingSample != null) {
+                    if (!catalog.updateLastUpdateTime(itemName, time)) {
+                        refreshCatalog(itemName, db);
+                    }
+                    logger.debug("Stored '{}' with state '{}' in rrd4j database '{}' ({} value(s) combined)",
+                            itemName, values[i], alias, pendingSample.getCount());
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Could not persist to rrd4j database '{}': {}", alias, e.getMessage());
+        }
+        return true;
+    }
+
+    private boolean write(RrdDb db, String name, PendingSample pendingSample) {
+        long now = System.currentTimeMillis() / 1000;
+        long time;
+        try {
+            time = Math.max(pendingSample.getTime(), db.getLastUpdateTime() + 1);
+        } catch (IOException e) {
+            logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
+            return true;
+        }
+        if (time > now) {
+            // rrd4j requires at least one second between two updates
+            return false;
+        }
+        ConsolFun function = getConsolidationFunction(db);
+        if (function != ConsolFun.AVERAGE) {
             try {
-                db.close();
+                // we store the last value again, so that the value change
+                // in the database is not interpolated, but
+                // happens right at this spot
+                if (time - 1 > db.getLastUpdateTime()) {
+                    // only do it if there is not already a value
+                    double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
+                    if (!Double.isNaN(lastValue)) {
+                        Sample sample = db.createSample();
+                        sample.setTime(time - 1);
+                        sample.setValue(DATASOURCE_STATE, lastValue);
+                        sample.update();
+                        logger.debug("Stored '{}' with state '{}' in rrd4j database (again)", name,
+                                mapToState(lastValue, pendingSample.getItemName()));
+                    }
+                }
             } catch (IOException e) {
-                logger.debug("Error closing rrd4j database: {}", e.getMessage());
+                logger.debug("Error storing last value (again): {}", e.getMessage());
             }
         }
+        try {
+            Sample sample = db.createSample();
+            sample.setTime(time);
+
+            double value = pendingSample.getValue(sampleAggregation);
+            if (db.getDatasource(DATASOURCE_STATE).getType() == DsType.COUNTER) { // counter values must be
+                                                                                  // adjusted by stepsize
+                value = value * db.getRrdDef().getStep();
+            }
+            sample.setValue(DATASOURCE_STATE, value);
+            sample.update();
+            if (backend == Backend.MEMORY) {
+                snapshots.markDirty(name);
+            }
+            if (!catalog.updateLastUpdateTime(name, time)) {
+                refreshCatalog(name, db);
+            }
+            logger.debug("Stored '{}' with state '{}' in rrd4j database ({} value(s) combined)", name,
+                    pendingSample.getValue(sampleAggregation), pendingSample.getCount());
+        } catch (Exception e) {
+            logger.warn("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
+        }
+        return true;
     }
 
     @Override
@@ -193,7 +492,15 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
     @Override
     public Iterable<HistoricItem> query(FilterCriteria filter) {
         String itemName = filter.getItemName();
-        RrdDb db = getDB(itemName);
+        if (sampleQueue.getPendingAliases().contains(itemName)) {
+            // a value that is still queued is written first, so that it is part of the result
+            flush(itemName);
+        }
+        Slot slot = findSlot(itemName);
+        if (slot == null) {
+            return Collections.emptyList();
+        }
+        RrdDb db = getExistingDB(slot.getAlias());
         if (db != null) {
             ConsolFun consolidationFunction = getConsolidationFunction(db);
             long start = 0L;
@@ -212,7 +519,7 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
                             && filter.getPageNumber() == 0) {
                         if (filter.getEndDateZoned() == null) {
                             // we are asked only for the most recent value!
-                            double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
+                            double lastValue = db.getLastDatasourceValue(slot.getDsName());
                             if (!Double.isNaN(lastValue)) {
                                 HistoricItem rrd4jItem = new RRD4jItem(itemName, mapToState(lastValue, itemName),
                                         ZonedDateTime.ofInstant(
@@ -232,83 +539,393 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
                 } else {
                     start = filter.getBeginDateZoned().toInstant().getEpochSecond();
                 }
-                FetchRequest request = db.createFetchRequest(consolidationFunction, start, end, 1);
-
-                List<HistoricItem> items = new ArrayList<>();
-                FetchData result = request.fetchData();
-                long ts = result.getFirstTimestamp();
-                long step = result.getRowCount() > 1 ? result.getStep() : 0;
-                for (double value : result.getValues(DATASOURCE_STATE)) {
-                    if (!Double.isNaN(value) && (((ts >= start) && (ts <= end)) || (start == end))) {
-                        RRD4jItem rrd4jItem = new RRD4jItem(itemName, mapToState(value, itemName),
-                                ZonedDateTime.ofInstant(Instant.ofEpochMilli(ts * 1000), ZoneId.systemDefault()));
-                        items.add(rrd4jItem);
-                    }
-                    ts += step;
+                // a limited number of values chooses the archive with the matching resolution, otherwise the values
+                // are read with the finest resolution available
+                int maxPoints = getMaxPoints(filter);
+                long resolution = maxPoints > 0 && end > start ? Math.max(1, (end - start) / maxPoints) : 1;
+                RRD4jTimeSeries series;
+                if (stitchArchives && end > start) {
+                    series = fetchStitched(db, consolidationFunction, start, end, resolution, slot.getDsName(), false);
+                } else {
+                    FetchRequest request = db.createFetchRequest(consolidationFunction, start, end, resolution);
+                    request.setFilter(slot.getDsName());
+                    series = RRD4jTimeSeries.of(request.fetchData(), slot.getDsName(), start, end);
+                }
+                if (maxPoints > 0) {
+                    series = series.downsample(queryDownsampling, maxPoints);
                 }
-                return items;
+
+                // the item type is resolved once, the historic items are only created while iterating
+                return new RRD4jQueryResult(itemName, series, getStateMapper(itemName), ZoneId.systemDefault());
             } catch (IOException e) {
                 logger.warn("Could not query rrd4j database for item '{}': {}", itemName, e.getMessage());
+            } finally {
+                releaseDB(slot.getAlias());
             }
         }
         return Collections.emptyList();
     }
 
+    /**
+     * Fetches the given range by splitting it along the boundaries of the archives, so that every part is taken from
+     * the finest archive that still holds data for it. Archives finer than the requested resolution are skipped.
+     *
+     * @param db the database
+     * @param consolidationFunction the consolidation function of the archives to use
+     * @param start the start of the range in seconds since the epoch
+     * @param end the end of the range in seconds since the epoch
+     * @param resolution the requested resolution in seconds
+     * @param dsName the name of the datasource
+     * @param keepUnknown whether unknown values are kept in the result
+     * @return the values of the range in ascending order
+     * @throws IOException if the database could not be read
+     */
+    private RRD4jTimeSeries fetchStitched(RrdDb db, ConsolFun consolidationFunction, long start, long end,
+            long resolution, String dsName, boolean keepUnknown) throws IOException {
+        // start time and step of all archives with the requested consolidation function, finest first
+        List<long[]> archives = new ArrayList<>();
+        for (int i = 0; i < db.getArcCount(); i++) {
+            Archive archive = db.getArchive(i);
+            if (archive.getConsolFun() == consolidationFunction) {
+                archives.add(new long[] { archive.getStartTime(), archive.getArcStep() });
+            }
+        }
+        archives.sort(Comparator.comparingLong(archive -> archive[1]));
+        // always keep the coarsest archive, so that the whole range can be covered
+        while (archives.size() > 1 && archives.get(0)[1] < resolution) {
+            archives.remove(0);
+        }
+
+        // fetch from the finest archive for the most recent part and go back in time with coarser ones. The parts are
+        // fetched one after the other on purpose: RrdDb serializes all reads of a file anyway, and each part only
+        // starts where the previous one ended.
+        List<RRD4jTimeSeries> parts = new ArrayList<>();
+        long partEnd = end;
+        for (int i = 0; i < archives.size() && partEnd >= start; i++) {
+            long[] archive = archives.get(i);
+            long partStart = i == archives.size() - 1 ? start : Math.max(start, archive[0]);
+            if (partStart > partEnd) {
+                continue;
+            }
+            FetchRequest request = db.createFetchRequest(consolidationFunction, partStart, partEnd, archive[1]);
+            request.setFilter(dsName);
+            parts.add(0, RRD4jTimeSeries.of(request.fetchData(), dsName, partStart, partEnd, keepUnknown));
+            partEnd = partStart - 1;
+        }
+        return RRD4jTimeSeries.concat(parts);
+    }
+
+    /**
+     * Returns the maximum number of points of a query over a range, which is the page size of its first page. rrd4j
+     * does not support paging, so the values of the whole range are reduced to this number instead of returning only
+     * the first ones.
+     *
+     * @param filter the filter of the query
+     * @return the maximum number of points or 0 if there is no limit
+     */
+    private int getMaxPoints(FilterCriteria filter) {
+        if (filter.getBeginDateZoned() == null || filter.getPageNumber() != 0
+                || filter.getPageSize() == Integer.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(1, filter.getPageSize());
+    }
+
     @Override
     public Set<PersistenceItemInfo> getItemInfo() {
-        return Collections.emptySet();
+        return catalog.getAll();
+    }
+
+    /**
+     * Returns the catalog entry of a database file.
+     *
+     * @param alias the alias of the database
+     * @return the catalog entry or <code>null</code> if there is no such file
+     */
+    public @Nullable RRD4jItemInfo getItemInfo(String alias) {
+        return catalog.get(alias);
     }
 
-    protected @Nullable synchronized RrdDb getDB(String alias) {
-        RrdDb db = null;
-        File file = new File(DB_FOLDER + File.separator + alias + ".rrd");
+    void scheduleCatalogRefresh(String alias) {
         try {
-            if (file.exists()) {
-                // recreate the RrdDb instance from the file
-                db = new RrdDb(file.getAbsolutePath());
-            } else {
-                File folder = new File(DB_FOLDER);
-                if (!folder.exists()) {
-                    folder.mkdirs();
+            scheduler.execute(() -> {
+                Slot slot = findSlot(alias);
+                if (slot == null) {
+                    return;
+                }
+                String dbAlias = slot.getAlias();
+                RrdDb db = getExistingDB(dbAlias);
+                if (db != null) {
+                    try {
+                        refreshCatalog(alias, db);
+                    } finally {
+                        releaseDB(dbAlias);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // this happens if the system is shut down
+            logger.debug("Could not read rrd4j database '{}': {}", alias, e.getMessage());
+        }
+    }
+
+    private void onCatalogRemoved(String alias) {
+        // the open database would keep writing into the deleted file, and a new file would never be opened
+        forget(alias);
+        if (groupMapping.get(alias) != null) {
+            // the values of the item have been moved into a group file
+            scheduleCatalogRefresh(alias);
+        }
+    }
+
+    /**
+     * Drops everything that is known about the database of an alias, because its file has been removed or replaced.
+     *
+     * @param alias the alias of the database
+     */
+    void forget(String alias) {
+        slots.remove(alias);
+        dbPool.evict(alias);
+        memoryAliases.remove(alias);
+        snapshots.forget(alias);
+    }
+
+    private void refreshCatalog(String alias, RrdDb db) {
+        try {
+            RrdDef rrdDef = db.getRrdDef();
+            StringBuilder archives = new StringBuilder();
+            int finestSteps = Integer.MAX_VALUE;
+            for (ArcDef arcDef : rrdDef.getArcDefs()) {
+                finestSteps = Math.min(finestSteps, arcDef.getSteps());
+                if (archives.length() > 0) {
+                    archives.append(':');
+                }
+                archives.append(arcDef.getConsolFun()).append(',').append(arcDef.getXff()).append(',')
+                        .append(arcDef.getSteps()).append(',').append(arcDef.getRows());
+            }
+            long lastUpdate = db.getLastUpdateTime();
+            Slot slot = findSlot(alias);
+            File file = getDBFile(slot == null ? alias : slot.getAlias());
+            long earliest = getEarliest(db, slot == null ? DATASOURCE_STATE : slot.getDsName(), lastUpdate);
+            long finestArchiveStep = rrdDef.getStep() * (finestSteps == Integer.MAX_VALUE ? 1 : finestSteps);
+            catalog.put(new RRD4jItemInfo(alias, rrdDef.getStep(), archives.toString(), finestArchiveStep,
+                    file.length(), earliest, lastUpdate));
+        } catch (IOException e) {
+            logger.debug("Could not read rrd4j database '{}': {}", alias, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the time of the oldest known value of a datasource, which is the first row of the coarsest archive that
+     * is not unknown, as this archive covers the longest period.
+     *
+     * @param db the database
+     * @param dsName the name of the datasource
+     * @param lastUpdate the time of the last update of the database, returned if there is no known value
+     * @return the time of the oldest value in seconds since the epoch
+     * @throws IOException if the database could not be read
+     */
+    private long getEarliest(RrdDb db, String dsName, long lastUpdate) throws IOException {
+        @Nullable
+        Archive coarsest = null;
+        for (int i = 0; i < db.getArcCount(); i++) {
+            Archive archive = db.getArchive(i);
+            if (coarsest == null || archive.getArcStep() > coarsest.getArcStep()) {
+                coarsest = archive;
+            }
+        }
+        if (coarsest == null) {
+            return lastUpdate;
+        }
+        // the values of a robin are ordered from the oldest to the newest row
+        double[] values = coarsest.getRobin(db.getDsIndex(dsName)).getValues();
+        for (int i = 0; i < values.length; i++) {
+            if (!Double.isNaN(values[i])) {
+                return Math.min(lastUpdate, coarsest.getStartTime() + i * coarsest.getArcStep());
+            }
+        }
+        return lastUpdate;
+    }
+
+    /**
+     * Returns where the values of an item are stored. With the grouped layout, items without a file of their own are
+     * assigned a datasource in a group file of their definition; only definitions using <code>GAUGE</code> are
+     * grouped, as the other types cannot repeat the last value of items that have not been updated.
+     *
+     * @param name the name (or alias) of the item
+     * @return the database file and datasource of the item
+     */
+    public Slot getSlot(String name) {
+        Slot slot = slots.get(name);
+        if (slot == null) {
+            slot = groupMapping.get(name);
+            if (slot == null) {
+                slot = new Slot(name, DATASOURCE_STATE);
+                if (layout == Layout.GROUPED && !getDBFile(name).exists()) {
+                    RrdDefConfig rdc = getRrdDefConfig(name);
+                    if (rdc != null && rdc.dsType == DsType.GAUGE) {
+                        slot = groupMapping.assign(name, rdc.name, groupSize);
+                    }
                 }
-                // create a new database file
-                db = new RrdDb(getRrdDef(alias, file));
             }
+            slots.put(name, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the database for the given alias from the pool of open databases. Every database obtained through this
+     * method must be handed back by calling {@link #releaseDB(String)}.
+     *
+     * @param alias the alias of the database
+     * @return the database or <code>null</code> if it could not be opened or created
+     */
+    public @Nullable RrdDb getDB(String alias) {
+        try {
+            return dbPool.acquire(alias);
         } catch (IOException e) {
-            logger.error("Could not create rrd4j database file '{}': {}", file.getAbsolutePath(), e.getMessage());
+            logger.error("Could not create rrd4j database file '{}': {}", getDBFile(alias).getAbsolutePath(),
+                    e.getMessage());
         } catch (RejectedExecutionException e) {
             // this happens if the system is shut down
-            logger.debug("Could not create rrd4j database file '{}': {}", file.getAbsolutePath(), e.getMessage());
+            logger.debug("Could not create rrd4j database file '{}': {}", getDBFile(alias).getAbsolutePath(),
+                    e.getMessage());
         }
-        return db;
+        return null;
     }
 
-    private @Nullable RrdDefConfig getRrdDefConfig(String itemName) {
-        RrdDefConfig useRdc = null;
-        for (Map.Entry<String, @Nullable RrdDefConfig> e : rrdDefs.entrySet()) {
-            // try to find special config
-            RrdDefConfig rdc = e.getValue();
-            if (rdc != null && rdc.appliesTo(itemName)) {
-                useRdc = rdc;
-                break;
+    /**
+     * Returns the database for the given alias like {@link #getDB(String)}, but only if it already exists, so that
+     * reading the values of an item that has never been stored does not create a database file. If a database is
+     * returned, it must be handed back by calling {@link #releaseDB(String)}.
+     *
+     * @param alias the alias of the database
+     * @return the database or <code>null</code> if it does not exist or could not be opened
+     */
+    public @Nullable RrdDb getExistingDB(String alias) {
+        return exists(alias) ? getDB(alias) : null;
+    }
+
+    /**
+     * Hands a database obtained by {@link #getDB(String)} back to the pool.
+     *
+     * @param alias the alias of the database
+     */
+    public void releaseDB(String alias) {
+        dbPool.release(alias);
+    }
+
+    /**
+     * Returns the factory of the configured storage backend, which has to be used to access the databases.
+     *
+     * @return the backend factory
+     */
+    public RrdBackendFactory getBackendFactory() {
+        return backendFactory;
+    }
+
+    private RrdDb openDB(String alias) throws IOException {
+        File file = getDBFile(alias);
+        if (backend == Backend.MEMORY) {
+            return openMemoryDB(alias, file);
+        }
+        if (file.exists()) {
+            // recreate the RrdDb instance from the file
+            return new RrdDb(file.getAbsolutePath(), backendFactory);
+        } else {
+            File folder = file.getParentFile();
+            if (!folder.exists()) {
+                folder.mkdirs();
             }
+            // create a new database file
+            return new RrdDb(getRrdDef(alias, file), backendFactory);
         }
-        if (useRdc == null) { // not defined, use defaults
+    }
+
+    private RrdDb openMemoryDB(String alias, File file) throws IOException {
+        if (memoryAliases.contains(alias)) {
+            return new RrdDb(file.getAbsolutePath(), backendFactory);
+        }
+        RrdDb db;
+        if (file.exists()) {
+            // load the last snapshot into memory
+            RrdDb fileDb = new RrdDb(file.getAbsolutePath(), true);
             try {
-                Item item = itemRegistry.getItem(itemName);
-                if (item instanceof NumberItem) {
-                    NumberItem numberItem = (NumberItem) item;
-                    return numberItem.getDimension() != null ? rrdDefs.get(DEFAULT_QUANTIFIABLE)
-                            : rrdDefs.get(DEFAULT_NUMERIC);
-                }
-            } catch (ItemNotFoundException e) {
-                logger.debug("Could not find item '{}' in registry", itemName);
+                db = new RrdDb(fileDb.getRrdDef(), backendFactory);
+                fileDb.copyStateTo(db);
+            } finally {
+                fileDb.close();
+            }
+        } else {
+            db = new RrdDb(getRrdDef(alias, file), backendFactory);
+            snapshots.markDirty(alias);
+        }
+        memoryAliases.add(alias);
+        return db;
+    }
+
+    static File getDBFile(String alias) {
+        return new File(DB_FOLDER + File.separator + alias + ".rrd");
+    }
+
+    /**
+     * Returns the definition with the given name.
+     *
+     * @param name the name of the definition
+     * @return the definition or <code>null</code> if there is no such definition
+     */
+    @Nullable
+    RrdDefConfig getDefinition(String name) {
+        return rrdDefs.get(name);
+    }
+
+    /**
+     * Returns whether an item is explicitly listed in a definition, by its name, a pattern or one of its groups.
+     *
+     * @param itemName the name of the item
+     * @param item the item, if it is known
+     * @return <code>true</code> if a definition lists the item
+     */
+    boolean hasDefinition(String itemName, @Nullable Item item) {
+        return rrdDefIndex.find(itemName, item) != null;
+    }
+
+    @Nullable
+    RrdDefConfig getRrdDefConfig(String itemName) {
+        RrdDefIndex index = rrdDefIndex;
+        RrdDefConfig useRdc = index.getResolved(itemName);
+        if (useRdc != null) {
+            return useRdc;
+        }
+        Item item = null;
+        try {
+            item = itemRegistry.getItem(itemName);
+        } catch (ItemNotFoundException e) {
+            logger.debug("Could not find item '{}' in registry", itemName);
+        }
+        // try to find special config
+        useRdc = index.find(itemName, item);
+        if (useRdc == null) { // not defined, use defaults
+            if (item instanceof NumberItem) {
+                NumberItem numberItem = (NumberItem) item;
+                useRdc = numberItem.getDimension() != null ? rrdDefs.get(DEFAULT_QUANTIFIABLE)
+                        : rrdDefs.get(DEFAULT_NUMERIC);
+            } else {
+                useRdc = rrdDefs.get(DEFAULT_OTHER);
             }
         }
-        return rrdDefs.get(DEFAULT_OTHER);
+        if (useRdc != null && item != null) {
+            // only cache the result for known items, unknown ones may show up later
+            index.putResolved(itemName, useRdc);
+        }
+        return useRdc;
     }
 
-    private RrdDef getRrdDef(String itemName, File file) {
+    RrdDef getRrdDef(String itemName, File file) {
+        if (RRD4jGroupMapping.isGroupAlias(itemName)) {
+            return getGroupRrdDef(itemName, groupMapping.getCapacity(itemName), file,
+                    System.currentTimeMillis() / 1000 - 1);
+        }
         RrdDef rrdDef = new RrdDef(file.getAbsolutePath());
         RrdDefConfig useRdc = getRrdDefConfig(itemName);
         if (useRdc != null) {
@@ -322,6 +939,23 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
         return rrdDef;
     }
 
+    RrdDef getGroupRrdDef(String alias, int capacity, File file, long startTime) {
+        RrdDef rrdDef = new RrdDef(file.getAbsolutePath());
+        RrdDefConfig useRdc = rrdDefs.get(RRD4jGroupMapping.getDefinition(alias));
+        if (useRdc != null) {
+            rrdDef.setStep(useRdc.step);
+            rrdDef.setStartTime(startTime);
+            for (int i = 0; i < capacity; i++) {
+                rrdDef.addDatasource(RRD4jGroupMapping.getDsName(i), useRdc.dsType, useRdc.heartbeat, useRdc.min,
+                        useRdc.max);
+            }
+            for (RrdArchiveDef rad : useRdc.archives) {
+                rrdDef.addArchive(rad.fcn, rad.xff, rad.steps, rad.rows);
+            }
+        }
+        return rrdDef;
+    }
+
     public ConsolFun getConsolidationFunction(RrdDb db) {
         try {
             return db.getRrdDef().getArcDefs()[0].getConsolFun();
@@ -331,21 +965,31 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
     }
 
     private State mapToState(double value, String itemName) {
+        return getStateMapper(itemName).apply(value);
+    }
+
+    /**
+     * Returns a function that converts stored values into states of the given item.
+     *
+     * @param itemName the name of the item
+     * @return the conversion function
+     */
+    private DoubleFunction<State> getStateMapper(String itemName) {
         try {
             Item item = itemRegistry.getItem(itemName);
             if (item instanceof SwitchItem && !(item instanceof DimmerItem)) {
-                return value == 0.0d ? OnOffType.OFF : OnOffType.ON;
+                return value -> value == 0.0d ? OnOffType.OFF : OnOffType.ON;
             } else if (item instanceof ContactItem) {
-                return value == 0.0d ? OpenClosedType.CLOSED : OpenClosedType.OPEN;
+                return value -> value == 0.0d ? OpenClosedType.CLOSED : OpenClosedType.OPEN;
             } else if (item instanceof DimmerItem || item instanceof RollershutterItem) {
                 // make sure Items that need PercentTypes instead of DecimalTypes do receive the right information
-                return new PercentType((int) Math.round(value * 100));
+                return value -> new PercentType((int) Math.round(value * 100));
             }
         } catch (ItemNotFoundException e) {
             logger.debug("Could not find item '{}' in registry", itemName);
         }
         // just return a DecimalType as a fallback
-        return new DecimalType(value);
+        return DecimalType::new;
     }
 
     private static String getUserPersistenceDataFolder() {
@@ -394,11 +1038,69 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
         defaultOther.addArchives("LAST,0.5,1,1440:LAST,0.5,12,10080:LAST,0.5,180,35040:LAST,0.5,240,21900");
         rrdDefs.put(DEFAULT_OTHER, defaultOther);
 
+        dbPool.setLimits(getIntConfig(config, CONFIG_MAX_OPEN_FILES, RRD4jDbPool.DEFAULT_MAX_OPEN_FILES),
+                getIntConfig(config, CONFIG_IDLE_TIMEOUT, RRD4jDbPool.DEFAULT_IDLE_TIMEOUT));
+        int idleCheckInterval = Math.max(10,
+                getIntConfig(config, CONFIG_IDLE_TIMEOUT, RRD4jDbPool.DEFAULT_IDLE_TIMEOUT) / 2);
+        idleJob = scheduler.scheduleWithFixedDelay(dbPool::closeIdle, idleCheckInterval, idleCheckInterval,
+                TimeUnit.SECONDS);
+
+        sampleAggregation = getEnumConfig(config, CONFIG_SAMPLE_AGGREGATION, Aggregation.class, Aggregation.LAST);
+        queryDownsampling = getEnumConfig(config, CONFIG_QUERY_DOWNSAMPLING, Downsampling.class, Downsampling.NONE);
+
+        Object stitch = config.get(CONFIG_STITCH_ARCHIVES);
+        stitchArchives = stitch instanceof Boolean ? (Boolean) stitch : "true".equalsIgnoreCase(String.valueOf(stitch));
+
+        int syncInterval = Math.max(1, getIntConfig(config, CONFIG_SYNC_INTERVAL, DEFAULT_SYNC_INTERVAL));
+        backend = getEnumConfig(config, CONFIG_BACKEND, Backend.class, Backend.NIO);
+        switch (backend) {
+            case FILE:
+                backendFactory = new RrdRandomAccessFileBackendFactory();
+                break;
+            case MEMORY:
+                backendFactory = new RrdMemoryBackendFactory();
+                snapshotJob = scheduler.scheduleWithFixedDelay(snapshots::snapshot, syncInterval, syncInterval,
+                        TimeUnit.SECONDS);
+                break;
+            default:
+                backendFactory = new RrdNioBackendFactory(syncInterval);
+                break;
+        }
+        logger.debug("Using {} backend with a sync interval of {}s", backend, syncInterval);
+
+        layout = getEnumConfig(config, CONFIG_LAYOUT, Layout.class, Layout.ITEM);
+        groupSize = Math.max(1, getIntConfig(config, CONFIG_GROUP_SIZE, DEFAULT_GROUP_SIZE));
+        groupMapping.load();
+        slots.clear();
+
+        // build the catalog of the existing files in the background
+        catalog.start();
+        for (String alias : catalog.listAliases()) {
+            scheduleCatalogRefresh(alias);
+        }
+        for (String itemName : groupMapping.getItemNames()) {
+            scheduleCatalogRefresh(itemName);
+        }
+
         if (config.isEmpty()) {
             logger.debug("using default configuration only");
-            return;
+        } else {
+            parseDefinitions(config);
         }
+        rrdDefIndex = new RrdDefIndex(rrdDefs.values());
 
+        Object prewarm = config.get(CONFIG_PREWARM);
+        if (prewarm instanceof Boolean ? (Boolean) prewarm : "true".equalsIgnoreCase(String.valueOf(prewarm))) {
+            scheduler.execute(prewarmer::prewarm);
+        }
+
+        Object migrate = config.get(CONFIG_MIGRATE);
+        if (migrate instanceof Boolean ? (Boolean) migrate : "true".equalsIgnoreCase(String.valueOf(migrate))) {
+            scheduler.execute(this::migrateToGroups);
+        }
+    }
+
+    private void parseDefinitions(final Map<String, Object> config) {
         Iterator<String> keys = config.keySet().iterator();
         while (keys.hasNext()) {
             String key = keys.next();
@@ -408,6 +1110,21 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
                 continue;
             }
 
+            if (key.equals(CONFIG_MAX_OPEN_FILES) || key.equals(CONFIG_IDLE_TIMEOUT)
+                    || key.equals(CONFIG_SAMPLE_AGGREGATION) || key.equals(CONFIG_BACKEND)
+                    || key.equals(CONFIG_SYNC_INTERVAL) || key.equals(CONFIG_QUERY_DOWNSAMPLING)
+                    || key.equals(CONFIG_STITCH_ARCHIVES) || key.equals(CONFIG_PREWARM)
+                    || key.equals(CONFIG_LAYOUT) || key.equals(CONFIG_GROUP_SIZE) || key.equals(CONFIG_MIGRATE)) {
+                // service wide settings have already been applied
+                continue;
+            }
+
+            if (key.equals("chartThreads") || key.equals("chartQueueSize") || key.equals("chartTimeout")
+                    || key.equals("chartCompression")) {
+                // settings of the chart servlet
+                continue;
+            }
+
             String[] subkeys = key.split("\\.");
             if (subkeys.length != 2) {
                 logger.debug("config '{}' should have the format 'name.configkey'", key);
@@ -461,7 +1178,156 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
         }
     }
 
-    private class RrdArchiveDef {
+    /**
+     * Moves the values of all items that are stored in files of their own into group files, if the grouped layout is
+     * configured (see {@link RRD4jGroupMigration}).
+     *
+     * @return the number of migrated items
+     */
+    public int migrateToGroups() {
+        if (layout != Layout.GROUPED) {
+            logger.warn("Not migrating rrd4j databases into group files, as the grouped layout is not configured");
+            return 0;
+        }
+        return migration.migrate(groupSize);
+    }
+
+    /**
+     * Writes the history of the given items into gzipped CSV files (see {@link RRD4jBulkTransfer}).
+     *
+     * @param directory the directory to write to
+     * @param itemNames the names of the items, or an empty collection for all items
+     * @return the number of exported items
+     * @throws IOException if the directory cannot be created
+     */
+    public int exportItems(Path directory, Collection<String> itemNames) throws IOException {
+        return bulkTransfer.exportItems(directory, itemNames);
+    }
+
+    /**
+     * Creates the databases of the given items from files written by {@link #exportItems(Path, Collection)}.
+     *
+     * @param directory the directory to read from
+     * @param itemNames the names of the items, or an empty collection for all files in the directory
+     * @return the number of imported items
+     * @throws IOException if the directory cannot be read
+     */
+    public int importItems(Path directory, Collection<String> itemNames) throws IOException {
+        return bulkTransfer.importItems(directory, itemNames);
+    }
+
+    /**
+     * Creates the databases of the given items from the values stored by another persistence service.
+     *
+     * @param source the service to read from
+     * @param itemNames the names of the items
+     * @return the number of items that have been created
+     */
+    public int replayFrom(QueryablePersistenceService source, Collection<String> itemNames) {
+        return bulkTransfer.replayFrom(source, itemNames);
+    }
+
+    /**
+     * Reads all values of a datasource, taking every part of its time range from the finest archive holding it.
+     * Unknown values are included.
+     */
+    RRD4jTimeSeries fetchHistory(RrdDb db, String dsName) throws IOException {
+        long end = db.getLastUpdateTime();
+        long start = end;
+        for (int i = 0; i < db.getArcCount(); i++) {
+            start = Math.min(start, db.getArchive(i).getStartTime());
+        }
+        return fetchStitched(db, getConsolidationFunction(db), start, end, 1, dsName, true);
+    }
+
+    static void setHeartbeat(RrdDb db, long heartbeat) throws IOException {
+        for (int i = 0; i < db.getDsCount(); i++) {
+            db.getDatasource(i).setHeartbeat(heartbeat);
+        }
+    }
+
+    /**
+     * Returns where the values of an item are stored, without assigning a slot to items that are not stored yet.
+     *
+     * @param name the name of the item
+     * @return the slot or <code>null</code> if there are no values of the item
+     */
+    public @Nullable Slot findSlot(String name) {
+        Slot slot = groupMapping.get(name);
+        if (slot == null && exists(name)) {
+            slot = new Slot(name, DATASOURCE_STATE);
+        }
+        return slot;
+    }
+
+    private boolean exists(String alias) {
+        return memoryAliases.contains(alias) || getDBFile(alias).exists();
+    }
+
+    @Deactivate
+    public void deactivate() {
+        ScheduledFuture<?> job = idleJob;
+        if (job != null) {
+            job.cancel(false);
+            idleJob = null;
+        }
+        job = snapshotJob;
+        if (job != null) {
+            job.cancel(false);
+            snapshotJob = null;
+        }
+        catalog.stop();
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // write all samples that are still pending
+        flushAll();
+        if (backend == Backend.MEMORY) {
+            snapshots.snapshot();
+        }
+        dbPool.close();
+        // the factory of the NIO backend runs a thread that syncs the files
+        RrdBackendFactory factory = backendFactory;
+        if (factory instanceof Closeable && factory != RrdBackendFactory.getDefaultFactory()) {
+            try {
+                ((Closeable) factory).close();
+            } catch (IOException e) {
+                logger.debug("Error closing rrd4j backend: {}", e.getMessage());
+            }
+        }
+    }
+
+    private int getIntConfig(Map<String, Object> config, String key, int defaultValue) {
+        Object value = config.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value instanceof String && !((String) value).isBlank()) {
+            try {
+                return Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring illegal configuration {} = {}", key, value);
+            }
+        }
+        return defaultValue;
+    }
+
+    private <E extends Enum<E>> E getEnumConfig(Map<String, Object> config, String key, Class<E> enumType,
+            E defaultValue) {
+        Object value = config.get(key);
+        if (value instanceof String && !((String) value).isBlank()) {
+            try {
+                return Enum.valueOf(enumType, ((String) value).trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring illegal configuration {} = {}", key, value);
+            }
+        }
+        return defaultValue;
+    }
+
+    class RrdArchiveDef {
         public @Nullable ConsolFun fcn;
         public double xff;
         public int steps, rows;
@@ -476,7 +1342,7 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
         }
     }
 
-    private class RrdDefConfig {
+    class RrdDefConfig {
         public String name;
         public @Nullable DsType dsType;
         public int heartbeat, step;
@@ -568,14 +1434,12 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
         public void addItems(String itemsString) {
             String splitItems[] = itemsString.split(",");
             for (String item : splitItems) {
-                itemNames.add(item);
+                if (!item.isBlank()) {
+                    itemNames.add(item.trim());
+                }
             }
         }
 
-        public boolean appliesTo(String item) {
-            return itemNames.contains(item);
-        }
-
         public boolean isValid() { // a valid configuration must be initialized
             // and contain at least one function
             return (isInitialized && (archives.size() > 0));
@@ -602,6 +1466,89 @@ public class RRD4jPersistenceService implements QueryablePersistenceService {
         }
     }
 
+    /**
+     * Immutable index from item names to the definitions that apply to them. Entries in the items list of a
+     * definition can be exact item names, patterns with the wildcards <code>*</code> and <code>?</code>, or
+     * <code>group:&lt;name&gt;</code> for all members of a group. Exact names take precedence over patterns, which
+     * take precedence over groups.
+     */
+    private class RrdDefIndex {
+        private static final String GROUP_PREFIX = "group:";
+
+        private final Map<String, RrdDefConfig> exactNames = new HashMap<>();
+        private final List<Map.Entry<Pattern, RrdDefConfig>> patterns = new ArrayList<>();
+        private final List<Map.Entry<String, RrdDefConfig>> groups = new ArrayList<>();
+        private final Map<String, RrdDefConfig> resolved = new ConcurrentHashMap<>();
+
+        public RrdDefIndex(Collection<@Nullable RrdDefConfig> configs) {
+            List<RrdDefConfig> sorted = new ArrayList<>();
+            for (RrdDefConfig rdc : configs) {
+                if (rdc != null) {
+                    sorted.add(rdc);
+                }
+            }
+            // make the order of patterns and groups independent of the configuration map
+            sorted.sort(Comparator.comparing(rdc -> rdc.name));
+            for (RrdDefConfig rdc : sorted) {
+                for (String itemName : rdc.itemNames) {
+                    if (itemName.startsWith(GROUP_PREFIX)) {
+                        groups.add(Map.entry(itemName.substring(GROUP_PREFIX.length()), rdc));
+                    } else if (itemName.contains("*") || itemName.contains("?")) {
+                        patterns.add(Map.entry(compileGlob(itemName), rdc));
+                    } else {
+                        RrdDefConfig existing = exactNames.putIfAbsent(itemName, rdc);
+                        if (existing != null) {
+                            logger.warn("Item '{}' is defined for several rrd4j definitions, using '{}'", itemName,
+                                    existing.name);
+                        }
+                    }
+                }
+            }
+        }
+
+        private Pattern compileGlob(String glob) {
+            StringBuilder regex = new StringBuilder();
+            for (String part : glob.split("(?=[*?])|(?<=[*?])")) {
+                if (part.equals("*")) {
+                    regex.append(".*");
+                } else if (part.equals("?")) {
+                    regex.append('.');
+                } else if (!part.isEmpty()) {
+                    regex.append(Pattern.quote(part));
+                }
+            }
+            return Pattern.compile(regex.toString());
+        }
+
+        public @Nullable RrdDefConfig getResolved(String itemName) {
+            return resolved.get(itemName);
+        }
+
+        public void putResolved(String itemName, RrdDefConfig rdc) {
+            resolved.put(itemName, rdc);
+        }
+
+        public @Nullable RrdDefConfig find(String itemName, @Nullable Item item) {
+            RrdDefConfig rdc = exactNames.get(itemName);
+            if (rdc != null) {
+                return rdc;
+            }
+            for (Map.Entry<Pattern, RrdDefConfig> pattern : patterns) {
+                if (pattern.getKey().matcher(itemName).matches()) {
+                    return pattern.getValue();
+                }
+            }
+            if (item != null) {
+                for (Map.Entry<String, RrdDefConfig> group : groups) {
+                    if (item.getGroupNames().contains(group.getKey())) {
+                        return group.getValue();
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
     @Override
     public List<PersistenceStrategy> getDefaultStrategies() {
         return List.of(PersistenceStrategy.Globals.RESTORE, PersistenceStrategy.Globals.CHANGE,
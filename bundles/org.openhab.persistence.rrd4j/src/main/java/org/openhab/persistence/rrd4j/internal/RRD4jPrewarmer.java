@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemRegistry;
+import org.openhab.persistence.rrd4j.internal.RRD4jGroupMapping.Slot;
+import org.openhab.persistence.rrd4j.internal.RRD4jPersistenceService.RrdDefConfig;
+import org.rrd4j.core.ArcDef;
+import org.rrd4j.core.DsDef;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RRD4jPrewarmer} opens the database files ahead of the first access and validates them against the
+ * definitions that currently apply to them.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jPrewarmer {
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jPrewarmer.class);
+
+    private final RRD4jPersistenceService service;
+    private final RRD4jCatalog catalog;
+    private final ItemRegistry itemRegistry;
+    private final ExecutorService executor;
+
+    /**
+     * @param service the service holding the databases
+     * @param catalog the catalog of the database files
+     * @param itemRegistry the registry of the items
+     * @param executor the worker threads that open the databases
+     */
+    public RRD4jPrewarmer(RRD4jPersistenceService service, RRD4jCatalog catalog, ItemRegistry itemRegistry,
+            ExecutorService executor) {
+        this.service = service;
+        this.catalog = catalog;
+        this.itemRegistry = itemRegistry;
+        this.executor = executor;
+    }
+
+    /**
+     * Opens all existing database files and validates them against the current definitions, and creates the files
+     * of all items that are explicitly listed in a definition. This is done in parallel on the worker threads.
+     */
+    public void prewarm() {
+        Set<String> aliases = new HashSet<>(catalog.listAliases());
+        for (Item item : itemRegistry.getItems()) {
+            if (service.hasDefinition(item.getName(), item)) {
+                aliases.add(item.getName());
+            }
+        }
+        logger.debug("Pre-warming {} rrd4j databases", aliases.size());
+        for (String alias : aliases) {
+            try {
+                executor.execute(() -> {
+                    Slot slot = service.getSlot(alias);
+                    RrdDb db = service.getDB(slot.getAlias());
+                    if (db != null) {
+                        try {
+                            if (!slot.isGrouped()) {
+                                validate(alias, db);
+                            }
+                        } finally {
+                            service.releaseDB(slot.getAlias());
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // this happens if the system is shut down
+                return;
+            }
+        }
+    }
+
+    /**
+     * Compares the layout of a database file with the definition that currently applies to it and reports all
+     * differences. Existing files are never changed, as this would lose their data.
+     *
+     * @param alias the alias of the database
+     * @param db the database
+     */
+    private void validate(String alias, RrdDb db) {
+        if (itemRegistry.get(alias) == null && !service.hasDefinition(alias, null)) {
+            // the default definition cannot be determined without the item
+            logger.debug("Skipping validation of rrd4j database '{}' as there is no such item", alias);
+            return;
+        }
+        RrdDefConfig rdc = service.getRrdDefConfig(alias);
+        if (rdc == null) {
+            return;
+        }
+        try {
+            RrdDef actual = db.getRrdDef();
+            RrdDef expected = service.getRrdDef(alias, RRD4jPersistenceService.getDBFile(alias));
+            List<String> differences = new ArrayList<>();
+            if (actual.getStep() != expected.getStep()) {
+                differences.add("step " + actual.getStep() + " instead of " + expected.getStep());
+            }
+            DsDef actualDs = actual.getDsDefs()[0];
+            DsDef expectedDs = expected.getDsDefs()[0];
+            if (actualDs.getDsType() != expectedDs.getDsType() || actualDs.getHeartbeat() != expectedDs.getHeartbeat()
+                    || Double.compare(actualDs.getMinValue(), expectedDs.getMinValue()) != 0
+                    || Double.compare(actualDs.getMaxValue(), expectedDs.getMaxValue()) != 0) {
+                differences.add("datasource " + actualDs.dump() + " instead of " + expectedDs.dump());
+            }
+            ArcDef[] actualArcs = actual.getArcDefs();
+            ArcDef[] expectedArcs = expected.getArcDefs();
+            if (actualArcs.length != expectedArcs.length) {
+                differences.add(actualArcs.length + " archive(s) instead of " + expectedArcs.length);
+            } else {
+                for (int i = 0; i < actualArcs.length; i++) {
+                    if (actualArcs[i].getConsolFun() != expectedArcs[i].getConsolFun()
+                            || actualArcs[i].getSteps() != expectedArcs[i].getSteps()
+                            || actualArcs[i].getRows() != expectedArcs[i].getRows()
+                            || Double.compare(actualArcs[i].getXff(), expectedArcs[i].getXff()) != 0) {
+                        differences.add("archive " + actualArcs[i].dump() + " instead of " + expectedArcs[i].dump());
+                    }
+                }
+            }
+            if (!differences.isEmpty()) {
+                logger.warn("rrd4j database '{}' does not match definition '{}': {}. Remove the file to recreate it.",
+                        alias, rdc.name, String.join(", ", differences));
+            }
+        } catch (IOException e) {
+            logger.warn("Could not validate rrd4j database '{}': {}", alias, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.DoubleFunction;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.types.State;
+
+/**
+ * The {@link RRD4jQueryResult} is the result of a query. The {@link HistoricItem}s are only created while iterating
+ * over the values of the underlying {@link RRD4jTimeSeries}, so large results do not have to be materialized.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jQueryResult implements Iterable<HistoricItem> {
+
+    private final String itemName;
+    private final RRD4jTimeSeries series;
+    private final DoubleFunction<State> stateMapper;
+    private final ZoneId zoneId;
+
+    /**
+     * @param itemName the name of the queried item
+     * @param series the values of the result
+     * @param stateMapper converts the stored values into states of the item
+     * @param zoneId the time zone of the returned timestamps
+     */
+    public RRD4jQueryResult(String itemName, RRD4jTimeSeries series, DoubleFunction<State> stateMapper,
+            ZoneId zoneId) {
+        this.itemName = itemName;
+        this.series = series;
+        this.stateMapper = stateMapper;
+        this.zoneId = zoneId;
+    }
+
+    public int size() {
+        return series.size();
+    }
+
+    @Override
+    public Iterator<HistoricItem> iterator() {
+        return new Iterator<HistoricItem>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < series.size();
+            }
+
+            @Override
+            public HistoricItem next() {
+                if (index >= series.size()) {
+                    throw new NoSuchElementException();
+                }
+                State state = stateMapper.apply(series.getValue(index));
+                ZonedDateTime timestamp = ZonedDateTime.ofInstant(Instant.ofEpochSecond(series.getTimestamp(index)),
+                        zoneId);
+                index++;
+                return new RRD4jItem(itemName, state, timestamp);
+            }
+        };
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link RRD4jSampleQueue} collects the values to be stored until they are written to the database.
+ *
+ * There is at most one pending sample per database, which is written when the current step of the database ends.
+ * Values arriving while a sample is pending are merged into it using the configured {@link Aggregation}, so all
+ * updates within a step result in a single write.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jSampleQueue {
+
+    /**
+     * Defines how several values that are stored within the same step are combined.
+     */
+    public enum Aggregation {
+        LAST,
+        MIN,
+        MAX,
+        AVERAGE
+    }
+
+    /**
+     * A value (or the combination of several values) waiting to be written.
+     */
+    public static class PendingSample {
+        private final String itemName;
+        private long time;
+        private double last;
+        private double min;
+        private double max;
+        private double sum;
+        private int count;
+
+        private PendingSample(String itemName, long time, double value) {
+            this.itemName = itemName;
+            this.time = time;
+            this.last = value;
+            this.min = value;
+            this.max = value;
+            this.sum = value;
+            this.count = 1;
+        }
+
+        private PendingSample add(long time, double value) {
+            this.time = Math.max(this.time, time);
+            last = value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            count++;
+            return this;
+        }
+
+        private PendingSample addOlder(PendingSample older) {
+            time = Math.max(time, older.time);
+            min = Math.min(min, older.min);
+            max = Math.max(max, older.max);
+            sum += older.sum;
+            count += older.count;
+            return this;
+        }
+
+        public String getItemName() {
+            return itemName;
+        }
+
+        /**
+         * @return the time of the most recent value in seconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public double getValue(Aggregation aggregation) {
+            switch (aggregation) {
+                case MIN:
+                    return min;
+                case MAX:
+                    return max;
+                case AVERAGE:
+                    return sum / count;
+                default:
+                    return last;
+            }
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private final Map<String, PendingSample> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a value for the given database.
+     *
+     * @param alias the alias of the database
+     * @param itemName the name of the item the value belongs to
+     * @param time the time of the value in seconds since the epoch
+     * @param value the value
+     * @return <code>true</code> if there was no pending sample for this database before, i.e. the caller has to
+     *         schedule a write
+     */
+    public boolean add(String alias, String itemName, long time, double value) {
+        boolean[] created = new boolean[1];
+        pending.compute(alias, (key, sample) -> {
+            if (sample == null) {
+                created[0] = true;
+                return new PendingSample(itemName, time, value);
+            }
+            return sample.add(time, value);
+        });
+        return created[0];
+    }
+
+    /**
+     * Puts a sample that could not be written yet back into the queue, merging it with values that have arrived in
+     * the meantime.
+     *
+     * @param alias the alias of the database
+     * @param sample the sample taken by {@link #poll(String)}
+     * @return <code>true</code> if there were no newer values, i.e. the caller has to schedule a write
+     */
+    public boolean requeue(String alias, PendingSample sample) {
+        boolean[] created = new boolean[1];
+        pending.compute(alias, (key, newer) -> {
+            if (newer == null) {
+                created[0] = true;
+                return sample;
+            }
+            return newer.addOlder(sample);
+        });
+        return created[0];
+    }
+
+    /**
+     * Removes and returns the pending sample for the given database.
+     *
+     * @param alias the alias of the database
+     * @return the pending sample or <code>null</code> if there is none
+     */
+    public @Nullable PendingSample poll(String alias) {
+        return pending.remove(alias);
+    }
+
+    public Set<String> getPendingAliases() {
+        return pending.keySet();
+    }
+
+    public int size() {
+        return pending.size();
+    }
+}
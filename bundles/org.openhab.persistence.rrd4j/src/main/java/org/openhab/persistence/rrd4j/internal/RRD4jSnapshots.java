@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.rrd4j.core.RrdDb;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RRD4jSnapshots} writes the databases that are held in memory to their files. It keeps track of the
+ * databases that have changed since the last snapshot, so that only those are written.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jSnapshots {
+
+    private final Logger logger = LoggerFactory.getLogger(RRD4jSnapshots.class);
+
+    private final RRD4jPersistenceService service;
+    private final RRD4jDbPool dbPool;
+
+    // aliases of the databases that have changed since the last snapshot
+    private final Set<String> dirtyAliases = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param service the service holding the databases
+     * @param dbPool the pool of open databases, whose locks guard the snapshots
+     */
+    public RRD4jSnapshots(RRD4jPersistenceService service, RRD4jDbPool dbPool) {
+        this.service = service;
+        this.dbPool = dbPool;
+    }
+
+    /**
+     * Marks a database as changed, so that it is written with the next snapshot.
+     *
+     * @param alias the alias of the database
+     */
+    public void markDirty(String alias) {
+        dirtyAliases.add(alias);
+    }
+
+    /**
+     * Discards the changes of a database whose file has been removed or replaced.
+     *
+     * @param alias the alias of the database
+     */
+    public void forget(String alias) {
+        dirtyAliases.remove(alias);
+    }
+
+    /**
+     * Writes all in-memory databases that have changed since the last run to their files.
+     */
+    public void snapshot() {
+        File folder = new File(RRD4jPersistenceService.DB_FOLDER);
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        for (String alias : dirtyAliases) {
+            dirtyAliases.remove(alias);
+            byte[] bytes = null;
+            Lock lock = dbPool.getLock(alias);
+            lock.lock();
+            try {
+                RrdDb db = service.getDB(alias);
+                if (db != null) {
+                    try {
+                        bytes = db.getBytes();
+                    } finally {
+                        service.releaseDB(alias);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Could not create snapshot of rrd4j database '{}': {}", alias, e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+            if (bytes != null) {
+                try {
+                    writeFile(RRD4jPersistenceService.getDBFile(alias).toPath(), bytes);
+                } catch (IOException e) {
+                    logger.warn("Could not write snapshot of rrd4j database '{}': {}", alias, e.getMessage());
+                    dirtyAliases.add(alias);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a database file. The content is written to a temporary file first, so that a crash never leaves a
+     * truncated database behind.
+     *
+     * @param target the database file
+     * @param bytes the content of the database
+     * @throws IOException if the file could not be written
+     */
+    public static void writeFile(Path target, byte[] bytes) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.createDirectories(target.getParent());
+        Files.write(tmp, bytes);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.rrd4j.core.FetchData;
+
+/**
+ * The {@link RRD4jTimeSeries} holds the known values of a query result as primitive arrays in ascending time order.
+ * It provides the downsampling algorithms used to reduce long ranges to a bounded number of points.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jTimeSeries {
+
+    /**
+     * The algorithms available to reduce the number of points of a query result.
+     */
+    public enum Downsampling {
+        /** keep all points of the selected archive */
+        NONE,
+        /** Largest-Triangle-Three-Buckets, keeps the visual shape of the series */
+        LTTB,
+        /** keeps the minimum and the maximum of every bucket */
+        MINMAX
+    }
+
+    private final long[] timestamps;
+    private final double[] values;
+    private final int size;
+
+    /**
+     * @param timestamps the timestamps in seconds since the epoch, in ascending order
+     * @param values the values belonging to the timestamps
+     * @param size the number of valid entries in both arrays
+     */
+    public RRD4jTimeSeries(long[] timestamps, double[] values, int size) {
+        this.timestamps = timestamps;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Creates a series from the known values of a fetch result that lie within the requested range.
+     *
+     * @param data the fetch result
+     * @param dsName the name of the datasource
+     * @param start the start of the requested range in seconds since the epoch
+     * @param end the end of the requested range in seconds since the epoch
+     * @return the series
+     */
+    public static RRD4jTimeSeries of(FetchData data, String dsName, long start, long end) {
+        return of(data, dsName, start, end, false);
+    }
+
+    /**
+     * Creates a series from the values of a fetch result that lie within the requested range.
+     *
+     * @param data the fetch result
+     * @param dsName the name of the datasource
+     * @param start the start of the requested range in seconds since the epoch
+     * @param end the end of the requested range in seconds since the epoch
+     * @param keepUnknown whether unknown (NaN) values are kept, so that the series has an entry for every step
+     * @return the series
+     */
+    public static RRD4jTimeSeries of(FetchData data, String dsName, long start, long end, boolean keepUnknown) {
+        double[] fetched = data.getValues(dsName);
+        long[] timestamps = new long[fetched.length];
+        double[] values = new double[fetched.length];
+        int size = 0;
+        long ts = data.getFirstTimestamp();
+        long step = data.getRowCount() > 1 ? data.getStep() : 0;
+        for (double value : fetched) {
+            if ((keepUnknown || !Double.isNaN(value)) && (((ts >= start) && (ts <= end)) || (start == end))) {
+                timestamps[size] = ts;
+                values[size] = value;
+                size++;
+            }
+            ts += step;
+        }
+        return new RRD4jTimeSeries(timestamps, values, size);
+    }
+
+    /**
+     * Joins several series into one. The series have to be given in ascending time order; values that do not come
+     * after the last value of the joined series are dropped.
+     *
+     * @param parts the series to join
+     * @return the joined series
+     */
+    public static RRD4jTimeSeries concat(List<RRD4jTimeSeries> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int total = 0;
+        for (RRD4jTimeSeries part : parts) {
+            total += part.size;
+        }
+        long[] timestamps = new long[total];
+        double[] values = new double[total];
+        int size = 0;
+        for (RRD4jTimeSeries part : parts) {
+            for (int i = 0; i < part.size; i++) {
+                if (size == 0 || part.timestamps[i] > timestamps[size - 1]) {
+                    timestamps[size] = part.timestamps[i];
+                    values[size] = part.values[i];
+                    size++;
+                }
+            }
+        }
+        return new RRD4jTimeSeries(timestamps, values, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Reduces the series to at most the given number of points.
+     *
+     * @param downsampling the algorithm to use
+     * @param maxPoints the maximum number of points
+     * @return the reduced series, or this series if it is already small enough
+     */
+    public RRD4jTimeSeries downsample(Downsampling downsampling, int maxPoints) {
+        if (size <= maxPoints) {
+            return this;
+        }
+        switch (downsampling) {
+            case LTTB:
+                return lttb(maxPoints);
+            case MINMAX:
+                return minMax(maxPoints);
+            default:
+                return this;
+        }
+    }
+
+    private RRD4jTimeSeries lttb(int threshold) {
+        if (threshold < 3) {
+            return minMax(threshold);
+        }
+        long[] sampledTimestamps = new long[threshold];
+        double[] sampledValues = new double[threshold];
+        int sampled = 0;
+
+        // the first and the last point are always kept, the others are distributed over threshold - 2 buckets
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+        int a = 0;
+        sampledTimestamps[sampled] = timestamps[a];
+        sampledValues[sampled++] = values[a];
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // average of the next bucket, used as third point of the triangle
+            int avgStart = (int) Math.floor((i + 1) * bucketSize) + 1;
+            int avgEnd = Math.min((int) Math.floor((i + 2) * bucketSize) + 1, size);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += timestamps[j];
+                avgY += values[j];
+            }
+            int avgCount = avgEnd - avgStart;
+            if (avgCount > 0) {
+                avgX /= avgCount;
+                avgY /= avgCount;
+            } else {
+                avgX = timestamps[size - 1];
+                avgY = values[size - 1];
+            }
+
+            // select the point of the current bucket that forms the largest triangle
+            int rangeStart = (int) Math.floor(i * bucketSize) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * bucketSize) + 1;
+            double maxArea = -1;
+            int next = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((timestamps[a] - avgX) * (values[j] - values[a])
+                        - (timestamps[a] - timestamps[j]) * (avgY - values[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            sampledTimestamps[sampled] = timestamps[next];
+            sampledValues[sampled++] = values[next];
+            a = next;
+        }
+
+        sampledTimestamps[sampled] = timestamps[size - 1];
+        sampledValues[sampled++] = values[size - 1];
+        return new RRD4jTimeSeries(sampledTimestamps, sampledValues, sampled);
+    }
+
+    private RRD4jTimeSeries minMax(int maxPoints) {
+        int buckets = Math.max(1, maxPoints / 2);
+        long[] sampledTimestamps = new long[buckets * 2];
+        double[] sampledValues = new double[buckets * 2];
+        int sampled = 0;
+        double bucketSize = (double) size / buckets;
+        for (int i = 0; i < buckets; i++) {
+            int from = (int) Math.floor(i * bucketSize);
+            int to = Math.min((int) Math.floor((i + 1) * bucketSize), size);
+            if (from >= to) {
+                continue;
+            }
+            int min = from;
+            int max = from;
+            for (int j = from + 1; j < to; j++) {
+                if (values[j] < values[min]) {
+                    min = j;
+                }
+                if (values[j] > values[max]) {
+                    max = j;
+                }
+            }
+            // keep the time order within the bucket
+            int first = Math.min(min, max);
+            int second = Math.max(min, max);
+            sampledTimestamps[sampled] = timestamps[first];
+            sampledValues[sampled++] = values[first];
+            if (second != first && maxPoints > 1) {
+                sampledTimestamps[sampled] = timestamps[second];
+                sampledValues[sampled++] = values[second];
+            }
+        }
+        return new RRD4jTimeSeries(sampledTimestamps, sampledValues, sampled);
+    }
+}
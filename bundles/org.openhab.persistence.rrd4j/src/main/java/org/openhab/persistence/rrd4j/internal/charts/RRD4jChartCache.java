@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal.charts;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import javax.imageio.ImageIO;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.items.ItemNotFoundException;
+
+/**
+ * The {@link RRD4jChartCache} holds rendered charts until the data they show changes, i.e. until the next step
+ * boundary of the finest archive of the shown items. Concurrent requests for the same chart are coalesced, so that
+ * the chart is rendered only once.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jChartCache {
+
+    /**
+     * Identifies a chart by the parameters that determine its content.
+     */
+    public static class ChartKey {
+        private final @Nullable String items;
+        private final @Nullable String groups;
+        private final long period;
+        private final int width;
+        private final int height;
+
+        /**
+         * @param items the comma separated item names
+         * @param groups the comma separated group names
+         * @param period the period shown in seconds
+         * @param width the width of the chart in pixels
+         * @param height the height of the chart in pixels
+         */
+        public ChartKey(@Nullable String items, @Nullable String groups, long period, int width, int height) {
+            this.items = items;
+            this.groups = groups;
+            this.period = period;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ChartKey)) {
+                return false;
+            }
+            ChartKey other = (ChartKey) obj;
+            return period == other.period && width == other.width && height == other.height
+                    && Objects.equals(items, other.items) && Objects.equals(groups, other.groups);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(items, groups, period, width, height);
+        }
+    }
+
+    /**
+     * A rendered chart, either as image or already encoded as PNG. The other representation is created on demand.
+     */
+    public static class CachedChart {
+        private final @Nullable BufferedImage image;
+        private final long validUntil;
+        private final long weight;
+        private byte @Nullable [] png;
+
+        /**
+         * @param image the rendered chart
+         * @param validUntil the time in milliseconds since the epoch until which the chart is up to date
+         */
+        public CachedChart(BufferedImage image, long validUntil) {
+            this.image = image;
+            this.validUntil = validUntil;
+            this.weight = (long) image.getWidth() * image.getHeight() * 4;
+        }
+
+        /**
+         * @param png the rendered chart encoded as PNG
+         * @param validUntil the time in milliseconds since the epoch until which the chart is up to date
+         */
+        public CachedChart(byte[] png, long validUntil) {
+            this.image = null;
+            this.png = png;
+            this.validUntil = validUntil;
+            this.weight = png.length;
+        }
+
+        /**
+         * Returns the chart as image, decoding it if it has been stored as PNG only.
+         *
+         * @return the image
+         * @throws IOException if decoding failed
+         */
+        public BufferedImage getImage() throws IOException {
+            BufferedImage image = this.image;
+            if (image != null) {
+                return image;
+            }
+            byte[] png = this.png;
+            image = png != null ? ImageIO.read(new ByteArrayInputStream(png)) : null;
+            if (image == null) {
+                throw new IOException("Cannot decode cached chart");
+            }
+            return image;
+        }
+
+        public long getValidUntil() {
+            return validUntil;
+        }
+
+        /**
+         * Returns the encoded chart, encoding it on the first call.
+         *
+         * @param encoder encodes the image
+         * @return the encoded chart
+         * @throws IOException if encoding failed
+         */
+        public synchronized byte[] getPng(Encoder encoder) throws IOException {
+            byte[] png = this.png;
+            if (png == null) {
+                png = encoder.encode(getImage());
+                this.png = png;
+            }
+            return png;
+        }
+
+        private long getWeight() {
+            return weight;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Renderer {
+        @Nullable
+        CachedChart render() throws ItemNotFoundException;
+    }
+
+    @FunctionalInterface
+    public interface Encoder {
+        byte[] encode(BufferedImage image) throws IOException;
+    }
+
+    private final long maxWeight;
+
+    // access ordered, so iteration starts with the least recently used chart
+    private final Map<ChartKey, CachedChart> charts = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+
+    private final Map<ChartKey, CompletableFuture<@Nullable CachedChart>> rendering = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxWeight the maximum number of bytes the cached images may occupy
+     */
+    public RRD4jChartCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the chart for the given key, rendering it if there is no up to date chart in the cache. If the same
+     * chart is being rendered for another request already, that result is used.
+     *
+     * @param key the key of the chart
+     * @param renderer renders the chart
+     * @return the chart or <code>null</code> if it could not be rendered
+     * @throws ItemNotFoundException if an item of the chart does not exist
+     */
+    public @Nullable CachedChart get(ChartKey key, Renderer renderer) throws ItemNotFoundException {
+        synchronized (this) {
+            CachedChart chart = charts.get(key);
+            if (chart != null && chart.getValidUntil() > System.currentTimeMillis()) {
+                return chart;
+            }
+        }
+
+        CompletableFuture<@Nullable CachedChart> future = new CompletableFuture<>();
+        CompletableFuture<@Nullable CachedChart> running = rendering.putIfAbsent(key, future);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            CachedChart chart = renderer.render();
+            if (chart != null && chart.getValidUntil() > System.currentTimeMillis()) {
+                put(key, chart);
+            }
+            future.complete(chart);
+            return chart;
+        } catch (ItemNotFoundException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            rendering.remove(key, future);
+        }
+    }
+
+    private synchronized void put(ChartKey key, CachedChart chart) {
+        if (chart.getWeight() > maxWeight) {
+            return;
+        }
+        CachedChart previous = charts.put(key, chart);
+        if (previous != null) {
+            weight -= previous.getWeight();
+        }
+        weight += chart.getWeight();
+        Iterator<CachedChart> it = charts.values().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            CachedChart cached = it.next();
+            if (cached != chart) {
+                weight -= cached.getWeight();
+                it.remove();
+            }
+        }
+    }
+
+    private @Nullable CachedChart await(CompletableFuture<@Nullable CachedChart> running)
+            throws ItemNotFoundException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ItemNotFoundException) {
+                throw (ItemNotFoundException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            return null;
+        }
+    }
+
+    public synchronized void clear() {
+        charts.clear();
+        weight = 0;
+    }
+}
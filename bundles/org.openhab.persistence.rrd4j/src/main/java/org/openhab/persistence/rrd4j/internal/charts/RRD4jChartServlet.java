@@ -14,28 +14,52 @@ package org.openhab.persistence.rrd4j.internal.charts;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
 
+import org.openhab.core.common.NamedThreadFactory;
 import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.library.items.NumberItem;
 import org.openhab.core.ui.chart.ChartProvider;
 import org.openhab.core.ui.items.ItemUIRegistry;
+import org.openhab.persistence.rrd4j.internal.RRD4jGroupMapping.Slot;
+import org.openhab.persistence.rrd4j.internal.RRD4jItemInfo;
 import org.openhab.persistence.rrd4j.internal.RRD4jPersistenceService;
+import org.openhab.persistence.rrd4j.internal.charts.RRD4jChartCache.CachedChart;
+import org.openhab.persistence.rrd4j.internal.charts.RRD4jChartCache.ChartKey;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -60,12 +84,20 @@ import org.slf4j.LoggerFactory;
  * <li>groups: A comma separated list of group names, whose members should be displayed
  * </ul>
  *
+ * Charts that end now are cached until the next update of the finest archive of the shown items, as they cannot
+ * change before. Concurrent requests for the same chart are rendered only once.
+ *
+ * Rendering happens on a small dedicated thread pool with a bounded queue, so that a burst of large charts cannot
+ * occupy all HTTP threads; requests that cannot be queued or take too long are answered with 503. The image buffers
+ * of charts served by this servlet are reused for subsequent charts of a similar size. The charts are encoded as PNG
+ * into memory with a configurable compression level and then written to the response at once.
+ *
  * @author Kai Kreuzer - Initial contribution
  * @author Chris Jackson - a few improvements
  * @author Jan N. Klug - a few improvements
  *
  */
-@Component(service = ChartProvider.class)
+@Component(service = ChartProvider.class, configurationPid = "org.openhab.rrd4j")
 public class RRD4jChartServlet implements Servlet, ChartProvider {
 
     private final Logger logger = LoggerFactory.getLogger(RRD4jChartServlet.class);
@@ -82,6 +114,25 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 
     protected static final Map<String, Long> PERIODS = new HashMap<>();
 
+    /** the maximum number of bytes the cached chart images may occupy */
+    private static final long CACHE_SIZE = 16 * 1024 * 1024;
+
+    /** charts ending less than this number of milliseconds ago are considered to end now */
+    private static final long CACHE_TOLERANCE = 1000;
+
+    /** the maximum number of bytes the pooled image buffers may occupy */
+    private static final long IMAGE_POOL_SIZE = 32 * 1024 * 1024;
+
+    private static final String CONFIG_THREADS = "chartThreads";
+    private static final String CONFIG_QUEUE_SIZE = "chartQueueSize";
+    private static final String CONFIG_TIMEOUT = "chartTimeout";
+    private static final String CONFIG_COMPRESSION = "chartCompression";
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_SIZE = 8;
+    private static final int DEFAULT_TIMEOUT = 30;
+    private static final int DEFAULT_COMPRESSION = 4;
+
     static {
         PERIODS.put("h", -3600000L);
         PERIODS.put("4h", -14400000L);
@@ -103,8 +154,29 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
     @Reference
     protected ItemUIRegistry itemUIRegistry;
 
+    @Reference
+    protected RRD4jPersistenceService persistenceService;
+
+    private final RRD4jChartCache chartCache = new RRD4jChartCache(CACHE_SIZE);
+
+    private final Map<String, ConsolFun> consolFuns = new ConcurrentHashMap<>();
+
+    private final RRD4jImagePool imagePool = new RRD4jImagePool(IMAGE_POOL_SIZE);
+
+    private ThreadPoolExecutor renderExecutor;
+    private long renderTimeout = DEFAULT_TIMEOUT;
+    private int compressionLevel = DEFAULT_COMPRESSION;
+
     @Activate
-    protected void activate() {
+    protected void activate(final Map<String, Object> config) {
+        int threads = Math.max(1, getIntConfig(config, CONFIG_THREADS, DEFAULT_THREADS));
+        int queueSize = Math.max(1, getIntConfig(config, CONFIG_QUEUE_SIZE, DEFAULT_QUEUE_SIZE));
+        renderTimeout = Math.max(1, getIntConfig(config, CONFIG_TIMEOUT, DEFAULT_TIMEOUT));
+        compressionLevel = Math.min(9, Math.max(0, getIntConfig(config, CONFIG_COMPRESSION, DEFAULT_COMPRESSION)));
+        renderExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), new NamedThreadFactory("RRD4j-chart"));
+        renderExecutor.allowCoreThreadTimeOut(true);
+
         try {
             logger.debug("Starting up rrd chart servlet at {}", SERVLET_NAME);
             httpService.registerServlet(SERVLET_NAME, this, new Hashtable<>(), httpService.createDefaultHttpContext());
@@ -118,6 +190,24 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
     @Deactivate
     protected void deactivate() {
         httpService.unregister(SERVLET_NAME);
+        renderExecutor.shutdownNow();
+        chartCache.clear();
+        consolFuns.clear();
+        imagePool.clear();
+    }
+
+    private int getIntConfig(Map<String, Object> config, String key, int defaultValue) {
+        Object value = config.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value instanceof String && !((String) value).isBlank()) {
+            try {
+                return Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring illegal configuration {} = {}", key, value);
+            }
+        }
+        return defaultValue;
     }
 
     @Override
@@ -146,9 +236,18 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         // Set the content type to that provided by the chart provider
         res.setContentType("image/" + getChartType());
         try {
-            BufferedImage chart = createChart(null, null, timeBegin, timeEnd, height, width, req.getParameter("items"),
-                    req.getParameter("groups"), null, null);
-            ImageIO.write(chart, getChartType().toString(), res.getOutputStream());
+            CachedChart chart = getChart(timeBegin, timeEnd, height, width, req.getParameter("items"),
+                    req.getParameter("groups"), true);
+            if (chart != null) {
+                byte[] png = chart.getPng(this::encode);
+                res.setContentLength(png.length);
+                res.getOutputStream().write(png);
+            }
+        } catch (RejectedExecutionException e) {
+            logger.debug("Chart request rejected: {}", e.getMessage());
+            if (res instanceof HttpServletResponse) {
+                ((HttpServletResponse) res).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            }
         } catch (ItemNotFoundException e) {
             logger.debug("Item not found error while generating chart.");
         } catch (IllegalArgumentException e) {
@@ -168,25 +267,25 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
     protected void addLine(RrdGraphDef graphDef, Item item, int counter) {
         Color color = LINECOLORS[counter % LINECOLORS.length];
         String label = itemUIRegistry.getLabel(item.getName());
-        String rrdName = RRD4jPersistenceService.DB_FOLDER + File.separator + item.getName() + ".rrd";
-        ConsolFun consolFun;
+        Slot slot = persistenceService.findSlot(item.getName());
+        if (slot == null) {
+            // the item has not been stored yet, which is reported when the graph is rendered
+            slot = new Slot(item.getName(), RRD4jPersistenceService.DATASOURCE_STATE);
+        }
+        String rrdName = RRD4jPersistenceService.DB_FOLDER + File.separator + slot.getAlias() + ".rrd";
         if (label != null && label.contains("[") && label.contains("]")) {
             label = label.substring(0, label.indexOf('['));
         }
-        try {
-            RrdDb db = new RrdDb(rrdName);
-            consolFun = db.getRrdDef().getArcDefs()[0].getConsolFun();
-            db.close();
-        } catch (IOException e) {
-            consolFun = ConsolFun.MAX;
-        }
+        ConsolFun consolFun = getConsolidationFunction(item.getName());
         if (item instanceof NumberItem) {
             // we only draw a line
-            graphDef.datasource(Integer.toString(counter), rrdName, "state", consolFun); // RRD4jService.getConsolidationFunction(item));
+            graphDef.datasource(Integer.toString(counter), rrdName, slot.getDsName(), consolFun,
+                    persistenceService.getBackendFactory());
             graphDef.line(Integer.toString(counter), color, label, 2);
         } else {
             // we draw a line and fill the area beneath it with a transparent color
-            graphDef.datasource(Integer.toString(counter), rrdName, "state", consolFun); // RRD4jService.getConsolidationFunction(item));
+            graphDef.datasource(Integer.toString(counter), rrdName, slot.getDsName(), consolFun,
+                    persistenceService.getBackendFactory());
             Color areaColor = AREACOLORS[counter % LINECOLORS.length];
 
             graphDef.area(Integer.toString(counter), areaColor);
@@ -194,6 +293,36 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         }
     }
 
+    /**
+     * Returns the consolidation function of the database of the given item. As it is fixed when the database is
+     * created, it is only read once per database.
+     *
+     * @param itemName the name of the item
+     * @return the consolidation function of the database or MAX if the database does not exist
+     */
+    private ConsolFun getConsolidationFunction(String itemName) {
+        ConsolFun consolFun = consolFuns.get(itemName);
+        if (consolFun != null) {
+            return consolFun;
+        }
+        Slot slot = persistenceService.findSlot(itemName);
+        if (slot == null) {
+            return ConsolFun.MAX;
+        }
+        String alias = slot.getAlias();
+        RrdDb db = persistenceService.getExistingDB(alias);
+        if (db == null) {
+            return ConsolFun.MAX;
+        }
+        try {
+            consolFun = persistenceService.getConsolidationFunction(db);
+        } finally {
+            persistenceService.releaseDB(alias);
+        }
+        consolFuns.put(itemName, consolFun);
+        return consolFun;
+    }
+
     @Override
     public void init(ServletConfig config) throws ServletException {
     }
@@ -223,6 +352,66 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
     @Override
     public BufferedImage createChart(String service, String theme, Date startTime, Date endTime, int height, int width,
             String items, String groups, Integer dpi, Boolean legend) throws ItemNotFoundException {
+        try {
+            CachedChart chart = getChart(startTime, endTime, height, width, items, groups, false);
+            return chart != null ? chart.getImage() : null;
+        } catch (RejectedExecutionException e) {
+            logger.debug("Chart request rejected: {}", e.getMessage());
+        } catch (IOException e) {
+            logger.debug("Error decoding cached chart: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the requested chart, from the cache if it ends now and has been rendered since the last update of the
+     * shown items.
+     *
+     * @param encode whether the chart should be encoded as PNG right away, which allows to reuse the image buffer
+     * @throws RejectedExecutionException if the chart could not be rendered in time
+     */
+    private CachedChart getChart(Date startTime, Date endTime, int height, int width, String items, String groups,
+            boolean encode) throws ItemNotFoundException {
+        long now = System.currentTimeMillis();
+        if (Math.abs(now - endTime.getTime()) > CACHE_TOLERANCE) {
+            return render(() -> renderChart(startTime, endTime, height, width, items, groups, encode));
+        }
+        long period = (startTime.getTime() - endTime.getTime()) / 1000;
+        ChartKey key = new ChartKey(items, groups, period, width, height);
+        return chartCache.get(key,
+                () -> render(() -> renderChart(startTime, endTime, height, width, items, groups, encode)));
+    }
+
+    /**
+     * Runs the given rendering task on the render executor and waits for its result.
+     *
+     * @throws RejectedExecutionException if the queue is full or the task did not finish within the timeout
+     */
+    private CachedChart render(Callable<CachedChart> task) throws ItemNotFoundException {
+        Future<CachedChart> future = renderExecutor.submit(task);
+        try {
+            return future.get(renderTimeout, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new RejectedExecutionException("Rendering took longer than " + renderTimeout + " seconds");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the chart");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ItemNotFoundException) {
+                throw (ItemNotFoundException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            logger.error("Error generating graph.", cause);
+            return null;
+        }
+    }
+
+    private CachedChart renderChart(Date startTime, Date endTime, int height, int width, String items,
+            String groups, boolean encode) throws ItemNotFoundException {
         RrdGraphDef graphDef = new RrdGraphDef();
 
         long period = (startTime.getTime() - endTime.getTime()) / 1000;
@@ -237,13 +426,14 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         graphDef.setSmallFont(new Font("SansSerif", Font.PLAIN, 11));
 
         int seriesCounter = 0;
+        List<String> itemNames = new ArrayList<>();
 
         // Loop through all the items
         if (items != null) {
-            String[] itemNames = items.split(",");
-            for (String itemName : itemNames) {
+            for (String itemName : items.split(",")) {
                 Item item = itemUIRegistry.getItem(itemName);
                 addLine(graphDef, item, seriesCounter++);
+                itemNames.add(item.getName());
             }
         }
 
@@ -256,6 +446,7 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
                     GroupItem groupItem = (GroupItem) item;
                     for (Item member : groupItem.getMembers()) {
                         addLine(graphDef, member, seriesCounter++);
+                        itemNames.add(member.getName());
                     }
                 } else {
                     throw new ItemNotFoundException("Item '" + item.getName() + "' defined in groups is not a group.");
@@ -263,15 +454,31 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
             }
         }
 
-        // Write the chart as a PNG image
+        // Render the chart
         RrdGraph graph;
         try {
             graph = new RrdGraph(graphDef);
-            BufferedImage bi = new BufferedImage(graph.getRrdGraphInfo().getWidth(),
-                    graph.getRrdGraphInfo().getHeight(), BufferedImage.TYPE_INT_RGB);
-            graph.render(bi.getGraphics());
-
-            return bi;
+            int graphWidth = graph.getRrdGraphInfo().getWidth();
+            int graphHeight = graph.getRrdGraphInfo().getHeight();
+            if (!encode) {
+                // the image is handed out to the caller, so it cannot be reused
+                BufferedImage bi = new BufferedImage(graphWidth, graphHeight, BufferedImage.TYPE_INT_RGB);
+                graph.render(bi.getGraphics());
+                return new CachedChart(bi, getValidUntil(itemNames));
+            }
+            BufferedImage buffer = imagePool.acquire(graphWidth, graphHeight);
+            try {
+                Graphics2D graphics = buffer.createGraphics();
+                try {
+                    graph.render(graphics);
+                } finally {
+                    graphics.dispose();
+                }
+                byte[] png = encode(buffer.getSubimage(0, 0, graphWidth, graphHeight));
+                return new CachedChart(png, getValidUntil(itemNames));
+            } finally {
+                imagePool.release(buffer);
+            }
         } catch (IOException e) {
             logger.error("Error generating graph.", e);
         }
@@ -279,6 +486,52 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
         return null;
     }
 
+    /**
+     * Determines until when a chart of the given items ending now stays up to date, i.e. the next step boundary of
+     * the finest archive among them.
+     *
+     * @param itemNames the names of the items shown
+     * @return the time in milliseconds since the epoch, or 0 if it cannot be determined
+     */
+    private long getValidUntil(List<String> itemNames) {
+        long step = Long.MAX_VALUE;
+        for (String itemName : itemNames) {
+            RRD4jItemInfo info = persistenceService.getItemInfo(itemName);
+            if (info == null || info.getFinestArchiveStep() <= 0) {
+                return 0;
+            }
+            step = Math.min(step, info.getFinestArchiveStep());
+        }
+        if (step == Long.MAX_VALUE) {
+            return 0;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        return (now - now % step + step) * 1000;
+    }
+
+    /**
+     * Encodes the image as PNG with the configured compression level. The image is encoded into a byte array, not
+     * streamed to the response, so that it can be cached and sent with its length; unlike {@link ImageIO#write} by
+     * default, the encoder does not go through a temporary file on disk.
+     */
+    private byte[] encode(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(getChartType().toString()).next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
+        try (ImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                // the PNG writer maps a quality of 1 to no compression and 0 to the best compression
+                param.setCompressionQuality(1.0f - compressionLevel / 9.0f);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
     @Override
     public ImageType getChartType() {
         return ImageType.png;
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal.charts;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link RRD4jImagePool} keeps image buffers of charts that have been encoded already, so that they can be
+ * reused for the next chart of a similar size instead of allocating a new buffer for every request.
+ *
+ * Buffers are grouped into size classes by rounding width and height up to a multiple of {@link #SIZE_CLASS}.
+ * Callers get a buffer that is at least as large as requested and have to restrict themselves to the requested area,
+ * e.g. using {@link BufferedImage#getSubimage(int, int, int, int)}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jImagePool {
+
+    static final int SIZE_CLASS = 64;
+
+    private static final int MAX_PER_CLASS = 2;
+
+    private final long maxBytes;
+
+    private final Map<Long, Deque<BufferedImage>> buffers = new HashMap<>();
+    private long bytes = 0;
+
+    /**
+     * @param maxBytes the maximum number of bytes the pooled buffers may occupy
+     */
+    public RRD4jImagePool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a buffer of at least the given size, either from the pool or newly allocated.
+     *
+     * @param width the required width in pixels
+     * @param height the required height in pixels
+     * @return the buffer
+     */
+    public BufferedImage acquire(int width, int height) {
+        int classWidth = roundUp(width);
+        int classHeight = roundUp(height);
+        synchronized (this) {
+            Deque<BufferedImage> pooled = buffers.get(key(classWidth, classHeight));
+            if (pooled != null && !pooled.isEmpty()) {
+                BufferedImage image = pooled.pop();
+                bytes -= getBytes(image);
+                return image;
+            }
+        }
+        return new BufferedImage(classWidth, classHeight, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Hands a buffer obtained by {@link #acquire(int, int)} back to the pool. The buffer must not be used by the
+     * caller afterwards.
+     *
+     * @param image the buffer
+     */
+    public synchronized void release(BufferedImage image) {
+        long size = getBytes(image);
+        if (bytes + size > maxBytes) {
+            return;
+        }
+        Deque<BufferedImage> pooled = buffers.computeIfAbsent(key(image.getWidth(), image.getHeight()),
+                k -> new ArrayDeque<>());
+        if (pooled.size() < MAX_PER_CLASS) {
+            pooled.push(image);
+            bytes += size;
+        }
+    }
+
+    public synchronized void clear() {
+        buffers.clear();
+        bytes = 0;
+    }
+
+    private static int roundUp(int size) {
+        return Math.max(1, (size + SIZE_CLASS - 1) / SIZE_CLASS) * SIZE_CLASS;
+    }
+
+    private static Long key(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+
+    private static long getBytes(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal.console;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.io.console.Console;
+import org.openhab.core.io.console.extensions.AbstractConsoleCommandExtension;
+import org.openhab.core.io.console.extensions.ConsoleCommandExtension;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.persistence.PersistenceServiceRegistry;
+import org.openhab.core.persistence.QueryablePersistenceService;
+import org.openhab.persistence.rrd4j.internal.RRD4jPersistenceService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * The {@link RRD4jCommandExtension} provides console commands to move the history of items in and out of rrd4j.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+@Component(service = ConsoleCommandExtension.class)
+public class RRD4jCommandExtension extends AbstractConsoleCommandExtension {
+
+    private static final String SUBCMD_EXPORT = "export";
+    private static final String SUBCMD_IMPORT = "import";
+    private static final String SUBCMD_REPLAY = "replay";
+    private static final String SUBCMD_MIGRATE = "migrate";
+
+    private final RRD4jPersistenceService persistenceService;
+    private final PersistenceServiceRegistry persistenceServiceRegistry;
+    private final ItemRegistry itemRegistry;
+
+    @Activate
+    public RRD4jCommandExtension(final @Reference RRD4jPersistenceService persistenceService,
+            final @Reference PersistenceServiceRegistry persistenceServiceRegistry,
+            final @Reference ItemRegistry itemRegistry) {
+        super("rrd4j", "Export, import and migrate the history stored by rrd4j.");
+        this.persistenceService = persistenceService;
+        this.persistenceServiceRegistry = persistenceServiceRegistry;
+        this.itemRegistry = itemRegistry;
+    }
+
+    @Override
+    public void execute(String[] args, Console console) {
+        if (args.length == 0) {
+            printUsage(console);
+            return;
+        }
+        List<String> itemNames = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : List.of();
+        try {
+            switch (args[0]) {
+                case SUBCMD_EXPORT:
+                    if (args.length < 2) {
+                        printUsage(console);
+                        return;
+                    }
+                    console.println("Exported " + persistenceService.exportItems(Path.of(args[1]), itemNames)
+                            + " item(s) to " + args[1]);
+                    break;
+                case SUBCMD_IMPORT:
+                    if (args.length < 2) {
+                        printUsage(console);
+                        return;
+                    }
+                    console.println("Imported " + persistenceService.importItems(Path.of(args[1]), itemNames)
+                            + " item(s) from " + args[1]);
+                    break;
+                case SUBCMD_REPLAY:
+                    if (args.length < 2) {
+                        printUsage(console);
+                        return;
+                    }
+                    replay(args[1], itemNames, console);
+                    break;
+                case SUBCMD_MIGRATE:
+                    console.println("Migrated " + persistenceService.migrateToGroups() + " item(s) into group files");
+                    break;
+                default:
+                    console.println("Unknown command '" + args[0] + "'");
+                    printUsage(console);
+                    break;
+            }
+        } catch (IOException | InvalidPathException e) {
+            console.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void replay(String serviceId, List<String> itemNames, Console console) {
+        PersistenceService service = persistenceServiceRegistry.get(serviceId);
+        if (!(service instanceof QueryablePersistenceService)) {
+            console.println("There is no queryable persistence service '" + serviceId + "'");
+            return;
+        }
+        if (service == persistenceService) {
+            console.println("Cannot replay rrd4j into itself");
+            return;
+        }
+        List<String> names = itemNames;
+        if (names.isEmpty()) {
+            names = itemRegistry.getItems().stream().map(Item::getName).collect(Collectors.toList());
+        }
+        console.println("Replaying " + names.size() + " item(s) from " + serviceId + "...");
+        int count = persistenceService.replayFrom((QueryablePersistenceService) service, names);
+        console.println("Created the rrd4j databases of " + count + " item(s)");
+    }
+
+    @Override
+    public List<String> getUsages() {
+        return List.of(
+                buildCommandUsage(SUBCMD_EXPORT + " <directory> [<item>...]",
+                        "exports the history of all or the given items to the directory"),
+                buildCommandUsage(SUBCMD_IMPORT + " <directory> [<item>...]",
+                        "creates the databases of all or the given items from the files in the directory"),
+                buildCommandUsage(SUBCMD_REPLAY + " <serviceId> [<item>...]",
+                        "creates the databases of all or the given items from the history stored by another persistence service"),
+                buildCommandUsage(SUBCMD_MIGRATE,
+                        "moves the databases of single items into group files, if the grouped layout is configured"));
+    }
+}
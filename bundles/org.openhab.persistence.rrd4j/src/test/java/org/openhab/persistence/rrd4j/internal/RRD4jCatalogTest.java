@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the entries and the folder watch of {@link RRD4jCatalog}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jCatalogTest {
+
+    @TempDir
+    public @Nullable Path folder;
+
+    private final BlockingQueue<String> refreshed = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> removed = new LinkedBlockingQueue<>();
+    private @Nullable RRD4jCatalog catalog;
+
+    private Path getFolder() {
+        Path folder = this.folder;
+        assertThat(folder, is(notNullValue()));
+        return folder;
+    }
+
+    private RRD4jCatalog createCatalog() {
+        RRD4jCatalog catalog = new RRD4jCatalog(getFolder(), refreshed::add, removed::add);
+        this.catalog = catalog;
+        return catalog;
+    }
+
+    private static RRD4jItemInfo createInfo(String alias, long latest) {
+        return new RRD4jItemInfo(alias, 10, "LAST,0.5,1,360", 10, 1024, latest - 3600, latest);
+    }
+
+    @AfterEach
+    public void stop() {
+        RRD4jCatalog catalog = this.catalog;
+        if (catalog != null) {
+            catalog.stop();
+        }
+    }
+
+    @Test
+    public void onlyDatabaseFilesAreListed() throws IOException {
+        Files.createFile(getFolder().resolve("Item1.rrd"));
+        Files.createFile(getFolder().resolve("Item2.rrd"));
+        Files.createFile(getFolder().resolve("Item3.rrd.migrated"));
+        Files.createFile(getFolder().resolve("groups.json"));
+
+        assertThat(Set.copyOf(createCatalog().listAliases()), is(Set.of("Item1", "Item2")));
+    }
+
+    @Test
+    public void lastUpdateTimeIsOnlyUpdatedForKnownDatabases() {
+        RRD4jCatalog catalog = createCatalog();
+        assertThat(catalog.updateLastUpdateTime("Item1", 2000), is(false));
+
+        catalog.put(createInfo("Item1", 1000));
+        assertThat(catalog.updateLastUpdateTime("Item1", 2000), is(true));
+        RRD4jItemInfo info = catalog.get("Item1");
+        assertThat(info, is(notNullValue()));
+        assertThat(info.getLastUpdateTime(), is(2000L));
+        assertThat(catalog.getAll().size(), is(1));
+
+        catalog.remove("Item1");
+        assertThat(catalog.get("Item1"), is(nullValue()));
+        assertThat(catalog.size(), is(0));
+    }
+
+    @Test
+    public void addedAndRemovedFilesAreReported() throws IOException, InterruptedException {
+        RRD4jCatalog catalog = createCatalog();
+        catalog.start();
+
+        Path file = getFolder().resolve("Item1.rrd");
+        Files.createFile(file);
+        Files.createFile(getFolder().resolve("Item1.rrd.tmp"));
+        assertThat(refreshed.poll(10, TimeUnit.SECONDS), is("Item1"));
+
+        catalog.put(createInfo("Item1", 1000));
+        Files.delete(file);
+        assertThat(removed.poll(10, TimeUnit.SECONDS), is("Item1"));
+        assertThat(catalog.get("Item1"), is(nullValue()));
+        // temporary files are ignored
+        assertThat(refreshed.isEmpty(), is(true));
+    }
+
+    @Test
+    public void filesAreNotReportedAfterStop() throws IOException, InterruptedException {
+        RRD4jCatalog catalog = createCatalog();
+        catalog.start();
+        catalog.stop();
+
+        Files.createFile(getFolder().resolve("Item1.rrd"));
+        assertThat(refreshed.poll(500, TimeUnit.MILLISECONDS), is(nullValue()));
+    }
+}
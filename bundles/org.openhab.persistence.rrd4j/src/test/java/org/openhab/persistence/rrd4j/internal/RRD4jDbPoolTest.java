@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.rrd4j.ConsolFun;
+import org.rrd4j.DsType;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.RrdMemoryBackendFactory;
+
+/**
+ * Tests the pooling of open databases by {@link RRD4jDbPool}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jDbPoolTest {
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final CountDownLatch opening = new CountDownLatch(1);
+    private final RRD4jDbPool pool = new RRD4jDbPool(this::open);
+
+    private RrdDb open(String alias) throws IOException {
+        RrdDef rrdDef = new RrdDef(alias + ".rrd", 1);
+        rrdDef.addDatasource(RRD4jPersistenceService.DATASOURCE_STATE, DsType.GAUGE, 600, Double.NaN, Double.NaN);
+        rrdDef.addArchive(ConsolFun.LAST, 0.5, 1, 10);
+        RrdDb db = new RrdDb(rrdDef, new RrdMemoryBackendFactory());
+        opened.incrementAndGet();
+        opening.countDown();
+        return db;
+    }
+
+    private RrdDb acquire(String alias) throws IOException {
+        RrdDb db = pool.acquire(alias);
+        assertThat(db, is(notNullValue()));
+        return db;
+    }
+
+    @AfterEach
+    public void close() {
+        pool.close();
+    }
+
+    @Test
+    public void releasedDatabaseIsKeptOpen() throws IOException {
+        RrdDb db = acquire("Item1");
+        pool.release("Item1");
+        assertThat(acquire("Item1"), is(sameInstance(db)));
+        pool.release("Item1");
+        assertThat(opened.get(), is(1));
+        assertThat(db.isClosed(), is(false));
+    }
+
+    @Test
+    public void leastRecentlyUsedDatabaseIsClosedOverCapacity() throws IOException {
+        pool.setLimits(2, RRD4jDbPool.DEFAULT_IDLE_TIMEOUT);
+        RrdDb first = acquire("Item1");
+        pool.release("Item1");
+        RrdDb second = acquire("Item2");
+        pool.release("Item2");
+        // using the first database again makes the second one the least recently used
+        acquire("Item1");
+        pool.release("Item1");
+
+        RrdDb third = acquire("Item3");
+        pool.release("Item3");
+        assertThat(pool.size(), is(2));
+        assertThat(second.isClosed(), is(true));
+        assertThat(first.isClosed(), is(false));
+        assertThat(third.isClosed(), is(false));
+    }
+
+    @Test
+    public void databaseInUseIsNotClosedOverCapacity() throws IOException {
+        pool.setLimits(1, RRD4jDbPool.DEFAULT_IDLE_TIMEOUT);
+        RrdDb inUse = acquire("Item1");
+        RrdDb other = acquire("Item2");
+        pool.release("Item2");
+        assertThat(inUse.isClosed(), is(false));
+        assertThat(other.isClosed(), is(true));
+        assertThat(pool.size(), is(1));
+
+        pool.release("Item1");
+        assertThat(inUse.isClosed(), is(false));
+    }
+
+    @Test
+    public void closeClosesDatabasesInUse() throws IOException {
+        RrdDb inUse = acquire("Item1");
+        pool.close();
+        assertThat(inUse.isClosed(), is(true));
+        assertThat(pool.size(), is(0));
+
+        @Nullable
+        RrdDb db = pool.acquire("Item1");
+        assertThat(db, is(nullValue()));
+        // releasing a database after the pool has been closed is harmless
+        pool.release("Item1");
+        assertThat(opened.get(), is(1));
+    }
+
+    @Test
+    public void databaseIsOpenedOnceByConcurrentCallers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Lock lock = pool.getLock("Item1");
+        try {
+            List<Future<@Nullable RrdDb>> results = new ArrayList<>();
+            // all callers wait for the lock of the alias, as a writer holding it would make them
+            lock.lock();
+            try {
+                for (int i = 0; i < 4; i++) {
+                    results.add(executor.submit(() -> pool.acquire("Item1")));
+                }
+                assertThat(opening.await(100, TimeUnit.MILLISECONDS), is(false));
+            } finally {
+                lock.unlock();
+            }
+            RrdDb first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<@Nullable RrdDb> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS), is(sameInstance(first)));
+                pool.release("Item1");
+            }
+            assertThat(opened.get(), is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void evictedDatabaseIsOpenedAgain() throws IOException {
+        RrdDb db = acquire("Item1");
+        pool.release("Item1");
+        pool.evict("Item1");
+        assertThat(db.isClosed(), is(true));
+        assertThat(pool.size(), is(0));
+
+        RrdDb reopened = acquire("Item1");
+        assertThat(reopened, is(not(sameInstance(db))));
+        assertThat(reopened.isClosed(), is(false));
+        assertThat(opened.get(), is(2));
+        pool.release("Item1");
+    }
+
+    @Test
+    public void evictedDatabaseInUseIsClosedOnRelease() throws IOException {
+        RrdDb db = acquire("Item1");
+        pool.evict("Item1");
+        assertThat(db.isClosed(), is(false));
+
+        pool.release("Item1");
+        assertThat(db.isClosed(), is(true));
+        assertThat(pool.size(), is(0));
+        assertThat(acquire("Item1"), is(not(sameInstance(db))));
+        pool.release("Item1");
+    }
+
+    @Test
+    public void aliasesShareAFixedSetOfLocks() {
+        assertThat(pool.getLock("Item1"), is(sameInstance(pool.getLock("Item1"))));
+        List<Lock> locks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Lock lock = pool.getLock("Item" + i);
+            if (!locks.contains(lock)) {
+                locks.add(lock);
+            }
+        }
+        // different aliases are spread over several locks
+        assertThat(locks.size() > 1, is(true));
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openhab.persistence.rrd4j.internal.RRD4jGroupMapping.Slot;
+
+/**
+ * Tests the assignment of items to group files by {@link RRD4jGroupMapping}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jGroupMappingTest {
+
+    @TempDir
+    public @Nullable Path folder;
+
+    private RRD4jGroupMapping createMapping() {
+        Path folder = this.folder;
+        assertThat(folder, is(notNullValue()));
+        RRD4jGroupMapping mapping = new RRD4jGroupMapping(folder);
+        mapping.load();
+        return mapping;
+    }
+
+    @Test
+    public void itemsAreAssignedToFreeDatasources() {
+        RRD4jGroupMapping mapping = createMapping();
+        Slot first = mapping.assign("Item1", "default_numeric", 2);
+        Slot second = mapping.assign("Item2", "default_numeric", 2);
+        Slot third = mapping.assign("Item3", "default_numeric", 2);
+        Slot other = mapping.assign("Item4", "default_other", 2);
+
+        assertThat(first.getAlias(), is("groups/default_numeric_0"));
+        assertThat(first.getDsName(), is("ds0"));
+        assertThat(second.getAlias(), is("groups/default_numeric_0"));
+        assertThat(second.getDsName(), is("ds1"));
+        assertThat(third.getAlias(), is("groups/default_numeric_1"));
+        assertThat(third.getDsName(), is("ds0"));
+        assertThat(other.getAlias(), is("groups/default_other_0"));
+        assertThat(first.isGrouped(), is(true));
+        assertThat(RRD4jGroupMapping.getDefinition(third.getAlias()), is("default_numeric"));
+
+        // an item keeps its slot
+        assertThat(mapping.assign("Item1", "default_numeric", 2).getDsName(), is("ds0"));
+    }
+
+    @Test
+    public void mappingIsPersisted() {
+        RRD4jGroupMapping mapping = createMapping();
+        mapping.assign("Item1", "default_numeric", 4);
+        String alias = mapping.reserve("default_numeric");
+        mapping.register(alias, 3, List.of("Item2", "Item3"));
+
+        RRD4jGroupMapping loaded = createMapping();
+        Slot slot = loaded.get("Item3");
+        assertThat(slot, is(notNullValue()));
+        assertThat(slot.getAlias(), is(alias));
+        assertThat(slot.getDsName(), is("ds1"));
+        assertThat(loaded.getCapacity(alias), is(3));
+        assertThat(loaded.getItems(alias)[0], is("Item2"));
+        assertThat(loaded.getItems(alias)[2], is(nullValue()));
+        assertThat(loaded.getItemNames().size(), is(3));
+        assertThat(loaded.get("Unknown"), is(nullValue()));
+    }
+}
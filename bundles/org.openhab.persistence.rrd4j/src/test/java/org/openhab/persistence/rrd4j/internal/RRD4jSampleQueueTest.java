@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.persistence.rrd4j.internal.RRD4jSampleQueue.Aggregation;
+import org.openhab.persistence.rrd4j.internal.RRD4jSampleQueue.PendingSample;
+
+/**
+ * Tests the merging of values by {@link RRD4jSampleQueue}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jSampleQueueTest {
+
+    private final RRD4jSampleQueue queue = new RRD4jSampleQueue();
+
+    private PendingSample poll(String alias) {
+        PendingSample sample = queue.poll(alias);
+        assertThat(sample, is(notNullValue()));
+        return sample;
+    }
+
+    @Test
+    public void onlyTheFirstValueRequiresAWrite() {
+        assertThat(queue.add("Item1", "Item1", 100, 1), is(true));
+        assertThat(queue.add("Item1", "Item1", 101, 2), is(false));
+        assertThat(queue.add("Item2", "Item2", 101, 3), is(true));
+        assertThat(queue.size(), is(2));
+
+        poll("Item1");
+        assertThat(queue.getPendingAliases().contains("Item1"), is(false));
+        assertThat(queue.poll("Item1"), is(nullValue()));
+        assertThat(queue.add("Item1", "Item1", 102, 4), is(true));
+    }
+
+    @Test
+    public void valuesAreAggregated() {
+        queue.add("Item1", "Item1", 100, 4);
+        queue.add("Item1", "Item1", 102, 1);
+        queue.add("Item1", "Item1", 101, 7);
+
+        PendingSample sample = poll("Item1");
+        assertThat(sample.getItemName(), is("Item1"));
+        assertThat(sample.getCount(), is(3));
+        // the time is the one of the most recent value, the last value is the one added last
+        assertThat(sample.getTime(), is(102L));
+        assertThat(sample.getValue(Aggregation.LAST), is(7.0));
+        assertThat(sample.getValue(Aggregation.MIN), is(1.0));
+        assertThat(sample.getValue(Aggregation.MAX), is(7.0));
+        assertThat(sample.getValue(Aggregation.AVERAGE), is(4.0));
+    }
+
+    @Test
+    public void requeuedSampleIsMergedWithNewerValues() {
+        queue.add("Item1", "Item1", 100, 2);
+        queue.add("Item1", "Item1", 100, 10);
+        PendingSample older = poll("Item1");
+
+        // a value arrives while the sample is being written
+        queue.add("Item1", "Item1", 101, 6);
+        assertThat(queue.requeue("Item1", older), is(false));
+
+        PendingSample sample = poll("Item1");
+        assertThat(sample.getCount(), is(3));
+        assertThat(sample.getTime(), is(101L));
+        // the newer value stays the last one
+        assertThat(sample.getValue(Aggregation.LAST), is(6.0));
+        assertThat(sample.getValue(Aggregation.MIN), is(2.0));
+        assertThat(sample.getValue(Aggregation.MAX), is(10.0));
+        assertThat(sample.getValue(Aggregation.AVERAGE), is(6.0));
+    }
+
+    @Test
+    public void requeuedSampleWithoutNewerValuesRequiresAWrite() {
+        queue.add("Item1", "Item1", 100, 2);
+        PendingSample sample = poll("Item1");
+
+        assertThat(queue.requeue("Item1", sample), is(true));
+        assertThat(poll("Item1"), is(sameInstance(sample)));
+    }
+}
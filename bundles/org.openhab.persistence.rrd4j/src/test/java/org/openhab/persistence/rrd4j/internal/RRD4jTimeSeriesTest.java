@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.junit.jupiter.api.Test;
+import org.openhab.persistence.rrd4j.internal.RRD4jTimeSeries.Downsampling;
+
+/**
+ * Tests the downsampling of {@link RRD4jTimeSeries}.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class RRD4jTimeSeriesTest {
+
+    private static RRD4jTimeSeries sine(int size) {
+        long[] timestamps = new long[size];
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            timestamps[i] = 1000 + i * 10;
+            values[i] = Math.sin(i / 50.0);
+        }
+        // add a spike that must survive the downsampling
+        values[size / 3] = 10.0;
+        return new RRD4jTimeSeries(timestamps, values, size);
+    }
+
+    @Test
+    public void smallSeriesIsNotChanged() {
+        RRD4jTimeSeries series = sine(100);
+        assertThat(series.downsample(Downsampling.LTTB, 500), is(sameInstance(series)));
+        assertThat(series.downsample(Downsampling.NONE, 10), is(sameInstance(series)));
+    }
+
+    @Test
+    public void lttbKeepsBoundsAndExtremes() {
+        RRD4jTimeSeries series = sine(10000);
+        RRD4jTimeSeries result = series.downsample(Downsampling.LTTB, 500);
+        assertThat(result.size(), is(500));
+        assertThat(result.getTimestamp(0), is(series.getTimestamp(0)));
+        assertThat(result.getTimestamp(499), is(series.getTimestamp(9999)));
+        assertThat(containsValue(result, 10.0), is(true));
+        assertAscending(result);
+    }
+
+    @Test
+    public void minMaxKeepsExtremes() {
+        RRD4jTimeSeries series = sine(10000);
+        RRD4jTimeSeries result = series.downsample(Downsampling.MINMAX, 500);
+        assertThat(result.size() <= 500, is(true));
+        assertThat(containsValue(result, 10.0), is(true));
+        assertAscending(result);
+    }
+
+    private static boolean containsValue(RRD4jTimeSeries series, double value) {
+        for (int i = 0; i < series.size(); i++) {
+            if (series.getValue(i) == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertAscending(RRD4jTimeSeries series) {
+        for (int i = 1; i < series.size(); i++) {
+            assertThat(series.getTimestamp(i) > series.getTimestamp(i - 1), is(true));
+        }
+    }
+}